@@ -30,5 +30,6 @@ public class KiroGatewayApplication {
         log.info("  POST /v1/messages          (Anthropic)");
         log.info("  GET  /v1/models");
         log.info("  GET  /health");
+        log.info("  GET  /health/ready");
     }
 }
@@ -30,6 +30,17 @@ public class AppProperties {
     private LoggingConfig logging = new LoggingConfig();
     private DatabaseConfig database = new DatabaseConfig();
     private RetryConfig retry = new RetryConfig();
+    private EventStreamConfig eventStream = new EventStreamConfig();
+    private StreamConfig stream = new StreamConfig();
+    private ConcurrencyConfig concurrency = new ConcurrencyConfig();
+    private SseConfig sse = new SseConfig();
+    private EndpointHealthConfig endpointHealth = new EndpointHealthConfig();
+    private FailoverConfig failover = new FailoverConfig();
+    private HedgeConfig hedge = new HedgeConfig();
+    private HttpConfig http = new HttpConfig();
+    private WarmupConfig warmup = new WarmupConfig();
+    private AccountLimitConfig accountLimit = new AccountLimitConfig();
+    private AffinityConfig affinity = new AffinityConfig();
 
     // --- 嵌套配置类 ---
 
@@ -71,11 +82,137 @@ public class AppProperties {
     @Data
     public static class DatabaseConfig {
         private String path = "data/kiro.db";
+        // 账号统计写回间隔（秒）
+        private int statsFlushSeconds = 5;
     }
 
     @Data
     public static class RetryConfig {
         private int maxRetries = 3;
         private long baseDelayMs = 1000;
+        // 单次退避上限
+        private long maxDelayMs = 30000;
+        // 抖动策略：none / full / decorrelated
+        private String jitter = "full";
+        // 按端点的重试预算（令牌桶）
+        private boolean budgetEnabled = true;
+        // 每个新请求存入的令牌数，即重试量占正常流量的比例上限
+        private double budgetRatio = 0.2;
+        // 令牌桶容量，允许的突发重试次数
+        private int budgetMaxTokens = 10;
+    }
+
+    @Data
+    public static class EventStreamConfig {
+        // 校验 prelude / message CRC，损坏帧计入 eventstream_corrupt_frames_total
+        private boolean validateCrc = false;
+    }
+
+    @Data
+    public static class StreamConfig {
+        // blocking：每个流一个线程读取上游；async：HttpClient.sendAsync 非阻塞读取
+        private String mode = "blocking";
+
+        public boolean isAsync() {
+            return "async".equalsIgnoreCase(mode);
+        }
+    }
+
+    @Data
+    public static class ConcurrencyConfig {
+        // 同时进行的流式请求上限
+        private int maxStreams = 64;
+        // 超出上限后的最大排队数
+        private int maxQueued = 128;
+        // 排队超时（毫秒）
+        private long queueTimeoutMs = 10000;
+        // 拒绝时的状态码（429 或 Anthropic 风格 529）
+        private int rejectStatus = 429;
+        private int retryAfterSeconds = 5;
+    }
+
+    @Data
+    public static class SseConfig {
+        // 每个流排队的未发送事件数软上限，超出后合并相邻的同类帧（不同类的帧仍会入队）
+        private int maxQueuedEvents = 256;
+        // 全局未发送数据软上限（UTF-16 字符数，非编码后字节数），超出后所有流都合并相邻的同类帧
+        private long maxInflightChars = 64L * 1024 * 1024;
+        // delta 攒批刷新间隔（毫秒），0 表示有数据即刷新
+        private long flushIntervalMs = 10;
+        // 攒够该字符数立即刷新
+        private int flushChars = 8192;
+    }
+
+    @Data
+    public static class EndpointHealthConfig {
+        // 连续失败多少次后熔断
+        private int failureThreshold = 5;
+        // 熔断持续时间，到期后放行一个探测请求
+        private int openSeconds = 30;
+        // TTFB / 错误率 EWMA 平滑系数
+        private double ewmaAlpha = 0.3;
+    }
+
+    @Data
+    public static class AccountLimitConfig {
+        // 单账号最大并发请求数，0 表示不限
+        private int maxConcurrent = 0;
+        // 所有账号都在冷却或并发已满时的最大排队数
+        private int maxQueued = 256;
+        // 排队超时（毫秒），超时返回 503
+        private long queueTimeoutMs = 10000;
+    }
+
+    @Data
+    public static class AffinityConfig {
+        // 哈希环上每个账号的虚拟节点数
+        private int virtualNodes = 64;
+        // 有界负载系数：单账号进行中请求数上限为平均值的该倍数（向上取整）
+        private double loadFactor = 1.25;
+    }
+
+    @Data
+    public static class FailoverConfig {
+        // 429 / 5xx 时冷却当前账号并切换到其他账号重放请求
+        private boolean enabled = true;
+        // 单个请求最多切换账号次数
+        private int maxHops = 2;
+    }
+
+    @Data
+    public static class HedgeConfig {
+        // 首字节对冲，仅 stream.mode=async 生效
+        private boolean enabled = false;
+        // 对冲延迟取近期首字节耗时的该分位数
+        private double percentile = 95;
+        private long minDelayMs = 500;
+        // 延迟上限，样本不足时也使用该值
+        private long maxDelayMs = 5000;
+        // 每个请求存入的对冲令牌数，即对冲请求占比上限
+        private double budgetRatio = 0.05;
+        // 允许的突发对冲次数
+        private int budgetMaxTokens = 5;
+    }
+
+    @Data
+    public static class HttpConfig {
+        // 上游协议：HTTP_2（多路复用，不支持时自动回落）/ HTTP_1_1
+        private String version = "HTTP_2";
+        // 每个上游 host 的在途请求上限，0 表示不限制
+        private int maxInflightPerHost = 0;
+        private int maxQueuedPerHost = 1024;
+        private long queueTimeoutMs = 10000;
+    }
+
+    @Data
+    public static class WarmupConfig {
+        // 启动及空闲时预热上游连接，预热完成前 /health/ready 返回 503
+        private boolean enabled = true;
+        // 每个端点预热的连接数（HTTP/1.1 有意义，HTTP/2 一条即可）
+        private int connectionsPerEndpoint = 2;
+        // 端点空闲超过该时间后重新预热
+        private int intervalSeconds = 60;
+        // 预热后连接视为仍可复用的时间（不超过 HttpClient keep-alive 超时）
+        private int keepAliveSeconds = 120;
     }
 }
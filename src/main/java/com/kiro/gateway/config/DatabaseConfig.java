@@ -79,6 +79,15 @@ public class DatabaseConfig {
         tryAddColumn("request_logs", "conversation_id", "TEXT");
         tryExecute("CREATE INDEX IF NOT EXISTS idx_request_logs_conversation ON request_logs(conversation_id)");
         backfillConversationId();
+        // v3: request_logs 增加 client_cancelled 列（客户端中途断开）
+        tryAddColumn("request_logs", "client_cancelled", "INTEGER DEFAULT 0");
+        // v4: request_logs 增加延迟统计列（响应头、首字节、首 token、delta 间隔、输出速度）
+        tryAddColumn("request_logs", "headers_ms", "INTEGER");
+        tryAddColumn("request_logs", "ttfb_ms", "INTEGER");
+        tryAddColumn("request_logs", "ttft_ms", "INTEGER");
+        tryAddColumn("request_logs", "avg_gap_ms", "REAL");
+        tryAddColumn("request_logs", "max_gap_ms", "INTEGER");
+        tryAddColumn("request_logs", "tokens_per_second", "REAL");
     }
 
     private void tryExecute(String sql) {
@@ -13,7 +13,7 @@ import java.time.Duration;
 /**
  * HttpClient 配置
  * <p>
- * 连接池、超时、代理设置
+ * 协议版本、超时、代理设置
  */
 @Configuration
 public class HttpClientConfig {
@@ -22,9 +22,12 @@ public class HttpClientConfig {
 
     @Bean
     public HttpClient kiroHttpClient(AppProperties properties) {
+        HttpClient.Version version = "HTTP_1_1".equalsIgnoreCase(properties.getHttp().getVersion())
+                ? HttpClient.Version.HTTP_1_1 : HttpClient.Version.HTTP_2;
         HttpClient.Builder builder = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(30))
-                .version(HttpClient.Version.HTTP_1_1);
+                .version(version);
+        log.info("上游 HTTP 协议: {}", version);
 
         // 代理配置
         if (properties.getProxy().isEnabled() && properties.getProxy().getUrl() != null && !properties.getProxy().getUrl().isEmpty()) {
@@ -10,6 +10,7 @@ import com.kiro.gateway.dao.TraceDAO;
 import com.kiro.gateway.model.ModelResolver;
 import com.kiro.gateway.pool.Account;
 import com.kiro.gateway.pool.AccountPool;
+import com.kiro.gateway.proxy.EndpointRouter;
 import com.kiro.gateway.proxy.KiroRestApi;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +46,7 @@ public class AdminController {
     private final ModelResolver modelResolver;
     private final AuthService authService;
     private final KiroRestApi kiroRestApi;
+    private final EndpointRouter endpointRouter;
 
     // SSE 事件推送
     private final Sinks.Many<ServerSentEvent<String>> eventSink =
@@ -53,7 +55,8 @@ public class AdminController {
     public AdminController(AccountPool accountPool, RequestLogDAO requestLogDAO,
                            TraceDAO traceDAO, ApiKeyDAO apiKeyDAO,
                            AppProperties properties, ModelResolver modelResolver,
-                           AuthService authService, KiroRestApi kiroRestApi) {
+                           AuthService authService, KiroRestApi kiroRestApi,
+                           EndpointRouter endpointRouter) {
         this.accountPool = accountPool;
         this.requestLogDAO = requestLogDAO;
         this.traceDAO = traceDAO;
@@ -62,6 +65,7 @@ public class AdminController {
         this.modelResolver = modelResolver;
         this.authService = authService;
         this.kiroRestApi = kiroRestApi;
+        this.endpointRouter = endpointRouter;
     }
 
     // ==================== 登录 ====================
@@ -94,6 +98,17 @@ public class AdminController {
                 "errors", stats.totalErrors(), //
                 "logCount", requestLogCount //
         ));
+        JSONArray endpoints = new JSONArray();
+        for (EndpointRouter.EndpointSnapshot ep : endpointRouter.snapshot()) {
+            endpoints.add(JSONObject.of( //
+                    "url", ep.endpoint(), //
+                    "circuit", ep.circuit(), //
+                    "ttfbEwmaMs", ep.ttfbEwmaMs(), //
+                    "errorRate", ep.errorRate(), //
+                    "consecutiveFailures", ep.consecutiveFailures() //
+            ));
+        }
+        result.put("endpoints", endpoints);
         return Mono.just(result.toJSONString());
     }
 
@@ -14,6 +14,7 @@ import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 /**
  * API Key 验证过滤器
@@ -63,19 +64,23 @@ public class ApiKeyFilter implements WebFilter {
             return unauthorized(exchange, "API Key 为空");
         }
 
-        // 验证 API Key
-        if (!apiKeyDAO.validate(apiKey)) {
-            log.warn("无效的 API Key: {}***", apiKey.substring(0, Math.min(8, apiKey.length())));
-            return unauthorized(exchange, "无效的 API Key");
-        }
+        // 验证 API Key（SQLite 查询，放到 boundedElastic 执行）
+        return Mono.fromCallable(() -> apiKeyDAO.validate(apiKey))
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(valid -> {
+                    if (!valid) {
+                        log.warn("无效的 API Key: {}***", apiKey.substring(0, Math.min(8, apiKey.length())));
+                        return unauthorized(exchange, "无效的 API Key");
+                    }
 
-        // 记录到 TraceContext
-        TraceContext traceCtx = TraceFilter.getTraceContext(exchange);
-        if (traceCtx != null) {
-            traceCtx.setApiKey(apiKey.substring(0, Math.min(8, apiKey.length())) + "***");
-        }
+                    // 记录到 TraceContext
+                    TraceContext traceCtx = TraceFilter.getTraceContext(exchange);
+                    if (traceCtx != null) {
+                        traceCtx.setApiKey(apiKey.substring(0, Math.min(8, apiKey.length())) + "***");
+                    }
 
-        return chain.filter(exchange);
+                    return chain.filter(exchange);
+                });
     }
 
     private Mono<Void> unauthorized(ServerWebExchange exchange, String message) {
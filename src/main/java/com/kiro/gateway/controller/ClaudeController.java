@@ -3,17 +3,26 @@ package com.kiro.gateway.controller;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import com.kiro.gateway.auth.AuthService;
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.exception.KiroApiException;
+import com.kiro.gateway.exception.OverloadedException;
 import com.kiro.gateway.model.ModelResolver;
 import com.kiro.gateway.pool.Account;
+import com.kiro.gateway.pool.AccountLease;
 import com.kiro.gateway.pool.AccountPool;
-import com.kiro.gateway.proxy.KiroApiClient;
+import com.kiro.gateway.proxy.AccountFailover;
 import com.kiro.gateway.proxy.StreamCallback;
+import com.kiro.gateway.proxy.StreamCancellation;
+import com.kiro.gateway.proxy.StreamExecutor;
+import com.kiro.gateway.sse.SseEncoder;
+import com.kiro.gateway.sse.SseStream;
 import com.kiro.gateway.trace.TraceContext;
 import com.kiro.gateway.trace.TraceFilter;
 import com.kiro.gateway.trace.TraceStore;
 import com.kiro.gateway.translator.ClaudeTranslator;
 import com.kiro.gateway.translator.RequestTranslator;
 import com.kiro.gateway.translator.ThinkingParser;
+import com.kiro.gateway.util.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.buffer.DataBuffer;
@@ -24,9 +33,10 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
@@ -47,20 +57,25 @@ public class ClaudeController {
 
     private final AccountPool accountPool;
     private final AuthService authService;
-    private final KiroApiClient kiroClient;
+    private final AccountFailover failover;
     private final ClaudeTranslator translator;
     private final ModelResolver modelResolver;
     private final TraceStore traceStore;
+    private final AppProperties properties;
+    private final StreamExecutor streamExecutor;
 
     public ClaudeController(AccountPool accountPool, AuthService authService,
-                            KiroApiClient kiroClient, ClaudeTranslator translator,
-                            ModelResolver modelResolver, TraceStore traceStore) {
+                            AccountFailover failover, ClaudeTranslator translator,
+                            ModelResolver modelResolver, TraceStore traceStore,
+                            AppProperties properties, StreamExecutor streamExecutor) {
         this.accountPool = accountPool;
         this.authService = authService;
-        this.kiroClient = kiroClient;
+        this.failover = failover;
         this.translator = translator;
         this.modelResolver = modelResolver;
         this.traceStore = traceStore;
+        this.properties = properties;
+        this.streamExecutor = streamExecutor;
     }
 
     /**
@@ -68,6 +83,11 @@ public class ClaudeController {
      */
     @PostMapping(value = "/messages")
     public Mono<Void> messages(@RequestBody String body, ServerWebExchange exchange) {
+        // 解析 JSON、建立追踪、解析模型、选账号整体放到 boundedElastic，事件循环线程只做网络 I/O
+        return Mono.defer(() -> handleMessages(body, exchange)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Void> handleMessages(String body, ServerWebExchange exchange) {
         JSONObject request = JSONObject.parseObject(body);
         boolean stream = request.getBooleanValue("stream", false);
 
@@ -83,31 +103,40 @@ public class ClaudeController {
         traceCtx.recordClientRequest(body, headers, "claude", requestedModel);
         traceCtx.setStream(stream);
 
-        // 获取账号
-        Account account = accountPool.getNext();
-        traceCtx.setAccountId(account.id());
-
-        // 获取 access token
-        String accessToken = authService.getAccessToken(account.id(), account.credentials(), account.authMethod());
-
-        // 转换请求
-        RequestTranslator.TranslateResult translated = translator.translate(request, resolved.kiroModelId(), resolved.thinking());
-        String payload = translated.payload().toJsonString();
+        // 本请求占用的账号（连接阶段切换账号后更新），请求结束时归还并发名额
+        AccountLease lease = new AccountLease(accountPool);
+        // 会话指纹（仅 affinity 策略需要）：同一会话尽量落到同一账号
+        String affinityKey = accountPool.needsAffinityKey()
+                ? TraceStore.extractConversationId(request, traceCtx.apiKey()) : null;
+        // 选账号（账号都不可用时排队等待）；取 token（可能同步刷新 OIDC）、转换请求会阻塞，放到 boundedElastic 执行
+        Mono<PreparedCall> prepared = accountPool.acquire(affinityKey)
+                .doOnNext(account -> {
+                    lease.hold(account);
+                    traceCtx.setAffinityHit(accountPool.recordAffinity(affinityKey, account));
+                })
+                .publishOn(Schedulers.boundedElastic())
+                .map(account -> prepare(account, request, resolved, traceCtx));
 
         DataBufferFactory bufferFactory = exchange.getResponse().bufferFactory();
 
         if (stream) {
-            exchange.getResponse().getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
-            exchange.getResponse().getHeaders().setCacheControl("no-cache");
-            Flux<String> sseFlux = streamResponse(payload, accessToken, traceCtx, account, resolved, translated.toolNameMap());
-            return exchange.getResponse().writeAndFlushWith(
-                    sseFlux.map(s -> Mono.just(bufferFactory.wrap(s.getBytes(StandardCharsets.UTF_8))))
-            );
+            // 准入控制：排队等待许可，满载时返回过载错误；流结束（含客户端断开）归还许可
+            return streamExecutor.admit().flatMap(permit -> prepared.flatMap(call -> {
+                exchange.getResponse().getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+                exchange.getResponse().getHeaders().setCacheControl("no-cache");
+                Flux<DataBuffer> sseFlux = streamResponse(call.payload(), call.accessToken(), traceCtx, lease,
+                        resolved, call.toolNameMap(), bufferFactory);
+                // 每个元素是 SseStream 攒好的一批帧（一个 DataBuffer），flush 一次
+                return exchange.getResponse().writeAndFlushWith(sseFlux.map(Mono::just));
+            }).doFinally(signal -> {
+                permit.release();
+                lease.release();
+            }));
         }
 
         // 非流式：直接写 JSON 字节，避免 Jackson 二次序列化
-        return Mono.fromCallable(() -> {
-            NonStreamResult result = callNonStream(payload, accessToken, traceCtx, account, resolved, translated.toolNameMap());
+        return prepared.map(call -> {
+            NonStreamResult result = callNonStream(call.payload(), call.accessToken(), traceCtx, lease, resolved, call.toolNameMap());
             return result.response.toJSONString();
         }).flatMap(json -> {
             exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
@@ -115,16 +144,34 @@ public class ClaudeController {
             exchange.getResponse().getHeaders().setContentLength(bytes.length);
             DataBuffer buffer = bufferFactory.wrap(bytes);
             return exchange.getResponse().writeWith(Mono.just(buffer));
-        });
+        }).doFinally(signal -> lease.release());
+    }
+
+    /**
+     * 获取 access token、转换请求（阻塞操作，不可在事件循环线程调用）
+     */
+    private PreparedCall prepare(Account account, JSONObject request, ModelResolver.ResolveResult resolved,
+                                 TraceContext traceCtx) {
+        traceCtx.setAccountId(account.id());
+
+        // 获取 access token
+        String accessToken = authService.getAccessToken(account.id(), account.credentials(), account.authMethod());
+
+        // 转换请求
+        RequestTranslator.TranslateResult translated = translator.translate(request, resolved.kiroModelId(), resolved.thinking());
+        return new PreparedCall(accessToken, translated.payload().toJsonString(), translated.toolNameMap());
     }
 
     // ==================== 流式响应 ====================
 
-    private Flux<String> streamResponse(String payload, String accessToken,
-                                         TraceContext traceCtx, Account account,
-                                         ModelResolver.ResolveResult resolved,
-                                         Map<String, String> toolNameMap) {
-        Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
+    private Flux<DataBuffer> streamResponse(String payload, String accessToken,
+                                            TraceContext traceCtx, AccountLease lease,
+                                            ModelResolver.ResolveResult resolved,
+                                            Map<String, String> toolNameMap,
+                                            DataBufferFactory bufferFactory) {
+        SseStream sink = new SseStream(properties.getSse(), SseEncoder.claude(), bufferFactory);
+        sink.onDeltaFlush(traceCtx::recordDeltaSent);
+        StreamCancellation cancellation = new StreamCancellation();
         Map<String, String> reverseToolMap = reverseMap(toolNameMap);
         boolean thinkingEnabled = resolved.thinking();
         ThinkingParser thinkingParser = thinkingEnabled ? new ThinkingParser() : null;
@@ -154,221 +201,270 @@ public class ClaudeController {
         ModelResolver.ModelInfo modelInfo = modelResolver.getModelInfo(resolved.kiroModelId());
         final int maxTokens = modelInfo != null ? modelInfo.maxTokens : 200000;
 
-        new Thread(() -> {
-            try {
-                kiroClient.callStream(payload, accessToken, traceCtx, new StreamCallback() {
-
-                    /**
-                     * 确保 thinking 块已关闭
-                     */
-                    private void closeThinkingBlockIfOpen() {
-                        if (thinkingBlockStarted[0]) {
-                            emitEvent(sink, "content_block_stop", JSONObject.of("type", "content_block_stop", //
-                                    "index", blockIndex[0]));
-                            thinkingBlockStarted[0] = false;
-                            blockIndex[0]++;
-                        }
-                    }
+        StreamCallback callback = new StreamCallback() {
+
+            /**
+             * 确保 thinking 块已关闭
+             */
+            private void closeThinkingBlockIfOpen() {
+                if (thinkingBlockStarted[0]) {
+                    emitEvent(sink, "content_block_stop", JSONObject.of("type", "content_block_stop", //
+                            "index", blockIndex[0]));
+                    thinkingBlockStarted[0] = false;
+                    blockIndex[0]++;
+                }
+            }
 
-                    /**
-                     * 确保 text 块已开启
-                     */
-                    private void ensureTextBlockStarted() {
-                        if (!textBlockStarted[0]) {
-                            closeThinkingBlockIfOpen();
-                            emitEvent(sink, "content_block_start", JSONObject.of("type", "content_block_start", //
-                                    "index", blockIndex[0], //
-                                    "content_block", JSONObject.of("type", "text", "text", "")));
-                            textBlockStarted[0] = true;
-                        }
-                    }
+            /**
+             * 确保 text 块已开启
+             */
+            private void ensureTextBlockStarted() {
+                if (!textBlockStarted[0]) {
+                    closeThinkingBlockIfOpen();
+                    emitEvent(sink, "content_block_start", JSONObject.of("type", "content_block_start", //
+                            "index", blockIndex[0], //
+                            "content_block", JSONObject.of("type", "text", "text", "")));
+                    textBlockStarted[0] = true;
+                }
+            }
 
-                    /**
-                     * 关闭 text 块（如果已开启）
-                     */
-                    private void closeTextBlockIfOpen() {
-                        if (textBlockStarted[0]) {
-                            emitEvent(sink, "content_block_stop", JSONObject.of("type", "content_block_stop", //
-                                    "index", blockIndex[0]));
-                            textBlockStarted[0] = false;
-                            blockIndex[0]++;
-                        }
-                    }
+            /**
+             * 关闭 text 块（如果已开启）
+             */
+            private void closeTextBlockIfOpen() {
+                if (textBlockStarted[0]) {
+                    emitEvent(sink, "content_block_stop", JSONObject.of("type", "content_block_stop", //
+                            "index", blockIndex[0]));
+                    textBlockStarted[0] = false;
+                    blockIndex[0]++;
+                }
+            }
 
-                    @Override
-                    public void onText(String text) {
-                        outputLength[0] += text.length();
-                        if (thinkingParser == null) {
-                            ensureTextBlockStarted();
-                            emitEvent(sink, "content_block_delta", JSONObject.of("type", "content_block_delta", //
-                                    "index", blockIndex[0], //
-                                    "delta", JSONObject.of("type", "text_delta", "text", text)));
-                            return;
-                        }
-                        ThinkingParser.ParseResult parsed = thinkingParser.feed(text);
-                        if (parsed.hasThinking()) {
-                            onThinking(parsed.thinkingDelta());
-                        }
-                        if (parsed.hasContent()) {
-                            // <thinking> 标签前的空白不应触发 text 块开启，否则会关闭刚开启的 thinking 块
-                            if (parsed.hasThinking() && parsed.contentDelta().isBlank()) {
-                                return;
-                            }
-                            ensureTextBlockStarted();
-                            emitEvent(sink, "content_block_delta", JSONObject.of("type", "content_block_delta", //
-                                    "index", blockIndex[0], //
-                                    "delta", JSONObject.of("type", "text_delta", "text", parsed.contentDelta())));
-                        }
+            @Override
+            public void onText(String text) {
+                outputLength[0] += text.length();
+                if (thinkingParser == null) {
+                    ensureTextBlockStarted();
+                    sink.emitDelta(SseStream.DeltaType.TEXT, blockIndex[0], text);
+                    return;
+                }
+                ThinkingParser.ParseResult parsed = thinkingParser.feed(text);
+                if (parsed.hasThinking()) {
+                    onThinking(parsed.thinkingDelta());
+                }
+                if (parsed.hasContent()) {
+                    // <thinking> 标签前的空白不应触发 text 块开启，否则会关闭刚开启的 thinking 块
+                    if (parsed.hasThinking() && parsed.contentDelta().isBlank()) {
+                        return;
                     }
+                    ensureTextBlockStarted();
+                    sink.emitDelta(SseStream.DeltaType.TEXT, blockIndex[0], parsed.contentDelta());
+                }
+            }
 
-                    @Override
-                    public void onThinking(String thinking) {
-                        outputLength[0] += thinking.length();
-                        // 防御性关闭 text 块（避免块嵌套）
-                        closeTextBlockIfOpen();
-                        // 开启 thinking 内容块（如果尚未开启）
-                        if (!thinkingBlockStarted[0]) {
-                            JSONObject thinkingBlock = new JSONObject();
-                            thinkingBlock.put("type", "thinking");
-                            thinkingBlock.put("thinking", "");
-                            thinkingBlock.put("signature", thinkingSignature);
-                            emitEvent(sink, "content_block_start", JSONObject.of("type", "content_block_start", //
-                                    "index", blockIndex[0], //
-                                    "content_block", thinkingBlock));
-                            thinkingBlockStarted[0] = true;
-                        }
-                        // 发送 thinking delta
-                        emitEvent(sink, "content_block_delta", JSONObject.of("type", "content_block_delta", //
-                                "index", blockIndex[0], //
-                                "delta", JSONObject.of("type", "thinking_delta", "thinking", thinking)));
-                    }
+            @Override
+            public void onThinking(String thinking) {
+                outputLength[0] += thinking.length();
+                // 防御性关闭 text 块（避免块嵌套）
+                closeTextBlockIfOpen();
+                // 开启 thinking 内容块（如果尚未开启）
+                if (!thinkingBlockStarted[0]) {
+                    JSONObject thinkingBlock = new JSONObject();
+                    thinkingBlock.put("type", "thinking");
+                    thinkingBlock.put("thinking", "");
+                    thinkingBlock.put("signature", thinkingSignature);
+                    emitEvent(sink, "content_block_start", JSONObject.of("type", "content_block_start", //
+                            "index", blockIndex[0], //
+                            "content_block", thinkingBlock));
+                    thinkingBlockStarted[0] = true;
+                }
+                // 发送 thinking delta
+                sink.emitDelta(SseStream.DeltaType.THINKING, blockIndex[0], thinking);
+            }
 
-                    @Override
-                    public void onToolUseStart(String toolUseId, String name) {
-                        hasToolUse[0] = true;
-                        String originalName = reverseToolMap.getOrDefault(name, name);
-
-                        // 关闭已有的 thinking/text 块
-                        closeThinkingBlockIfOpen();
-                        closeTextBlockIfOpen();
-
-                        // 开始 tool_use block
-                        JSONObject toolBlock = new JSONObject();
-                        toolBlock.put("type", "tool_use");
-                        toolBlock.put("id", "toolu_" + toolUseId);
-                        toolBlock.put("name", originalName);
-                        toolBlock.put("input", new JSONObject());
-                        emitEvent(sink, "content_block_start", JSONObject.of("type", "content_block_start", //
-                                "index", blockIndex[0], //
-                                "content_block", toolBlock));
-                    }
+            @Override
+            public void onToolUseStart(String toolUseId, String name) {
+                hasToolUse[0] = true;
+                String originalName = reverseToolMap.getOrDefault(name, name);
+
+                // 关闭已有的 thinking/text 块
+                closeThinkingBlockIfOpen();
+                closeTextBlockIfOpen();
+
+                // 开始 tool_use block
+                JSONObject toolBlock = new JSONObject();
+                toolBlock.put("type", "tool_use");
+                toolBlock.put("id", "toolu_" + toolUseId);
+                toolBlock.put("name", originalName);
+                toolBlock.put("input", new JSONObject());
+                emitEvent(sink, "content_block_start", JSONObject.of("type", "content_block_start", //
+                        "index", blockIndex[0], //
+                        "content_block", toolBlock));
+            }
 
-                    @Override
-                    public void onToolUseInput(String toolUseId, String inputDelta) {
-                        emitEvent(sink, "content_block_delta", JSONObject.of("type", "content_block_delta", //
-                                "index", blockIndex[0], //
-                                "delta", JSONObject.of("type", "input_json_delta", "partial_json", inputDelta)));
-                    }
+            @Override
+            public void onToolUseInput(String toolUseId, String inputDelta) {
+                sink.emitDelta(SseStream.DeltaType.TOOL_INPUT, blockIndex[0], inputDelta);
+            }
 
-                    @Override
-                    public void onToolUseEnd(String toolUseId) {
-                        emitEvent(sink, "content_block_stop", JSONObject.of("type", "content_block_stop", //
-                                "index", blockIndex[0]));
-                        blockIndex[0]++;
-                    }
+            @Override
+            public void onToolUseEnd(String toolUseId) {
+                emitEvent(sink, "content_block_stop", JSONObject.of("type", "content_block_stop", //
+                        "index", blockIndex[0]));
+                blockIndex[0]++;
+            }
 
-                    @Override
-                    public void onUsage(int inputTokens, int outputTokens) {}
+            @Override
+            public void onUsage(int inputTokens, int outputTokens) {}
 
-                    @Override
-                    public void onCredits(double c) {
-                        traceCtx.recordCredits(c);
-                    }
+            @Override
+            public void onCredits(double c) {
+                traceCtx.recordCredits(c);
+            }
 
-                    @Override
-                    public void onContextUsage(double percentage) {
-                        contextUsagePct[0] = percentage;
-                    }
+            @Override
+            public void onContextUsage(double percentage) {
+                contextUsagePct[0] = percentage;
+            }
 
-                    @Override
-                    public void onComplete() {
-                        if (thinkingParser != null) {
-                            ThinkingParser.ParseResult last = thinkingParser.finish();
-                            if (last.hasThinking()) {
-                                onThinking(last.thinkingDelta());
-                            }
-                            if (last.hasContent()) {
-                                ensureTextBlockStarted();
-                                emitEvent(sink, "content_block_delta", JSONObject.of("type", "content_block_delta", //
-                                        "index", blockIndex[0], //
-                                        "delta", JSONObject.of("type", "text_delta", "text", last.contentDelta())));
-                            }
-                        }
+            @Override
+            public void onComplete() {
+                // 客户端已断开时由取消流程负责记录
+                if (!cancellation.finish()) {
+                    return;
+                }
+                if (thinkingParser != null) {
+                    ThinkingParser.ParseResult last = thinkingParser.finish();
+                    if (last.hasThinking()) {
+                        onThinking(last.thinkingDelta());
+                    }
+                    if (last.hasContent()) {
+                        ensureTextBlockStarted();
+                        sink.emitDelta(SseStream.DeltaType.TEXT, blockIndex[0], last.contentDelta());
+                    }
+                }
 
-                        // 关闭所有未关闭的块
-                        closeThinkingBlockIfOpen();
-                        closeTextBlockIfOpen();
+                // 关闭所有未关闭的块
+                closeThinkingBlockIfOpen();
+                closeTextBlockIfOpen();
 
-                        // 从 contextUsagePercentage 推算 token
-                        if (traceCtx.inputTokens() == 0 && contextUsagePct[0] > 0) {
-                            int outputTokens = Math.max(1, outputLength[0] / 4);
-                            int totalTokens = (int) (contextUsagePct[0] / 100.0 * maxTokens);
-                            int inputTokens = Math.max(0, totalTokens - outputTokens);
-                            traceCtx.recordTokenUsage(inputTokens, outputTokens, traceCtx.credits());
-                        }
+                // 从 contextUsagePercentage 推算 token
+                if (traceCtx.inputTokens() == 0 && contextUsagePct[0] > 0) {
+                    int outputTokens = Math.max(1, outputLength[0] / 4);
+                    int totalTokens = (int) (contextUsagePct[0] / 100.0 * maxTokens);
+                    int inputTokens = Math.max(0, totalTokens - outputTokens);
+                    traceCtx.recordTokenUsage(inputTokens, outputTokens, traceCtx.credits());
+                }
 
-                        // message_delta
-                        String stopReason = hasToolUse[0] ? "tool_use" : "end_turn";
-                        JSONObject msgDelta = new JSONObject();
-                        msgDelta.put("type", "message_delta");
-                        JSONObject deltaObj = new JSONObject();
-                        deltaObj.put("stop_reason", stopReason);
-                        deltaObj.put("stop_sequence", null);
-                        msgDelta.put("delta", deltaObj);
-                        msgDelta.put("usage", JSONObject.of( //
-                                "input_tokens", traceCtx.inputTokens(), //
-                                "output_tokens", traceCtx.outputTokens() //
-                        ));
-                        emitEvent(sink, "message_delta", msgDelta);
-
-                        // message_stop
-                        emitEvent(sink, "message_stop", JSONObject.of("type", "message_stop"));
-                        sink.tryEmitComplete();
-
-                        // 记录成功
-                        accountPool.recordSuccess(account.id(), traceCtx.inputTokens(), traceCtx.outputTokens(), traceCtx.credits());
-                        traceCtx.recordClientResponse("[streaming]", 200);
-                        traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
-                    }
+                // message_delta
+                String stopReason = hasToolUse[0] ? "tool_use" : "end_turn";
+                JSONObject msgDelta = new JSONObject();
+                msgDelta.put("type", "message_delta");
+                JSONObject deltaObj = new JSONObject();
+                deltaObj.put("stop_reason", stopReason);
+                deltaObj.put("stop_sequence", null);
+                msgDelta.put("delta", deltaObj);
+                msgDelta.put("usage", JSONObject.of( //
+                        "input_tokens", traceCtx.inputTokens(), //
+                        "output_tokens", traceCtx.outputTokens() //
+                ));
+                emitEvent(sink, "message_delta", msgDelta);
+
+                // message_stop
+                emitEvent(sink, "message_stop", JSONObject.of("type", "message_stop"));
+                sink.complete();
+
+                // 记录成功
+                accountPool.recordSuccess(lease.account().id(), traceCtx.inputTokens(), traceCtx.outputTokens(), traceCtx.credits());
+                traceCtx.recordClientResponse("[streaming]", 200);
+                traceStore.saveWithRequestLog(traceCtx.toTraceLog(), lease.account().name());
+            }
 
-                    @Override
-                    public void onError(String error) {
-                        traceCtx.recordError(error);
-                        accountPool.recordError(account.id(), false);
-                        traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
-                        sink.tryEmitComplete();
-                    }
-                });
-            } catch (Exception e) {
-                log.error("Claude 流式请求异常", e);
-                traceCtx.recordError(e.getMessage());
-                accountPool.recordError(account.id(), e.getMessage() != null && e.getMessage().contains("429"));
-                traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
-                sink.tryEmitComplete();
+            @Override
+            public void onError(String error) {
+                // 客户端已断开时由取消流程负责记录
+                if (!cancellation.finish()) {
+                    return;
+                }
+                traceCtx.recordError(error);
+                accountPool.recordError(lease.account().id(), false);
+                traceStore.saveWithRequestLog(traceCtx.toTraceLog(), lease.account().name());
+                sink.complete();
             }
-        }).start();
+        };
+
+        // 异步模式：sendAsync 非阻塞读取，不占用线程
+        if (properties.getStream().isAsync()) {
+            Disposable upstream = failover.callStreamAsync(lease, accessToken, payload, traceCtx, callback)
+                    .subscribe(null, e -> onStreamFailure(e, cancellation, traceCtx, lease.account(), sink));
+            cancellation.onCancel(upstream::dispose);
+        } else {
+            streamExecutor.execute(() -> {
+                try {
+                    failover.callStream(lease, accessToken, payload, traceCtx, callback, cancellation);
+                } catch (Exception e) {
+                    onStreamFailure(e, cancellation, traceCtx, lease.account(), sink);
+                }
+            });
+        }
+
+        // 客户端断开：中止上游读取
+        return sink.asFlux().doOnCancel(() -> onClientCancel(cancellation, traceCtx, lease.account(), outputLength[0]));
+    }
 
-        return sink.asFlux();
+    /**
+     * 流式请求失败（连接阶段异常）：记录错误并结束 SSE
+     */
+    private void onStreamFailure(Throwable e, StreamCancellation cancellation, TraceContext traceCtx,
+                                 Account account, SseStream sink) {
+        if (!cancellation.finish()) {
+            return;
+        }
+        log.error("Claude 流式请求异常", e);
+        traceCtx.recordError(e.getMessage());
+        recordAccountError(account, e);
+        traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
+        sink.complete();
     }
 
-    private void emitEvent(Sinks.Many<String> sink, String eventType, JSONObject data) {
-        sink.tryEmitNext("event: " + eventType + "\ndata: " + data.toJSONString() + "\n\n");
+    /**
+     * 计入账号错误；本地准入拒绝（并发或上游连接已满）和网络异常与账号无关，不计
+     */
+    private void recordAccountError(Account account, Throwable e) {
+        if (e instanceof OverloadedException || e instanceof KiroApiException kiro && kiro.isTransportError()) {
+            return;
+        }
+        accountPool.recordError(account.id(), e.getMessage() != null && e.getMessage().contains("429"));
+    }
+
+    /**
+     * 客户端断开：中止上游读取，按已输出字符估算 output token 并记录
+     */
+    private void onClientCancel(StreamCancellation cancellation, TraceContext traceCtx, Account account, int outputLength) {
+        if (!cancellation.cancel()) {
+            return;
+        }
+        // 回调在 Netty 事件循环上执行，这里只发出中止信号，落库移到 boundedElastic
+        Schedulers.boundedElastic().schedule(() -> {
+            log.info("客户端断开，已中止上游流: traceId={}", traceCtx.traceId());
+            if (traceCtx.outputTokens() == 0) {
+                traceCtx.recordTokenUsage(traceCtx.inputTokens(), outputLength / 4, traceCtx.credits());
+            }
+            traceCtx.recordClientCancelled();
+            Metrics.instance().increment("streams_client_cancelled_total");
+            Metrics.instance().add("streams_client_cancelled_output_tokens_total", traceCtx.outputTokens());
+            traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
+        });
+    }
+
+    private void emitEvent(SseStream sink, String eventType, JSONObject data) {
+        sink.emit("event: " + eventType + "\ndata: " + data.toJSONString() + "\n\n");
     }
 
     // ==================== 非流式响应 ====================
 
     private NonStreamResult callNonStream(String payload, String accessToken,
-                                           TraceContext traceCtx, Account account,
+                                           TraceContext traceCtx, AccountLease lease,
                                            ModelResolver.ResolveResult resolved,
                                            Map<String, String> toolNameMap) {
         StringBuilder contentBuilder = new StringBuilder();
@@ -383,7 +479,7 @@ public class ClaudeController {
         Map<String, JSONObject> toolUseBuffers = new LinkedHashMap<>();
 
         try {
-            kiroClient.callStream(payload, accessToken, traceCtx, new StreamCallback() {
+            failover.callStream(lease, accessToken, payload, traceCtx, new StreamCallback() {
                 @Override
                 public void onText(String text) {
                     if (thinkingParser == null) {
@@ -476,7 +572,7 @@ public class ClaudeController {
                 public void onError(String error) {
                     traceCtx.recordError(error);
                 }
-            });
+            }, new StreamCancellation());
 
             // 从 contextUsagePercentage 推算 token
             // thinking + 正文都计入 output
@@ -497,15 +593,15 @@ public class ClaudeController {
                     resolved.requestedModel(), stopReason
             );
 
-            accountPool.recordSuccess(account.id(), traceCtx.inputTokens(), traceCtx.outputTokens(), traceCtx.credits());
+            accountPool.recordSuccess(lease.account().id(), traceCtx.inputTokens(), traceCtx.outputTokens(), traceCtx.credits());
             traceCtx.recordClientResponse(response.toJSONString(), 200);
-            traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
+            traceStore.saveWithRequestLog(traceCtx.toTraceLog(), lease.account().name());
 
             return new NonStreamResult(response);
         } catch (Exception e) {
-            accountPool.recordError(account.id(), e.getMessage() != null && e.getMessage().contains("429"));
+            recordAccountError(lease.account(), e);
             traceCtx.recordError(e.getMessage());
-            traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
+            traceStore.saveWithRequestLog(traceCtx.toTraceLog(), lease.account().name());
             throw e;
         }
     }
@@ -527,4 +623,6 @@ public class ClaudeController {
     }
 
     private record NonStreamResult(JSONObject response) {}
+
+    private record PreparedCall(String accessToken, String payload, Map<String, String> toolNameMap) {}
 }
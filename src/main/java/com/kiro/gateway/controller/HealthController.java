@@ -2,7 +2,10 @@ package com.kiro.gateway.controller;
 
 import com.alibaba.fastjson2.JSONObject;
 import com.kiro.gateway.pool.AccountPool;
+import com.kiro.gateway.proxy.ConnectionWarmer;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RestController;
 import reactor.core.publisher.Mono;
@@ -14,9 +17,11 @@ import reactor.core.publisher.Mono;
 public class HealthController {
 
     private final AccountPool accountPool;
+    private final ConnectionWarmer connectionWarmer;
 
-    public HealthController(AccountPool accountPool) {
+    public HealthController(AccountPool accountPool, ConnectionWarmer connectionWarmer) {
         this.accountPool = accountPool;
+        this.connectionWarmer = connectionWarmer;
     }
 
     @GetMapping(value = "/health", produces = MediaType.APPLICATION_JSON_VALUE)
@@ -25,6 +30,7 @@ public class HealthController {
         JSONObject result = new JSONObject();
         result.put("status", stats.active() > 0 ? "ok" : "degraded");
         result.put("version", "1.0.0");
+        result.put("ready", connectionWarmer.isReady());
         result.put("accounts", JSONObject.of( //
                 "total", stats.total(), //
                 "active", stats.active(), //
@@ -33,4 +39,14 @@ public class HealthController {
         result.put("totalRequests", stats.totalRequests());
         return Mono.just(result.toJSONString());
     }
+
+    /**
+     * 就绪检查：上游连接预热完成前返回 503
+     */
+    @GetMapping(value = "/health/ready", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Mono<ResponseEntity<String>> ready() {
+        boolean ready = connectionWarmer.isReady();
+        String body = JSONObject.of("ready", ready).toJSONString();
+        return Mono.just(ResponseEntity.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(body));
+    }
 }
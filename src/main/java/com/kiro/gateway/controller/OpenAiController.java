@@ -3,17 +3,26 @@ package com.kiro.gateway.controller;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import com.kiro.gateway.auth.AuthService;
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.exception.KiroApiException;
+import com.kiro.gateway.exception.OverloadedException;
 import com.kiro.gateway.model.ModelResolver;
 import com.kiro.gateway.pool.Account;
+import com.kiro.gateway.pool.AccountLease;
 import com.kiro.gateway.pool.AccountPool;
-import com.kiro.gateway.proxy.KiroApiClient;
+import com.kiro.gateway.proxy.AccountFailover;
 import com.kiro.gateway.proxy.StreamCallback;
+import com.kiro.gateway.proxy.StreamCancellation;
+import com.kiro.gateway.proxy.StreamExecutor;
+import com.kiro.gateway.sse.SseEncoder;
+import com.kiro.gateway.sse.SseStream;
 import com.kiro.gateway.trace.TraceContext;
 import com.kiro.gateway.trace.TraceFilter;
 import com.kiro.gateway.trace.TraceStore;
 import com.kiro.gateway.translator.OpenAiTranslator;
 import com.kiro.gateway.translator.RequestTranslator;
 import com.kiro.gateway.translator.ThinkingParser;
+import com.kiro.gateway.util.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.buffer.DataBuffer;
@@ -25,9 +34,10 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ServerWebExchange;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
@@ -50,20 +60,25 @@ public class OpenAiController {
 
     private final AccountPool accountPool;
     private final AuthService authService;
-    private final KiroApiClient kiroClient;
+    private final AccountFailover failover;
     private final OpenAiTranslator translator;
     private final ModelResolver modelResolver;
     private final TraceStore traceStore;
+    private final AppProperties properties;
+    private final StreamExecutor streamExecutor;
 
     public OpenAiController(AccountPool accountPool, AuthService authService,
-                            KiroApiClient kiroClient, OpenAiTranslator translator,
-                            ModelResolver modelResolver, TraceStore traceStore) {
+                            AccountFailover failover, OpenAiTranslator translator,
+                            ModelResolver modelResolver, TraceStore traceStore,
+                            AppProperties properties, StreamExecutor streamExecutor) {
         this.accountPool = accountPool;
         this.authService = authService;
-        this.kiroClient = kiroClient;
+        this.failover = failover;
         this.translator = translator;
         this.modelResolver = modelResolver;
         this.traceStore = traceStore;
+        this.properties = properties;
+        this.streamExecutor = streamExecutor;
     }
 
     /**
@@ -71,6 +86,11 @@ public class OpenAiController {
      */
     @PostMapping(value = "/chat/completions")
     public Mono<Void> chatCompletions(@RequestBody String body, ServerWebExchange exchange) {
+        // 解析 JSON、建立追踪、解析模型、选账号整体放到 boundedElastic，事件循环线程只做网络 I/O
+        return Mono.defer(() -> handleChatCompletions(body, exchange)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Void> handleChatCompletions(String body, ServerWebExchange exchange) {
         JSONObject request = JSONObject.parseObject(body);
         boolean stream = request.getBooleanValue("stream", false);
 
@@ -86,31 +106,40 @@ public class OpenAiController {
         traceCtx.recordClientRequest(body, headers, "openai", requestedModel);
         traceCtx.setStream(stream);
 
-        // 获取账号
-        Account account = accountPool.getNext();
-        traceCtx.setAccountId(account.id());
-
-        // 获取 access token
-        String accessToken = authService.getAccessToken(account.id(), account.credentials(), account.authMethod());
-
-        // 转换请求
-        RequestTranslator.TranslateResult translated = translator.translate(request, resolved.kiroModelId(), resolved.thinking());
-        String payload = translated.payload().toJsonString();
+        // 本请求占用的账号（连接阶段切换账号后更新），请求结束时归还并发名额
+        AccountLease lease = new AccountLease(accountPool);
+        // 会话指纹（仅 affinity 策略需要）：同一会话尽量落到同一账号
+        String affinityKey = accountPool.needsAffinityKey()
+                ? TraceStore.extractConversationId(request, traceCtx.apiKey()) : null;
+        // 选账号（账号都不可用时排队等待）；取 token（可能同步刷新 OIDC）、转换请求会阻塞，放到 boundedElastic 执行
+        Mono<PreparedCall> prepared = accountPool.acquire(affinityKey)
+                .doOnNext(account -> {
+                    lease.hold(account);
+                    traceCtx.setAffinityHit(accountPool.recordAffinity(affinityKey, account));
+                })
+                .publishOn(Schedulers.boundedElastic())
+                .map(account -> prepare(account, request, resolved, traceCtx));
 
         DataBufferFactory bufferFactory = exchange.getResponse().bufferFactory();
 
         if (stream) {
-            exchange.getResponse().getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
-            exchange.getResponse().getHeaders().setCacheControl("no-cache");
-            Flux<String> sseFlux = streamResponse(payload, accessToken, traceCtx, account, resolved, translated.toolNameMap());
-            return exchange.getResponse().writeAndFlushWith(
-                    sseFlux.map(s -> Mono.just(bufferFactory.wrap(s.getBytes(StandardCharsets.UTF_8))))
-            );
+            // 准入控制：排队等待许可，满载时返回过载错误；流结束（含客户端断开）归还许可
+            return streamExecutor.admit().flatMap(permit -> prepared.flatMap(call -> {
+                exchange.getResponse().getHeaders().setContentType(MediaType.TEXT_EVENT_STREAM);
+                exchange.getResponse().getHeaders().setCacheControl("no-cache");
+                Flux<DataBuffer> sseFlux = streamResponse(call.payload(), call.accessToken(), traceCtx, lease,
+                        resolved, call.toolNameMap(), bufferFactory);
+                // 每个元素是 SseStream 攒好的一批帧（一个 DataBuffer），flush 一次
+                return exchange.getResponse().writeAndFlushWith(sseFlux.map(Mono::just));
+            }).doFinally(signal -> {
+                permit.release();
+                lease.release();
+            }));
         }
 
         // 非流式：直接写 JSON 字节，避免 Jackson 二次序列化
-        return Mono.fromCallable(() -> {
-            NonStreamResult result = callNonStream(payload, accessToken, traceCtx, account, resolved, translated.toolNameMap());
+        return prepared.map(call -> {
+            NonStreamResult result = callNonStream(call.payload(), call.accessToken(), traceCtx, lease, resolved, call.toolNameMap());
             return result.response.toJSONString();
         }).flatMap(json -> {
             exchange.getResponse().getHeaders().setContentType(MediaType.APPLICATION_JSON);
@@ -118,7 +147,22 @@ public class OpenAiController {
             exchange.getResponse().getHeaders().setContentLength(bytes.length);
             DataBuffer buffer = bufferFactory.wrap(bytes);
             return exchange.getResponse().writeWith(Mono.just(buffer));
-        });
+        }).doFinally(signal -> lease.release());
+    }
+
+    /**
+     * 获取 access token、转换请求（阻塞操作，不可在事件循环线程调用）
+     */
+    private PreparedCall prepare(Account account, JSONObject request, ModelResolver.ResolveResult resolved,
+                                 TraceContext traceCtx) {
+        traceCtx.setAccountId(account.id());
+
+        // 获取 access token
+        String accessToken = authService.getAccessToken(account.id(), account.credentials(), account.authMethod());
+
+        // 转换请求
+        RequestTranslator.TranslateResult translated = translator.translate(request, resolved.kiroModelId(), resolved.thinking());
+        return new PreparedCall(accessToken, translated.payload().toJsonString(), translated.toolNameMap());
     }
 
     /**
@@ -143,17 +187,21 @@ public class OpenAiController {
 
     // ==================== 流式响应 ====================
 
-    private Flux<String> streamResponse(String payload, String accessToken,
-                                         TraceContext traceCtx, Account account,
-                                         ModelResolver.ResolveResult resolved,
-                                         Map<String, String> toolNameMap) {
-        Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
+    private Flux<DataBuffer> streamResponse(String payload, String accessToken,
+                                            TraceContext traceCtx, AccountLease lease,
+                                            ModelResolver.ResolveResult resolved,
+                                            Map<String, String> toolNameMap,
+                                            DataBufferFactory bufferFactory) {
+        StreamCancellation cancellation = new StreamCancellation();
         Map<String, String> reverseToolMap = reverseMap(toolNameMap);
         ThinkingParser thinkingParser = resolved.thinking() ? new ThinkingParser() : null;
 
         // 整个流共享同一个 id 和 created
         final String completionId = translator.generateCompletionId();
         final long created = System.currentTimeMillis() / 1000;
+        SseStream sink = new SseStream(properties.getSse(),
+                SseEncoder.openAi(completionId, created, resolved.requestedModel()), bufferFactory);
+        sink.onDeltaFlush(traceCtx::recordDeltaSent);
 
         // 工具调用状态
         final int[] toolIndex = {0};
@@ -164,140 +212,196 @@ public class OpenAiController {
         ModelResolver.ModelInfo modelInfo = modelResolver.getModelInfo(resolved.kiroModelId());
         final int maxTokens = modelInfo != null ? modelInfo.maxTokens : 200000;
 
-        new Thread(() -> {
-            try {
-                kiroClient.callStream(payload, accessToken, traceCtx, new StreamCallback() {
-                    @Override
-                    public void onText(String text) {
-                        outputLength[0] += text.length();
-                        if (thinkingParser == null) {
-                            emitChunk(sink, completionId, created, resolved.requestedModel(), text, null, null, null, 0, 0);
-                            return;
-                        }
-                        ThinkingParser.ParseResult parsed = thinkingParser.feed(text);
-                        if (parsed.hasThinking()) {
-                            emitChunk(sink, completionId, created, resolved.requestedModel(), null, parsed.thinkingDelta(), null, null, 0, 0);
-                        }
-                        if (parsed.hasContent()) {
-                            // <thinking> 标签前的空白不需要发送
-                            if (parsed.hasThinking() && parsed.contentDelta().isBlank()) {
-                                return;
-                            }
-                            emitChunk(sink, completionId, created, resolved.requestedModel(), parsed.contentDelta(), null, null, null, 0, 0);
-                        }
+        StreamCallback callback = new StreamCallback() {
+            @Override
+            public void onText(String text) {
+                outputLength[0] += text.length();
+                if (thinkingParser == null) {
+                    sink.emitDelta(SseStream.DeltaType.TEXT, 0, text);
+                    return;
+                }
+                ThinkingParser.ParseResult parsed = thinkingParser.feed(text);
+                if (parsed.hasThinking()) {
+                    sink.emitDelta(SseStream.DeltaType.THINKING, 0, parsed.thinkingDelta());
+                }
+                if (parsed.hasContent()) {
+                    // <thinking> 标签前的空白不需要发送
+                    if (parsed.hasThinking() && parsed.contentDelta().isBlank()) {
+                        return;
                     }
+                    sink.emitDelta(SseStream.DeltaType.TEXT, 0, parsed.contentDelta());
+                }
+            }
 
-                    @Override
-                    public void onThinking(String thinking) {
-                        outputLength[0] += thinking.length();
-                        emitChunk(sink, completionId, created, resolved.requestedModel(), null, thinking, null, null, 0, 0);
-                    }
+            @Override
+            public void onThinking(String thinking) {
+                outputLength[0] += thinking.length();
+                sink.emitDelta(SseStream.DeltaType.THINKING, 0, thinking);
+            }
 
-                    @Override
-                    public void onToolUseStart(String toolUseId, String name) {
-                        String originalName = reverseToolMap.getOrDefault(name, name);
-                        String callId = "call_" + toolUseId;
-                        toolCallIds.put(toolUseId, callId);
-
-                        JSONObject delta = new JSONObject();
-                        delta.put("index", toolIndex[0]);
-                        delta.put("id", callId);
-                        delta.put("type", "function");
-                        delta.put("function", JSONObject.of("name", originalName, "arguments", ""));
-                        emitChunk(sink, completionId, created, resolved.requestedModel(), null, null, delta, null, 0, 0);
-                    }
+            @Override
+            public void onToolUseStart(String toolUseId, String name) {
+                String originalName = reverseToolMap.getOrDefault(name, name);
+                String callId = "call_" + toolUseId;
+                toolCallIds.put(toolUseId, callId);
+
+                JSONObject delta = new JSONObject();
+                delta.put("index", toolIndex[0]);
+                delta.put("id", callId);
+                delta.put("type", "function");
+                delta.put("function", JSONObject.of("name", originalName, "arguments", ""));
+                emitChunk(sink, completionId, created, resolved.requestedModel(), null, null, delta, null, 0, 0);
+            }
 
-                    @Override
-                    public void onToolUseInput(String toolUseId, String inputDelta) {
-                        JSONObject delta = new JSONObject();
-                        delta.put("index", toolIndex[0]);
-                        delta.put("function", JSONObject.of("arguments", inputDelta));
-                        emitChunk(sink, completionId, created, resolved.requestedModel(), null, null, delta, null, 0, 0);
-                    }
+            @Override
+            public void onToolUseInput(String toolUseId, String inputDelta) {
+                sink.emitDelta(SseStream.DeltaType.TOOL_INPUT, toolIndex[0], inputDelta);
+            }
 
-                    @Override
-                    public void onToolUseEnd(String toolUseId) {
-                        toolIndex[0]++;
-                    }
+            @Override
+            public void onToolUseEnd(String toolUseId) {
+                toolIndex[0]++;
+            }
 
-                    @Override
-                    public void onUsage(int inputTokens, int outputTokens) {}
+            @Override
+            public void onUsage(int inputTokens, int outputTokens) {}
 
-                    @Override
-                    public void onCredits(double c) {
-                        traceCtx.recordCredits(c);
-                    }
+            @Override
+            public void onCredits(double c) {
+                traceCtx.recordCredits(c);
+            }
 
-                    @Override
-                    public void onContextUsage(double percentage) {
-                        contextUsagePct[0] = percentage;
-                    }
+            @Override
+            public void onContextUsage(double percentage) {
+                contextUsagePct[0] = percentage;
+            }
 
-                    @Override
-                    public void onComplete() {
-                        if (thinkingParser != null) {
-                            ThinkingParser.ParseResult last = thinkingParser.finish();
-                            if (last.hasThinking()) {
-                                emitChunk(sink, completionId, created, resolved.requestedModel(), null, last.thinkingDelta(), null, null, 0, 0);
-                            }
-                            if (last.hasContent()) {
-                                emitChunk(sink, completionId, created, resolved.requestedModel(), last.contentDelta(), null, null, null, 0, 0);
-                            }
-                        }
-                        // 从 contextUsagePercentage 推算 token
-                        if (traceCtx.inputTokens() == 0 && contextUsagePct[0] > 0) {
-                            int outputTokens = Math.max(1, outputLength[0] / 4);
-                            int totalTokens = (int) (contextUsagePct[0] / 100.0 * maxTokens);
-                            int inputTokens = Math.max(0, totalTokens - outputTokens);
-                            traceCtx.recordTokenUsage(inputTokens, outputTokens, traceCtx.credits());
-                        }
+            @Override
+            public void onComplete() {
+                // 客户端已断开时由取消流程负责记录
+                if (!cancellation.finish()) {
+                    return;
+                }
+                if (thinkingParser != null) {
+                    ThinkingParser.ParseResult last = thinkingParser.finish();
+                    if (last.hasThinking()) {
+                        sink.emitDelta(SseStream.DeltaType.THINKING, 0, last.thinkingDelta());
+                    }
+                    if (last.hasContent()) {
+                        sink.emitDelta(SseStream.DeltaType.TEXT, 0, last.contentDelta());
+                    }
+                }
+                // 从 contextUsagePercentage 推算 token
+                if (traceCtx.inputTokens() == 0 && contextUsagePct[0] > 0) {
+                    int outputTokens = Math.max(1, outputLength[0] / 4);
+                    int totalTokens = (int) (contextUsagePct[0] / 100.0 * maxTokens);
+                    int inputTokens = Math.max(0, totalTokens - outputTokens);
+                    traceCtx.recordTokenUsage(inputTokens, outputTokens, traceCtx.credits());
+                }
 
-                        String finishReason = toolCallIds.isEmpty() ? "stop" : "tool_calls";
-                        emitChunk(sink, completionId, created, resolved.requestedModel(), null, null, null, finishReason,
-                                traceCtx.inputTokens(), traceCtx.outputTokens());
-                        sink.tryEmitNext("data: [DONE]\n\n");
-                        sink.tryEmitComplete();
+                String finishReason = toolCallIds.isEmpty() ? "stop" : "tool_calls";
+                emitChunk(sink, completionId, created, resolved.requestedModel(), null, null, null, finishReason,
+                        traceCtx.inputTokens(), traceCtx.outputTokens());
+                sink.emit("data: [DONE]\n\n");
+                sink.complete();
 
-                        // 记录成功
-                        accountPool.recordSuccess(account.id(), traceCtx.inputTokens(), traceCtx.outputTokens(), traceCtx.credits());
-                        traceCtx.recordClientResponse("[streaming]", 200);
-                        traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
-                    }
+                // 记录成功
+                accountPool.recordSuccess(lease.account().id(), traceCtx.inputTokens(), traceCtx.outputTokens(), traceCtx.credits());
+                traceCtx.recordClientResponse("[streaming]", 200);
+                traceStore.saveWithRequestLog(traceCtx.toTraceLog(), lease.account().name());
+            }
 
-                    @Override
-                    public void onError(String error) {
-                        traceCtx.recordError(error);
-                        accountPool.recordError(account.id(), false);
-                        traceCtx.recordClientResponse("{\"error\":\"" + error + "\"}", 500);
-                        traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
-                        sink.tryEmitComplete();
-                    }
-                });
-            } catch (Exception e) {
-                log.error("流式请求异常", e);
-                traceCtx.recordError(e.getMessage());
-                accountPool.recordError(account.id(), e.getMessage() != null && e.getMessage().contains("429"));
-                traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
-                sink.tryEmitComplete();
+            @Override
+            public void onError(String error) {
+                // 客户端已断开时由取消流程负责记录
+                if (!cancellation.finish()) {
+                    return;
+                }
+                traceCtx.recordError(error);
+                accountPool.recordError(lease.account().id(), false);
+                traceCtx.recordClientResponse("{\"error\":\"" + error + "\"}", 500);
+                traceStore.saveWithRequestLog(traceCtx.toTraceLog(), lease.account().name());
+                sink.complete();
             }
-        }).start();
+        };
+
+        // 异步模式：sendAsync 非阻塞读取，不占用线程
+        if (properties.getStream().isAsync()) {
+            Disposable upstream = failover.callStreamAsync(lease, accessToken, payload, traceCtx, callback)
+                    .subscribe(null, e -> onStreamFailure(e, cancellation, traceCtx, lease.account(), sink));
+            cancellation.onCancel(upstream::dispose);
+        } else {
+            streamExecutor.execute(() -> {
+                try {
+                    failover.callStream(lease, accessToken, payload, traceCtx, callback, cancellation);
+                } catch (Exception e) {
+                    onStreamFailure(e, cancellation, traceCtx, lease.account(), sink);
+                }
+            });
+        }
 
-        return sink.asFlux();
+        // 客户端断开：中止上游读取
+        return sink.asFlux().doOnCancel(() -> onClientCancel(cancellation, traceCtx, lease.account(), outputLength[0]));
     }
 
-    private void emitChunk(Sinks.Many<String> sink, String completionId, long created,
+    /**
+     * 流式请求失败（连接阶段异常）：记录错误并结束 SSE
+     */
+    private void onStreamFailure(Throwable e, StreamCancellation cancellation, TraceContext traceCtx,
+                                 Account account, SseStream sink) {
+        if (!cancellation.finish()) {
+            return;
+        }
+        log.error("流式请求异常", e);
+        traceCtx.recordError(e.getMessage());
+        recordAccountError(account, e);
+        traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
+        sink.complete();
+    }
+
+    /**
+     * 计入账号错误；本地准入拒绝（并发或上游连接已满）和网络异常与账号无关，不计
+     */
+    private void recordAccountError(Account account, Throwable e) {
+        if (e instanceof OverloadedException || e instanceof KiroApiException kiro && kiro.isTransportError()) {
+            return;
+        }
+        accountPool.recordError(account.id(), e.getMessage() != null && e.getMessage().contains("429"));
+    }
+
+    /**
+     * 客户端断开：中止上游读取，按已输出字符估算 output token 并记录
+     */
+    private void onClientCancel(StreamCancellation cancellation, TraceContext traceCtx, Account account, int outputLength) {
+        if (!cancellation.cancel()) {
+            return;
+        }
+        // 回调在 Netty 事件循环上执行，这里只发出中止信号，落库移到 boundedElastic
+        Schedulers.boundedElastic().schedule(() -> {
+            log.info("客户端断开，已中止上游流: traceId={}", traceCtx.traceId());
+            if (traceCtx.outputTokens() == 0) {
+                traceCtx.recordTokenUsage(traceCtx.inputTokens(), outputLength / 4, traceCtx.credits());
+            }
+            traceCtx.recordClientCancelled();
+            Metrics.instance().increment("streams_client_cancelled_total");
+            Metrics.instance().add("streams_client_cancelled_output_tokens_total", traceCtx.outputTokens());
+            traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
+        });
+    }
+
+    private void emitChunk(SseStream sink, String completionId, long created,
                             String model, String content, String reasoningContent,
                             JSONObject toolCallDelta, String finishReason,
                             int inputTokens, int outputTokens) {
         JSONObject chunk = translator.toOpenAiStreamChunk(completionId, created, model, content,
                 reasoningContent, toolCallDelta, finishReason, inputTokens, outputTokens);
-        sink.tryEmitNext("data: " + chunk.toJSONString() + "\n\n");
+        sink.emit("data: " + chunk.toJSONString() + "\n\n");
     }
 
     // ==================== 非流式响应 ====================
 
     private NonStreamResult callNonStream(String payload, String accessToken,
-                                           TraceContext traceCtx, Account account,
+                                           TraceContext traceCtx, AccountLease lease,
                                            ModelResolver.ResolveResult resolved,
                                            Map<String, String> toolNameMap) {
         StringBuilder contentBuilder = new StringBuilder();
@@ -313,7 +417,7 @@ public class OpenAiController {
         Map<String, JSONObject> toolCallBuffers = new LinkedHashMap<>();
 
         try {
-            kiroClient.callStream(payload, accessToken, traceCtx, new StreamCallback() {
+            failover.callStream(lease, accessToken, payload, traceCtx, new StreamCallback() {
                 @Override
                 public void onText(String text) {
                     if (thinkingParser == null) {
@@ -395,7 +499,7 @@ public class OpenAiController {
                 public void onError(String error) {
                     traceCtx.recordError(error);
                 }
-            });
+            }, new StreamCancellation());
 
             // thinking + 正文都计入 output
             if (traceCtx.inputTokens() == 0 && contextUsagePct[0] > 0) {
@@ -416,15 +520,15 @@ public class OpenAiController {
                     resolved.requestedModel(), finishReason
             );
 
-            accountPool.recordSuccess(account.id(), traceCtx.inputTokens(), traceCtx.outputTokens(), traceCtx.credits());
+            accountPool.recordSuccess(lease.account().id(), traceCtx.inputTokens(), traceCtx.outputTokens(), traceCtx.credits());
             traceCtx.recordClientResponse(response.toJSONString(), 200);
-            traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
+            traceStore.saveWithRequestLog(traceCtx.toTraceLog(), lease.account().name());
 
             return new NonStreamResult(response);
         } catch (Exception e) {
-            accountPool.recordError(account.id(), e.getMessage() != null && e.getMessage().contains("429"));
+            recordAccountError(lease.account(), e);
             traceCtx.recordError(e.getMessage());
-            traceStore.saveWithRequestLog(traceCtx.toTraceLog(), account.name());
+            traceStore.saveWithRequestLog(traceCtx.toTraceLog(), lease.account().name());
             throw e;
         }
     }
@@ -446,4 +550,6 @@ public class OpenAiController {
     }
 
     private record NonStreamResult(JSONObject response) {}
+
+    private record PreparedCall(String accessToken, String payload, Map<String, String> toolNameMap) {}
 }
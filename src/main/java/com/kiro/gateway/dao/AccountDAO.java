@@ -3,6 +3,7 @@ package com.kiro.gateway.dao;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.Instant;
 import java.util.List;
@@ -14,9 +15,11 @@ import java.util.List;
 public class AccountDAO {
 
     private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
 
-    public AccountDAO(JdbcTemplate jdbc) {
+    public AccountDAO(JdbcTemplate jdbc, TransactionTemplate tx) {
         this.jdbc = jdbc;
+        this.tx = tx;
     }
 
     public List<AccountRow> findAll() {
@@ -46,18 +49,30 @@ public class AccountDAO {
                 status, Instant.now().toString(), id);
     }
 
-    public void updateStats(String id, int requestCount, int successCount, int errorCount,
-                            int consecutiveErrors, long inputTokens, long outputTokens,
-                            double credits, String cooldownUntil, String lastUsedAt) {
-        jdbc.update("""
+    /**
+     * 批量写回账号统计（单个事务）
+     */
+    public void updateStatsBatch(List<StatsRow> rows) {
+        String now = Instant.now().toString();
+        tx.executeWithoutResult(status -> jdbc.batchUpdate("""
                         UPDATE accounts SET request_count = ?, success_count = ?, error_count = ?,
                             consecutive_errors = ?, input_tokens_total = ?, output_tokens_total = ?,
                             credits_total = ?, cooldown_until = ?, last_used_at = ?, updated_at = ?
                         WHERE id = ?
                         """,
-                requestCount, successCount, errorCount, consecutiveErrors,
-                inputTokens, outputTokens, credits, cooldownUntil, lastUsedAt,
-                Instant.now().toString(), id);
+                rows, rows.size(), (ps, row) -> {
+                    ps.setInt(1, row.requestCount());
+                    ps.setInt(2, row.successCount());
+                    ps.setInt(3, row.errorCount());
+                    ps.setInt(4, row.consecutiveErrors());
+                    ps.setLong(5, row.inputTokensTotal());
+                    ps.setLong(6, row.outputTokensTotal());
+                    ps.setDouble(7, row.creditsTotal());
+                    ps.setString(8, row.cooldownUntil());
+                    ps.setString(9, row.lastUsedAt());
+                    ps.setString(10, now);
+                    ps.setString(11, row.id());
+                }));
     }
 
     private static final RowMapper<AccountRow> ACCOUNT_ROW_MAPPER = (rs, rowNum) -> new AccountRow(
@@ -71,6 +86,10 @@ public class AccountDAO {
             rs.getString("created_at"), rs.getString("updated_at")
     );
 
+    public record StatsRow(String id, int requestCount, int successCount, int errorCount, int consecutiveErrors,
+                           long inputTokensTotal, long outputTokensTotal, double creditsTotal,
+                           String cooldownUntil, String lastUsedAt) {}
+
     public record AccountRow(String id, String name, String credentials, String authMethod, String status,
                               int requestCount, int successCount, int errorCount, int consecutiveErrors,
                               long inputTokensTotal, long outputTokensTotal, double creditsTotal,
@@ -24,16 +24,20 @@ public class RequestLogDAO {
                        int inputTokens, int outputTokens, double credits,
                        long durationMs, boolean success, String errorMessage,
                        String apiKey, boolean stream, String endpoint,
-                       String conversationId) {
+                       String conversationId, boolean clientCancelled,
+                       Long headersMs, Long ttfbMs, Long ttftMs,
+                       Double avgGapMs, Long maxGapMs, Double tokensPerSecond) {
         String now = Instant.now().toString();
         jdbc.update("""
                         INSERT INTO request_logs (timestamp, trace_id, api_type, model, account_id, account_name,
-                            input_tokens, output_tokens, credits, duration_ms, success, error_message, api_key, stream, endpoint, conversation_id, created_at)
-                        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+                            input_tokens, output_tokens, credits, duration_ms, success, error_message, api_key, stream, endpoint, conversation_id,
+                            client_cancelled, headers_ms, ttfb_ms, ttft_ms, avg_gap_ms, max_gap_ms, tokens_per_second, created_at)
+                        VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
                         """,
                 now, traceId, apiType, model, accountId, accountName,
                 inputTokens, outputTokens, credits, durationMs,
-                success ? 1 : 0, errorMessage, apiKey, stream ? 1 : 0, endpoint, conversationId, now);
+                success ? 1 : 0, errorMessage, apiKey, stream ? 1 : 0, endpoint, conversationId,
+                clientCancelled ? 1 : 0, headersMs, ttfbMs, ttftMs, avgGapMs, maxGapMs, tokensPerSecond, now);
     }
 
     public List<RequestLogRow> findPage(int limit, int offset) {
@@ -104,7 +108,7 @@ public class RequestLogDAO {
             rs.getDouble("credits"), rs.getLong("duration_ms"),
             rs.getInt("success") == 1, rs.getString("error_message"),
             rs.getString("api_key"), rs.getInt("stream") == 1, rs.getString("endpoint"),
-            rs.getString("conversation_id")
+            rs.getString("conversation_id"), rs.getInt("client_cancelled") == 1
     );
 
     private static final RowMapper<ConversationSummary> CONVERSATION_SUMMARY_MAPPER = (rs, rowNum) ->
@@ -124,7 +128,8 @@ public class RequestLogDAO {
     public record RequestLogRow(int id, String timestamp, String traceId, String apiType, String model,
                                  String accountId, String accountName, int inputTokens, int outputTokens,
                                  double credits, long durationMs, boolean success, String errorMessage,
-                                 String apiKey, boolean stream, String endpoint, String conversationId) {}
+                                 String apiKey, boolean stream, String endpoint, String conversationId,
+                                 boolean clientCancelled) {}
 
     public record ConversationSummary(String conversationId, int rounds,
                                       String firstTime, String lastTime,
@@ -3,6 +3,7 @@ package com.kiro.gateway.exception;
 import com.alibaba.fastjson2.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -30,6 +31,16 @@ public class GlobalExceptionHandler {
         return buildErrorResponse(e.getStatusCode(), "overloaded_error", e.getMessage());
     }
 
+    @ExceptionHandler(OverloadedException.class)
+    public ResponseEntity<String> handleOverloaded(OverloadedException e) {
+        log.warn("网关过载: {}", e.getMessage());
+        return ResponseEntity
+                .status(e.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(errorBody("overloaded_error", e.getMessage()));
+    }
+
     @ExceptionHandler(KiroApiException.class)
     public ResponseEntity<String> handleKiroApi(KiroApiException e) {
         log.error("Kiro API 异常: status={}, body={}", e.getStatusCode(), e.getResponseBody());
@@ -61,16 +72,19 @@ public class GlobalExceptionHandler {
     }
 
     private ResponseEntity<String> buildErrorResponse(int statusCode, String errorType, String message) {
-        JSONObject body = JSONObject.of(
+        return ResponseEntity
+                .status(HttpStatus.valueOf(Math.min(statusCode, 599)))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(errorBody(errorType, message));
+    }
+
+    private String errorBody(String errorType, String message) {
+        return JSONObject.of(
                 "type", "error", //
                 "error", JSONObject.of( //
                         "type", errorType, //
                         "message", message //
                 ) //
-        );
-        return ResponseEntity
-                .status(HttpStatus.valueOf(Math.min(statusCode, 599)))
-                .contentType(MediaType.APPLICATION_JSON)
-                .body(body.toJSONString());
+        ).toJSONString();
     }
 }
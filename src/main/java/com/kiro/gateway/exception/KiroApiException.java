@@ -9,15 +9,30 @@ import lombok.Getter;
 public class KiroApiException extends KiroGatewayException {
 
     private final String responseBody;
+    // 网络异常（连接失败、重置、超时），没有上游响应，状态码按 500 对外
+    private final boolean transportError;
 
     public KiroApiException(int statusCode, String responseBody) {
         super("Kiro API 错误: " + statusCode + " - " + responseBody, statusCode);
         this.responseBody = responseBody;
+        this.transportError = false;
     }
 
     public KiroApiException(int statusCode, String responseBody, Throwable cause) {
+        this(statusCode, responseBody, cause, false);
+    }
+
+    private KiroApiException(int statusCode, String responseBody, Throwable cause, boolean transportError) {
         super("Kiro API 错误: " + statusCode + " - " + responseBody, statusCode, cause);
         this.responseBody = responseBody;
+        this.transportError = transportError;
+    }
+
+    /**
+     * 网络异常：只记端点失败，不算账号的错误
+     */
+    public static KiroApiException transport(Throwable cause) {
+        return new KiroApiException(500, cause.getMessage(), cause, true);
     }
 
     public boolean isRateLimit() {
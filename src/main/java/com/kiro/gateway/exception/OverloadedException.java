@@ -0,0 +1,18 @@
+package com.kiro.gateway.exception;
+
+import lombok.Getter;
+
+/**
+ * 网关过载异常（并发已满且排队超限或超时）
+ */
+@Getter
+public class OverloadedException extends KiroGatewayException {
+
+    // 建议客户端重试间隔（秒），写入 Retry-After 响应头
+    private final int retryAfterSeconds;
+
+    public OverloadedException(String message, int statusCode, int retryAfterSeconds) {
+        super(message, statusCode);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -3,16 +3,21 @@ package com.kiro.gateway.pool;
 import java.time.Instant;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
 
 /**
  * Kiro 账号实体
  */
 public class Account {
 
+    // 首字节耗时 EWMA 平滑系数
+    private static final double FIRST_BYTE_EWMA_ALPHA = 0.3;
+
     private final String id;
-    private final String name;
-    private final String credentials;
-    private final String authMethod;
+    // 账号信息可在线修改，原地更新以保留运行时负载
+    private volatile String name;
+    private volatile String credentials;
+    private volatile String authMethod;
 
     private volatile String status;
     private final AtomicInteger requestCount = new AtomicInteger(0);
@@ -21,10 +26,14 @@ public class Account {
     private final AtomicInteger consecutiveErrors = new AtomicInteger(0);
     private final AtomicLong inputTokensTotal = new AtomicLong(0);
     private final AtomicLong outputTokensTotal = new AtomicLong(0);
-    private volatile double creditsTotal = 0;
+    private final DoubleAdder creditsTotal = new DoubleAdder();
     private volatile Instant cooldownUntil;
     private volatile Instant lastUsedAt;
     private final Instant createdAt;
+    // 运行时负载（不持久化）：占用中的并发名额（选中到请求结束）、进行中上游请求的估算输入 token、上游首字节耗时 EWMA（-1 表示未知）
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private final AtomicLong tokensInFlight = new AtomicLong(0);
+    private volatile double firstByteEwmaMs = -1;
 
     public Account(String id, String name, String credentials, String authMethod) {
         this.id = id;
@@ -51,12 +60,21 @@ public class Account {
         this.consecutiveErrors.set(consecutiveErrors);
         this.inputTokensTotal.set(inputTokensTotal);
         this.outputTokensTotal.set(outputTokensTotal);
-        this.creditsTotal = creditsTotal;
+        this.creditsTotal.add(creditsTotal);
         this.cooldownUntil = cooldownUntil != null ? Instant.parse(cooldownUntil) : null;
         this.lastUsedAt = lastUsedAt != null ? Instant.parse(lastUsedAt) : null;
         this.createdAt = createdAt != null ? Instant.parse(createdAt) : Instant.now();
     }
 
+    /**
+     * 更新账号信息（名称、凭证、认证方式），统计和进行中的名额保持不变
+     */
+    public void updateInfo(String name, String credentials, String authMethod) {
+        this.name = name;
+        this.credentials = credentials;
+        this.authMethod = authMethod;
+    }
+
     /**
      * 是否可用（active 且不在冷却中）
      */
@@ -84,7 +102,7 @@ public class Account {
         consecutiveErrors.set(0);
         inputTokensTotal.addAndGet(inputTokens);
         outputTokensTotal.addAndGet(outputTokens);
-        creditsTotal += credits;
+        creditsTotal.add(credits);
         lastUsedAt = Instant.now();
         cooldownUntil = null;
     }
@@ -107,6 +125,60 @@ public class Account {
         }
     }
 
+    /**
+     * 记录失败并立即冷却（账号切换前调用，不等连续错误达到阈值）
+     */
+    public void recordFailover(boolean isRateLimit, int cooldownQuotaMinutes, int cooldownErrorMinutes) {
+        requestCount.incrementAndGet();
+        errorCount.incrementAndGet();
+        consecutiveErrors.incrementAndGet();
+        lastUsedAt = Instant.now();
+        int minutes = isRateLimit ? cooldownQuotaMinutes : cooldownErrorMinutes;
+        cooldownUntil = Instant.now().plusSeconds(minutes * 60L);
+    }
+
+    /**
+     * 占用一个并发名额（与 releaseSlot 成对调用）
+     *
+     * @param maxConcurrent 并发上限，0 表示不限
+     * @return 已达上限返回 false
+     */
+    public boolean tryAcquireSlot(int maxConcurrent) {
+        while (true) {
+            int current = inFlight.get();
+            if (maxConcurrent > 0 && current >= maxConcurrent) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 归还并发名额
+     *
+     * @return 归还后的占用数
+     */
+    public int releaseSlot() {
+        return inFlight.decrementAndGet();
+    }
+
+    /**
+     * 进行中上游请求的估算 token 增减（请求开始时加、结束时减）
+     */
+    public void addTokensInFlight(long delta) {
+        tokensInFlight.addAndGet(delta);
+    }
+
+    /**
+     * 记录一次上游首字节耗时
+     */
+    public synchronized void recordFirstByte(long ms) {
+        firstByteEwmaMs = firstByteEwmaMs < 0 ? ms
+                : FIRST_BYTE_EWMA_ALPHA * ms + (1 - FIRST_BYTE_EWMA_ALPHA) * firstByteEwmaMs;
+    }
+
     /**
      * 计算智能评分（0-100）
      * <p>
@@ -147,8 +219,11 @@ public class Account {
     public int consecutiveErrors() { return consecutiveErrors.get(); }
     public long inputTokensTotal() { return inputTokensTotal.get(); }
     public long outputTokensTotal() { return outputTokensTotal.get(); }
-    public double creditsTotal() { return creditsTotal; }
+    public double creditsTotal() { return creditsTotal.sum(); }
     public Instant cooldownUntil() { return cooldownUntil; }
     public Instant lastUsedAt() { return lastUsedAt; }
     public Instant createdAt() { return createdAt; }
+    public int inFlight() { return inFlight.get(); }
+    public long tokensInFlight() { return tokensInFlight.get(); }
+    public double firstByteEwmaMs() { return firstByteEwmaMs; }
 }
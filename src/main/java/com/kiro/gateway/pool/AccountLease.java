@@ -0,0 +1,77 @@
+package com.kiro.gateway.pool;
+
+/**
+ * 单个请求占用的账号名额
+ * <p>
+ * 请求结束（可能在客户端断开的线程上）和账号切换（在上游读取线程上）会并发发生，
+ * 两者都经由本对象加锁交接，保证每个名额恰好归还一次
+ */
+public class AccountLease {
+
+    private final AccountPool pool;
+    private Account account;
+    private boolean released;
+
+    public AccountLease(AccountPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 记下刚获取到的账号（已占用名额）；请求已结束时直接归还
+     */
+    public void hold(Account account) {
+        boolean late;
+        synchronized (this) {
+            late = released;
+            if (!late) {
+                this.account = account;
+            }
+        }
+        if (late) {
+            pool.release(account);
+        }
+    }
+
+    /**
+     * 当前记账的账号；归还后仍返回最后持有的账号，供成功 / 失败记账使用
+     */
+    public synchronized Account account() {
+        return account;
+    }
+
+    /**
+     * 切换到新账号（已占用名额）并归还旧账号的名额
+     *
+     * @return 请求已结束返回 false，此时归还的是新账号的名额，调用方应停止
+     */
+    public boolean switchTo(Account next) {
+        Account returned;
+        boolean switched;
+        synchronized (this) {
+            switched = !released;
+            if (switched) {
+                returned = account;
+                account = next;
+            } else {
+                returned = next;
+            }
+        }
+        pool.release(returned);
+        return switched;
+    }
+
+    /**
+     * 请求结束，归还当前账号的名额（幂等）
+     */
+    public void release() {
+        Account held;
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+            held = account;
+        }
+        pool.release(held);
+    }
+}
@@ -3,36 +3,74 @@ package com.kiro.gateway.pool;
 import com.kiro.gateway.config.AppProperties;
 import com.kiro.gateway.dao.AccountDAO;
 import com.kiro.gateway.exception.NoAvailableAccountException;
+import com.kiro.gateway.util.Metrics;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
 
 import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToDoubleFunction;
 
 /**
  * 多账号池管理
  * <p>
- * 支持 4 种选择策略：round-robin / random / least-used / smart-score
+ * 支持 7 种选择策略：round-robin / random / least-used / smart-score / least-inflight / p2c / affinity
+ * <p>
+ * 可用账号维护在就绪集合中，选择时不再遍历全部账号；进入冷却的账号移出集合，
+ * 由 DelayQueue 在冷却到期时放回
+ * <p>
+ * 每个账号可限制并发（选中到请求结束占用一个名额）；名额占满不改就绪集合，选择时跳过，
+ * 兜底从空闲提示队列找仍有名额的账号；所有账号都不可用时请求进入等待队列
+ * <p>
+ * 统计只改内存并标记脏账号，由定时任务批量写库，关闭时再写一次
  */
 @Component
 public class AccountPool {
 
     private static final Logger log = LoggerFactory.getLogger(AccountPool.class);
 
+    // 策略结果不可用时兜底扫描的账号数（另加已排除的账号数）
+    private static final int SCAN_LIMIT = 16;
+
     private final AppProperties properties;
     private final AccountDAO accountDAO;
     private final Map<String, Account> accounts = new ConcurrentHashMap<>();
     private final AtomicInteger roundRobinIndex = new AtomicInteger(0);
+    // 全池进行中请求数，随名额占用 / 归还增减，策略不必遍历账号求和
+    private final AtomicInteger totalInFlight = new AtomicInteger(0);
+    private final ReadySet readySet = new ReadySet();
+    private final SpareQueue spare = new SpareQueue();
+    // 就绪集合与策略索引的写锁：可用性判断和两处索引更新作为一步完成，避免并发的旧判断覆盖新判断
+    private final Object indexLock = new Object();
+    private final DelayQueue<Cooldown> cooldowns = new DelayQueue<>();
+    // 账号 ID → 队列中该账号唯一一条冷却记录的到期时间，反复重建索引不再重复入队
+    private final Map<String, Instant> pendingCooldowns = new ConcurrentHashMap<>();
+    private final Thread cooldownWorker = new Thread(this::drainCooldowns, "kiro-account-cooldown");
+    private final AccountWaitQueue waitQueue;
+    // 统计有变化、尚未写库的账号 ID
+    private final Set<String> dirtyIds = ConcurrentHashMap.newKeySet();
 
     private volatile SelectionStrategy strategy;
 
     public AccountPool(AppProperties properties, AccountDAO accountDAO) {
         this.properties = properties;
         this.accountDAO = accountDAO;
+        AppProperties.AccountLimitConfig limit = properties.getAccountLimit();
+        this.waitQueue = new AccountWaitQueue(limit.getMaxQueued(), limit.getQueueTimeoutMs(),
+                key -> tryReserve(Set.of(), key), this::releaseSlot);
     }
 
     @PostConstruct
@@ -50,40 +88,318 @@ public class AccountPool {
                     row.creditsTotal(), row.cooldownUntil(), row.lastUsedAt(), row.createdAt()
             );
             accounts.put(row.id(), account);
+            reindex(account);
         }
+        cooldownWorker.setDaemon(true);
+        cooldownWorker.start();
+        Metrics.instance().gauge("accounts_ready", readySet::size);
+        Metrics.instance().gauge("account_queue_depth", waitQueue::depth);
+        Metrics.instance().gauge("accounts_in_flight", totalInFlight::get);
+        Metrics.instance().gauge("affinity_hit_rate", () -> {
+            long requests = Metrics.instance().get("affinity_requests_total");
+            return requests == 0 ? 0 : (double) Metrics.instance().get("affinity_hits_total") / requests;
+        });
         log.info("账号池初始化完成: {} 个账号, 策略={}", accounts.size(), properties.getPoolStrategy());
     }
 
+    @PreDestroy
+    public void shutdown() {
+        cooldownWorker.interrupt();
+        flushStats();
+    }
+
+    /**
+     * 把有变化的账号统计批量写库
+     */
+    @Scheduled(fixedDelayString = "${kiro.database.stats-flush-seconds:5}",
+            initialDelayString = "${kiro.database.stats-flush-seconds:5}", timeUnit = TimeUnit.SECONDS)
+    public synchronized void flushStats() {
+        if (dirtyIds.isEmpty()) {
+            return;
+        }
+        List<AccountDAO.StatsRow> rows = new ArrayList<>(dirtyIds.size());
+        for (String id : dirtyIds) {
+            // 先清标记再取值：取值之后的变化会重新标记，下一轮写入
+            dirtyIds.remove(id);
+            Account account = accounts.get(id);
+            if (account != null) {
+                rows.add(statsRow(account));
+            }
+        }
+        if (rows.isEmpty()) {
+            return;
+        }
+        try {
+            accountDAO.updateStatsBatch(rows);
+            Metrics.instance().increment("account_stats_flushes_total");
+            Metrics.instance().add("account_stats_rows_flushed_total", rows.size());
+        } catch (Exception e) {
+            // 写库失败重新标记，下一轮重试
+            rows.forEach(row -> dirtyIds.add(row.id()));
+            log.warn("账号统计写库失败: {} 个账号, error={}", rows.size(), e.getMessage());
+        }
+    }
+
     /**
      * 设置选择策略
      */
     public void setStrategy(String strategyName) {
-        this.strategy = switch (strategyName.toLowerCase()) {
+        SelectionStrategy next = switch (strategyName.toLowerCase()) {
             case "random" -> new RandomStrategy();
-            case "least-used" -> new LeastUsedStrategy();
-            case "smart-score" -> new SmartScoreStrategy();
+            case "least-used" -> new RankedStrategy(Account::requestCount);
+            case "smart-score" -> new RankedStrategy(a -> -a.calculateScore());
+            case "least-inflight" -> new LeastInFlightStrategy();
+            case "p2c" -> new PowerOfTwoStrategy();
+            case "affinity" -> new AffinityStrategy();
             default -> new RoundRobinStrategy();
         };
+        // 持索引锁发布并灌入全部账号（affinity 的哈希环含冷却中的账号），切换期间的 reindex 不会落在旧策略上
+        synchronized (indexLock) {
+            this.strategy = next;
+            for (Account account : accounts.values()) {
+                next.onUpdate(account, account.isAvailable());
+            }
+        }
         log.info("账号池策略切换为: {}", strategyName);
     }
 
     /**
-     * 获取下一个可用账号
+     * 获取一个可用账号并占用其并发名额，所有账号都在冷却或已满时排队等待；
+     * 请求结束（含失败、客户端断开）后需调用 release
+     *
+     * @param affinityKey 会话指纹（affinity 策略按它选账号），可为 null
      */
-    public Account getNext() {
-        List<Account> available = accounts.values().stream()
-                .filter(Account::isAvailable)
-                .toList();
+    public Mono<Account> acquire(String affinityKey) {
+        return Mono.defer(() -> {
+            if (accounts.isEmpty()) {
+                return Mono.error(new NoAvailableAccountException());
+            }
+            // 已有请求在排队时不插队
+            if (waitQueue.depth() == 0) {
+                Account account = tryReserve(Set.of(), affinityKey);
+                if (account != null) {
+                    return Mono.just(account);
+                }
+            }
+            return waitQueue.await(affinityKey);
+        });
+    }
 
-        if (available.isEmpty()) {
+    /**
+     * 立即获取一个可用账号并占用其并发名额，跳过指定账号（账号切换时排除已尝试过的），不排队
+     */
+    public Account getNext(Set<String> excludeIds) {
+        Account selected = tryReserve(excludeIds, null);
+        if (selected == null) {
             throw new NoAvailableAccountException();
         }
+        return selected;
+    }
+
+    /**
+     * 归还账号的并发名额，转交给排队中的请求
+     */
+    public void release(Account account) {
+        if (account == null) {
+            return;
+        }
+        releaseSlot(account);
+        waitQueue.dispatch();
+    }
+
+    /**
+     * 全池进行中请求数
+     */
+    public int totalInFlight() {
+        return totalInFlight.get();
+    }
+
+    /**
+     * 占用名额；只改账号自身的计数，占满的账号仍留在就绪集合和策略索引中
+     */
+    private boolean tryAcquireSlot(Account account, int maxConcurrent) {
+        if (!account.tryAcquireSlot(maxConcurrent)) {
+            return false;
+        }
+        totalInFlight.incrementAndGet();
+        return true;
+    }
 
-        Account selected = strategy.select(available);
-        selected.setStatus("active");
+    /**
+     * 归还名额，不转交；从占满回到可用时登记到空闲提示队列
+     */
+    private void releaseSlot(Account account) {
+        int remaining = account.releaseSlot();
+        totalInFlight.decrementAndGet();
+        int maxConcurrent = properties.getAccountLimit().getMaxConcurrent();
+        if (maxConcurrent > 0 && remaining == maxConcurrent - 1) {
+            spare.offer(account);
+        }
+    }
+
+    /**
+     * 当前策略是否需要会话指纹
+     */
+    public boolean needsAffinityKey() {
+        return strategy instanceof AffinityStrategy;
+    }
+
+    /**
+     * 统计一次会话亲和结果：选中的是否为该会话在哈希环上的首选账号
+     *
+     * @return 命中 true / 未命中 false，未使用 affinity 策略或无会话指纹返回 null
+     */
+    public Boolean recordAffinity(String affinityKey, Account selected) {
+        if (affinityKey == null || !(strategy instanceof AffinityStrategy affinity)) {
+            return null;
+        }
+        Account preferred = affinity.preferred(affinityKey);
+        boolean hit = preferred != null && preferred.id().equals(selected.id());
+        Metrics.instance().increment("affinity_requests_total");
+        Metrics.instance().increment(hit ? "affinity_hits_total" : "affinity_misses_total");
+        return hit;
+    }
+
+    private Account tryReserve(Set<String> excludeIds, String affinityKey) {
+        Account[] ready = readySet.snapshot();
+        if (ready.length == 0) {
+            return null;
+        }
+        int maxConcurrent = properties.getAccountLimit().getMaxConcurrent();
+        Account selected = strategy.select(ready, affinityKey);
+        // 策略结果被排除、已过期或名额已满时，退回到有界扫描，再退回到空闲提示队列
+        if (selected == null || excludeIds.contains(selected.id()) || !selected.isAvailable()
+                || !tryAcquireSlot(selected, maxConcurrent)) {
+            selected = scan(ready, excludeIds, maxConcurrent);
+        }
+        if (selected == null) {
+            selected = takeSpare(excludeIds, maxConcurrent);
+        }
+        if (selected != null) {
+            selected.setStatus("active");
+        }
         return selected;
     }
 
+    /**
+     * 兜底：从随机起点起最多检查 SCAN_LIMIT 个就绪账号，分散并发的兜底请求，过期项的纠正也能覆盖整个就绪集合
+     */
+    private Account scan(Account[] ready, Set<String> excludeIds, int maxConcurrent) {
+        int start = ThreadLocalRandom.current().nextInt(ready.length);
+        int limit = Math.min(ready.length, SCAN_LIMIT + excludeIds.size());
+        for (int i = 0; i < limit; i++) {
+            Account a = ready[(start + i) % ready.length];
+            if (excludeIds.contains(a.id())) {
+                continue;
+            }
+            if (!a.isAvailable()) {
+                // 就绪集合中的过期项，顺手纠正
+                reindex(a);
+                continue;
+            }
+            if (tryAcquireSlot(a, maxConcurrent)) {
+                return a;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 从空闲提示队列取一个仍有名额的账号
+     * <p>
+     * 多数账号占满时有界扫描可能错过少数空闲账号；每个提示项只处理一次，过期项直接丢弃
+     * （占满的账号归还名额时、冷却的账号回到就绪集合时会重新入队），摊还 O(1)
+     */
+    private Account takeSpare(Set<String> excludeIds, int maxConcurrent) {
+        List<Account> skipped = null;
+        Account found = null;
+        Account candidate;
+        while (found == null && (candidate = spare.poll()) != null) {
+            if (accounts.get(candidate.id()) != candidate || !candidate.isAvailable()) {
+                continue;
+            }
+            if (excludeIds.contains(candidate.id())) {
+                if (skipped == null) {
+                    skipped = new ArrayList<>();
+                }
+                skipped.add(candidate);
+                continue;
+            }
+            if (tryAcquireSlot(candidate, maxConcurrent)) {
+                found = candidate;
+            }
+        }
+        if (found != null && (maxConcurrent <= 0 || found.inFlight() < maxConcurrent)) {
+            spare.offer(found);
+        }
+        if (skipped != null) {
+            skipped.forEach(spare::offer);
+        }
+        return found;
+    }
+
+    /**
+     * 按账号当前状态更新就绪集合：可用则放入，冷却中或非 active 则移出，冷却中的登记到期时间
+     * <p>
+     * 在索引锁内重新读取可用性，并发调用按加锁顺序生效，最后一次总是基于最新状态；
+     * 已删除的账号不再放回
+     */
+    private void reindex(Account account) {
+        synchronized (indexLock) {
+            if (accounts.get(account.id()) != account) {
+                return;
+            }
+            boolean available = account.isAvailable();
+            if (available) {
+                readySet.add(account);
+                spare.offer(account);
+            } else {
+                readySet.remove(account.id());
+                Instant until = account.cooldownUntil();
+                if ("active".equals(account.status()) && until != null) {
+                    scheduleCooldown(account, until);
+                }
+            }
+            strategy.onUpdate(account, available);
+        }
+    }
+
+    /**
+     * 登记冷却到期（调用方持有索引锁）；每个账号只保留一条记录，到期时间变化时替换旧记录
+     */
+    private void scheduleCooldown(Account account, Instant until) {
+        Instant pending = pendingCooldowns.put(account.id(), until);
+        if (until.equals(pending)) {
+            return;
+        }
+        if (pending != null) {
+            cooldowns.remove(new Cooldown(account, pending));
+        }
+        cooldowns.add(new Cooldown(account, until));
+    }
+
+    /**
+     * 冷却到期后把账号放回就绪集合（以账号当前状态为准）
+     */
+    private void drainCooldowns() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Cooldown cooldown = cooldowns.take();
+                Account account = cooldown.account();
+                pendingCooldowns.remove(account.id(), cooldown.until());
+                if (accounts.get(account.id()) == account && account.isAvailable()) {
+                    reindex(account);
+                    waitQueue.dispatch();
+                    log.debug("账号冷却结束: id={}", account.id());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.warn("账号冷却恢复失败: {}", e.getMessage());
+            }
+        }
+    }
+
     /**
      * 添加账号
      */
@@ -91,6 +407,8 @@ public class AccountPool {
         String id = UUID.randomUUID().toString();
         Account account = new Account(id, name, credentials, authMethod);
         accounts.put(id, account);
+        reindex(account);
+        waitQueue.dispatch();
         accountDAO.insert(id, name, credentials, authMethod);
         log.info("添加账号: id={}, name={}", id, name);
         return id;
@@ -100,20 +418,13 @@ public class AccountPool {
      * 更新账号信息
      */
     public boolean updateAccount(String id, String name, String credentials, String authMethod) {
-        Account old = accounts.get(id);
-        if (old == null) return false;
-
-        // 用新信息 + 旧统计创建替换对象
-        Account updated = new Account(
-                id, name, credentials, authMethod,
-                old.status(), old.requestCount(), old.successCount(), old.errorCount(),
-                old.consecutiveErrors(), old.inputTokensTotal(), old.outputTokensTotal(),
-                old.creditsTotal(),
-                old.cooldownUntil() != null ? old.cooldownUntil().toString() : null,
-                old.lastUsedAt() != null ? old.lastUsedAt().toString() : null,
-                old.createdAt().toString()
-        );
-        accounts.put(id, updated);
+        Account account = accounts.get(id);
+        if (account == null) return false;
+
+        // 原地更新：进行中的请求仍持有该对象，名额归还到同一个计数上，并发上限不会被突破
+        account.updateInfo(name, credentials, authMethod);
+        reindex(account);
+        waitQueue.dispatch();
         accountDAO.updateInfo(id, name, credentials, authMethod);
         // 清除旧 token 缓存
         log.info("更新账号: id={}, name={}", id, name);
@@ -124,8 +435,16 @@ public class AccountPool {
      * 删除账号
      */
     public boolean removeAccount(String id) {
-        Account removed = accounts.remove(id);
+        Account removed;
+        synchronized (indexLock) {
+            removed = accounts.remove(id);
+            if (removed != null) {
+                readySet.remove(id);
+                strategy.onRemove(removed);
+            }
+        }
         if (removed != null) {
+            dirtyIds.remove(id);
             accountDAO.delete(id);
             log.info("删除账号: id={}, name={}", id, removed.name());
             return true;
@@ -142,7 +461,10 @@ public class AccountPool {
             return;
         }
         account.recordSuccess(inputTokens, outputTokens, credits);
-        persistAccountStats(account);
+        reindex(account);
+        // 成功会清除冷却，账号可能刚回到就绪集合
+        waitQueue.dispatch();
+        dirtyIds.add(account.id());
     }
 
     /**
@@ -157,7 +479,23 @@ public class AccountPool {
                 properties.getCooldown().getQuotaMinutes(),
                 properties.getCooldown().getErrorMinutes(),
                 properties.getCooldown().getErrorThreshold());
-        persistAccountStats(account);
+        reindex(account);
+        dirtyIds.add(account.id());
+    }
+
+    /**
+     * 记录失败并立即冷却（切换到其他账号前调用）
+     */
+    public void recordFailover(String accountId, boolean isRateLimit) {
+        Account account = accounts.get(accountId);
+        if (account == null) {
+            return;
+        }
+        account.recordFailover(isRateLimit,
+                properties.getCooldown().getQuotaMinutes(),
+                properties.getCooldown().getErrorMinutes());
+        reindex(account);
+        dirtyIds.add(account.id());
     }
 
     /**
@@ -214,8 +552,8 @@ public class AccountPool {
         return (int) accounts.values().stream().filter(Account::isAvailable).count();
     }
 
-    private void persistAccountStats(Account account) {
-        accountDAO.updateStats(
+    private static AccountDAO.StatsRow statsRow(Account account) {
+        return new AccountDAO.StatsRow(
                 account.id(), account.requestCount(), account.successCount(),
                 account.errorCount(), account.consecutiveErrors(),
                 account.inputTokensTotal(), account.outputTokensTotal(),
@@ -229,36 +567,245 @@ public class AccountPool {
 
     private class RoundRobinStrategy implements SelectionStrategy {
         @Override
-        public Account select(List<Account> available) {
-            int idx = roundRobinIndex.getAndIncrement() % available.size();
-            return available.get(idx);
+        public Account select(Account[] ready) {
+            return ready[Math.floorMod(roundRobinIndex.getAndIncrement(), ready.length)];
         }
     }
 
     private static class RandomStrategy implements SelectionStrategy {
-        private final Random random = new Random();
+        @Override
+        public Account select(Account[] ready) {
+            return ready[ThreadLocalRandom.current().nextInt(ready.length)];
+        }
+    }
+
+    /**
+     * 进行中请求最少者优先（再比进行中 token）
+     * <p>
+     * 从轮转起点起只比较 SAMPLE_SIZE 个账号，选择为 O(1)；账号不多于采样数时即精确最少，
+     * 账号更多时是有界采样的近似。轮转起点让负载相同的账号轮流选中，突发请求不会扎堆
+     */
+    private class LeastInFlightStrategy implements SelectionStrategy {
+        private static final int SAMPLE_SIZE = 8;
 
         @Override
-        public Account select(List<Account> available) {
-            return available.get(random.nextInt(available.size()));
+        public Account select(Account[] ready) {
+            int start = Math.floorMod(roundRobinIndex.getAndIncrement(), ready.length);
+            int samples = Math.min(SAMPLE_SIZE, ready.length);
+            Account best = null;
+            for (int i = 0; i < samples; i++) {
+                Account a = ready[(start + i) % ready.length];
+                if (best == null || a.inFlight() < best.inFlight()
+                        || (a.inFlight() == best.inFlight() && a.tokensInFlight() < best.tokensInFlight())) {
+                    best = a;
+                }
+            }
+            return best;
         }
     }
 
-    private static class LeastUsedStrategy implements SelectionStrategy {
+    /**
+     * 二选一（power of two choices）：随机取两个账号，选 (进行中请求 + 1) × 首字节耗时 EWMA 较小者，O(1)
+     * <p>
+     * 首字节耗时未知的一方按另一方计，都未知时只比进行中请求数
+     */
+    private static class PowerOfTwoStrategy implements SelectionStrategy {
         @Override
-        public Account select(List<Account> available) {
-            return available.stream()
-                    .min(Comparator.comparingInt(Account::requestCount))
-                    .orElse(available.get(0));
+        public Account select(Account[] ready) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            if (ready.length == 1) {
+                return ready[0];
+            }
+            int i = random.nextInt(ready.length);
+            int j = random.nextInt(ready.length - 1);
+            if (j >= i) {
+                j++;
+            }
+            Account a = ready[i];
+            Account b = ready[j];
+            double latencyA = a.firstByteEwmaMs();
+            double latencyB = b.firstByteEwmaMs();
+            if (latencyA < 0) latencyA = latencyB;
+            if (latencyB < 0) latencyB = latencyA;
+            if (latencyA < 0) latencyA = latencyB = 1;
+            double costA = (a.inFlight() + 1) * latencyA;
+            double costB = (b.inFlight() + 1) * latencyB;
+            if (costA != costB) {
+                return costA < costB ? a : b;
+            }
+            return a.tokensInFlight() <= b.tokensInFlight() ? a : b;
         }
     }
 
-    private static class SmartScoreStrategy implements SelectionStrategy {
+    /**
+     * 会话亲和：一致性哈希 + 有界负载（consistent hashing with bounded loads）
+     * <p>
+     * 哈希环包含所有 active 账号（含冷却中的），每个账号若干虚拟节点；按会话指纹落点顺时针找第一个
+     * 可用且进行中请求数低于上限的账号，上限为 ceil(loadFactor × (全池进行中 + 1) / 就绪账号数)；
+     * 首选账号冷却或过载时落到环上下一个账号，账号增减只影响相邻区间的会话。
+     * 沿环最多查看 MAX_PROBES 个节点，仍未找到或无会话指纹时按 least-inflight 选
+     */
+    private class AffinityStrategy implements SelectionStrategy {
+        private final ConcurrentSkipListMap<Long, String> ring = new ConcurrentSkipListMap<>();
+        private final Map<String, Account> members = new ConcurrentHashMap<>();
+        private static final int MAX_PROBES = 32;
+
+        private final SelectionStrategy fallback = new LeastInFlightStrategy();
+
+        @Override
+        public Account select(Account[] ready) {
+            return fallback.select(ready);
+        }
+
+        @Override
+        public Account select(Account[] ready, String affinityKey) {
+            if (affinityKey == null || ring.isEmpty()) {
+                return fallback.select(ready);
+            }
+            double loadFactor = properties.getAffinity().getLoadFactor();
+            long capacity = (long) Math.ceil(loadFactor * (totalInFlight.get() + 1) / ready.length);
+            int maxConcurrent = properties.getAccountLimit().getMaxConcurrent();
+            if (maxConcurrent > 0) {
+                capacity = Math.min(capacity, maxConcurrent);
+            }
+            long hash = hash64(affinityKey);
+            int[] probes = {MAX_PROBES};
+            Account found = firstAcceptable(ring.tailMap(hash, true).values(), capacity, probes);
+            if (found == null) {
+                found = firstAcceptable(ring.headMap(hash, false).values(), capacity, probes);
+            }
+            return found != null ? found : fallback.select(ready);
+        }
+
+        private Account firstAcceptable(Collection<String> ids, long capacity, int[] probes) {
+            for (String id : ids) {
+                if (probes[0]-- <= 0) {
+                    return null;
+                }
+                Account a = members.get(id);
+                if (a != null && a.isAvailable() && a.inFlight() < capacity) {
+                    return a;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * 会话在环上的首选账号（不看可用性和负载）
+         */
+        Account preferred(String affinityKey) {
+            Map.Entry<Long, String> entry = ring.ceilingEntry(hash64(affinityKey));
+            if (entry == null) {
+                entry = ring.firstEntry();
+            }
+            return entry != null ? members.get(entry.getValue()) : null;
+        }
+
+        @Override
+        public void onUpdate(Account account, boolean ready) {
+            if (!"active".equals(account.status())) {
+                onRemove(account);
+                return;
+            }
+            if (members.put(account.id(), account) == null) {
+                int virtualNodes = Math.max(1, properties.getAffinity().getVirtualNodes());
+                for (int i = 0; i < virtualNodes; i++) {
+                    ring.put(hash64(account.id() + "#" + i), account.id());
+                }
+            }
+        }
+
+        @Override
+        public void onRemove(Account account) {
+            if (members.remove(account.id()) != null) {
+                ring.values().removeIf(account.id()::equals);
+            }
+        }
+    }
+
+    /**
+     * 64 位非密码学哈希：逐字符 FNV-1a，再用 MurmurHash3 的 fmix64 打散，不分配对象
+     */
+    static long hash64(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h ^= value.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 按排序键选最小者（least-used 用请求数，smart-score 用负分）
+     * <p>
+     * 有序索引只含就绪账号，统计变化时重算该账号的键；索引为跳表，选择只读首元素，无锁、O(1) 且不分配，
+     * 写入由调用方的索引锁串行化。smart-score 的新鲜度随时间衰减，空闲账号的键可能偏旧，被选中使用后即会刷新
+     */
+    private static class RankedStrategy implements SelectionStrategy {
+        private final ToDoubleFunction<Account> key;
+        private final ConcurrentSkipListSet<Ranked> order = new ConcurrentSkipListSet<>();
+        private final Map<String, Ranked> entries = new ConcurrentHashMap<>();
+
+        RankedStrategy(ToDoubleFunction<Account> key) {
+            this.key = key;
+        }
+
+        @Override
+        public Account select(Account[] ready) {
+            try {
+                return order.first().account();
+            } catch (NoSuchElementException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public void onUpdate(Account account, boolean ready) {
+            Ranked old = entries.get(account.id());
+            Ranked ranked = ready ? new Ranked(key.applyAsDouble(account), account) : null;
+            if (ranked != null && old != null && old.compareTo(ranked) == 0) {
+                if (old.account() == account) {
+                    return;
+                }
+                // 键相同但账号对象已替换：有序集合视为同一元素，只能先删后加
+                order.remove(old);
+                old = null;
+            }
+            // 先加新项再删旧项，并发的选择不会看到该账号短暂缺席
+            if (ranked != null) {
+                entries.put(account.id(), ranked);
+                order.add(ranked);
+            } else {
+                entries.remove(account.id());
+            }
+            if (old != null) {
+                order.remove(old);
+            }
+        }
+    }
+
+    private record Ranked(double key, Account account) implements Comparable<Ranked> {
+        @Override
+        public int compareTo(Ranked o) {
+            int c = Double.compare(key, o.key);
+            return c != 0 ? c : account.id().compareTo(o.account.id());
+        }
+    }
+
+    private record Cooldown(Account account, Instant until) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(until.toEpochMilli() - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+        }
+
         @Override
-        public Account select(List<Account> available) {
-            return available.stream()
-                    .max(Comparator.comparingDouble(Account::calculateScore))
-                    .orElse(available.get(0));
+        public int compareTo(Delayed o) {
+            return until.compareTo(((Cooldown) o).until);
         }
     }
 
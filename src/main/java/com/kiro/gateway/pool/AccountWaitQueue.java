@@ -0,0 +1,144 @@
+package com.kiro.gateway.pool;
+
+import com.kiro.gateway.exception.NoAvailableAccountException;
+import com.kiro.gateway.util.Metrics;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * 账号等待队列
+ * <p>
+ * 所有账号都在冷却或并发已满时，请求按 FIFO 排队，等待不占用线程；
+ * 有账号归还名额或冷却结束时调用 dispatch，把占到的名额依次转交给队首；
+ * 队列已满或超过截止时间返回无可用账号
+ */
+public class AccountWaitQueue {
+
+    private final int maxQueued;
+    private final long timeoutMs;
+    // 按会话亲和键尝试占用一个账号的并发名额，没有可用账号返回 null
+    private final Function<String, Account> reserve;
+    // 归还名额，不触发转交（转交失败、订阅者已取消时）
+    private final Consumer<Account> release;
+
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+
+    public AccountWaitQueue(int maxQueued, long timeoutMs, Function<String, Account> reserve, Consumer<Account> release) {
+        this.maxQueued = maxQueued;
+        this.timeoutMs = timeoutMs;
+        this.reserve = reserve;
+        this.release = release;
+    }
+
+    /**
+     * 排队等待账号，拿到的账号已占用名额
+     *
+     * @param affinityKey 会话指纹，可为 null
+     */
+    public Mono<Account> await(String affinityKey) {
+        return Mono.<Account>create(sink -> {
+            Waiter waiter;
+            synchronized (this) {
+                if (waiters.size() >= maxQueued) {
+                    Metrics.instance().increment("account_queue_rejected_total");
+                    sink.error(new NoAvailableAccountException("没有可用的账号（等待队列已满）"));
+                    return;
+                }
+                waiter = new Waiter(sink, affinityKey);
+                waiters.addLast(waiter);
+            }
+            waiter.timer = Schedulers.parallel().schedule(() -> expire(waiter), timeoutMs, TimeUnit.MILLISECONDS);
+            sink.onCancel(() -> cancel(waiter));
+            // 入队前后可能刚好有名额归还
+            dispatch();
+        })
+                // 账号已转交但订阅者刚好取消时，被丢弃的名额要归还并转交给下一个等待者
+                .doOnDiscard(Account.class, account -> {
+                    release.accept(account);
+                    dispatch();
+                });
+    }
+
+    public synchronized int depth() {
+        return waiters.size();
+    }
+
+    /**
+     * 把可用名额依次转交给队首等待者
+     */
+    public void dispatch() {
+        while (true) {
+            Waiter next;
+            Account account;
+            synchronized (this) {
+                next = waiters.peekFirst();
+                if (next == null) {
+                    return;
+                }
+                account = reserve.apply(next.affinityKey);
+                if (account == null) {
+                    return;
+                }
+                waiters.pollFirst();
+            }
+            // 等待者可能已超时或取消，转交失败把名额还回去继续找下一个
+            if (next.done.compareAndSet(false, true)) {
+                next.disposeTimer();
+                Metrics.instance().recordLatency("account_queue_wait",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - next.enqueuedNanos));
+                next.sink.success(account);
+            } else {
+                release.accept(account);
+            }
+        }
+    }
+
+    private void expire(Waiter waiter) {
+        if (!waiter.done.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (this) {
+            waiters.remove(waiter);
+        }
+        Metrics.instance().increment("account_queue_timeouts_total");
+        waiter.sink.error(new NoAvailableAccountException("没有可用的账号（排队超时）"));
+    }
+
+    private void cancel(Waiter waiter) {
+        if (!waiter.done.compareAndSet(false, true)) {
+            return;
+        }
+        waiter.disposeTimer();
+        synchronized (this) {
+            waiters.remove(waiter);
+        }
+    }
+
+    private static class Waiter {
+        final MonoSink<Account> sink;
+        final String affinityKey;
+        final long enqueuedNanos = System.nanoTime();
+        final AtomicBoolean done = new AtomicBoolean();
+        volatile Disposable timer;
+
+        Waiter(MonoSink<Account> sink, String affinityKey) {
+            this.sink = sink;
+            this.affinityKey = affinityKey;
+        }
+
+        void disposeTimer() {
+            Disposable t = timer;
+            if (t != null) {
+                t.dispose();
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.kiro.gateway.pool;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 就绪账号集合（写时复制数组）
+ * <p>
+ * 读路径无锁：snapshot() 直接返回当前数组，调用方只读不改；
+ * 写路径只在账号增删、进出冷却时发生，加锁复制一份新数组后整体替换
+ */
+public class ReadySet {
+
+    private static final Account[] EMPTY = new Account[0];
+
+    private volatile Account[] ready = EMPTY;
+    // 成员 ID，仅在写锁内访问
+    private final Set<String> members = new HashSet<>();
+
+    /**
+     * 当前就绪账号快照（只读）
+     */
+    public Account[] snapshot() {
+        return ready;
+    }
+
+    public int size() {
+        return ready.length;
+    }
+
+    /**
+     * 加入就绪集合；同 ID 的旧对象会被替换
+     */
+    public synchronized void add(Account account) {
+        Account[] current = ready;
+        if (members.add(account.id())) {
+            Account[] next = Arrays.copyOf(current, current.length + 1);
+            next[current.length] = account;
+            ready = next;
+            return;
+        }
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].id().equals(account.id())) {
+                if (current[i] != account) {
+                    Account[] next = current.clone();
+                    next[i] = account;
+                    ready = next;
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 移出就绪集合
+     */
+    public synchronized void remove(String accountId) {
+        if (!members.remove(accountId)) {
+            return;
+        }
+        Account[] current = ready;
+        Account[] next = new Account[current.length - 1];
+        int j = 0;
+        for (Account a : current) {
+            if (!a.id().equals(accountId)) {
+                next[j++] = a;
+            }
+        }
+        ready = next;
+    }
+}
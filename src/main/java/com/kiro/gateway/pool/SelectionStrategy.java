@@ -1,17 +1,40 @@
 package com.kiro.gateway.pool;
 
-import java.util.List;
-
 /**
  * 账号选择策略接口
  */
 public interface SelectionStrategy {
 
     /**
-     * 从可用账号列表中选择一个
+     * 从就绪账号中选择一个（热路径，不应遍历或分配对象）
+     *
+     * @param ready 就绪账号快照（已过滤冷却和非 active），只读
+     * @return 选中的账号，无可选时返回 null
+     */
+    Account select(Account[] ready);
+
+    /**
+     * 带会话亲和键的选择，默认忽略亲和键
+     *
+     * @param affinityKey 会话指纹，可为 null
+     */
+    default Account select(Account[] ready, String affinityKey) {
+        return select(ready);
+    }
+
+    /**
+     * 账号统计或就绪状态变化时回调，需要自建索引的策略在此维护
      *
-     * @param available 可用账号列表（已过滤冷却和非 active）
-     * @return 选中的账号，列表为空时返回 null
+     * @param account 变化的账号
+     * @param ready   是否处于就绪集合
+     */
+    default void onUpdate(Account account, boolean ready) {
+    }
+
+    /**
+     * 账号从池中删除时回调
      */
-    Account select(List<Account> available);
+    default void onRemove(Account account) {
+        onUpdate(account, false);
+    }
 }
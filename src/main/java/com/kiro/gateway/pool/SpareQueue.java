@@ -0,0 +1,43 @@
+package com.kiro.gateway.pool;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 可能还有空闲名额的账号（无锁提示队列）
+ * <p>
+ * 名额占满的账号留在就绪集合中，多数账号占满时策略结果和有界扫描都可能落空；
+ * 账号进入就绪集合或从占满回到可用时入队，兜底时从队首取出再校验。
+ * 队列中的项可能已过期（再次占满、进入冷却、已删除），由调用方丢弃；每个账号最多一项
+ */
+public class SpareQueue {
+
+    private final Queue<Account> queue = new ConcurrentLinkedQueue<>();
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 入队，已在队列中则忽略
+     */
+    public void offer(Account account) {
+        if (queued.add(account.id())) {
+            queue.offer(account);
+        }
+    }
+
+    /**
+     * 取出队首；先出队再清除标记，期间并发的 offer 被忽略，但调用方随后读到的是该 offer 之后的账号状态
+     */
+    public Account poll() {
+        Account account = queue.poll();
+        if (account != null) {
+            queued.remove(account.id());
+        }
+        return account;
+    }
+
+    public int size() {
+        return queued.size();
+    }
+}
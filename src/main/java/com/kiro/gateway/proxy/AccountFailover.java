@@ -0,0 +1,216 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.auth.AuthService;
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.exception.KiroApiException;
+import com.kiro.gateway.exception.NoAvailableAccountException;
+import com.kiro.gateway.pool.Account;
+import com.kiro.gateway.pool.AccountLease;
+import com.kiro.gateway.pool.AccountPool;
+import com.kiro.gateway.trace.TraceContext;
+import com.kiro.gateway.util.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * 账号切换
+ * <p>
+ * 上游返回 429 / 5xx（连接阶段，尚未向客户端输出内容）时，立即冷却当前账号，
+ * 从账号池换一个账号用同一份 payload 重放，最多 maxHops 次；
+ * 可切换时当前账号不做退避重试，没有可切换的账号或已达上限时退回普通重试；
+ * 网络异常（没有上游响应）只记端点失败，不冷却账号也不切换，直接退回普通重试；
+ * 每次上游尝试期间计入账号的进行中 token，结束时记录首字节耗时，供负载感知的选择策略使用；
+ * 切换时经由 AccountLease 交接名额：请求改占新账号的名额，归还失败账号的名额
+ */
+@Component
+public class AccountFailover {
+
+    private static final Logger log = LoggerFactory.getLogger(AccountFailover.class);
+
+    private final AccountPool accountPool;
+    private final AuthService authService;
+    private final KiroApiClient kiroClient;
+    private final AppProperties properties;
+
+    public AccountFailover(AccountPool accountPool, AuthService authService,
+                           KiroApiClient kiroClient, AppProperties properties) {
+        this.accountPool = accountPool;
+        this.authService = authService;
+        this.kiroClient = kiroClient;
+        this.properties = properties;
+    }
+
+    /**
+     * 流式调用（阻塞），失败时切换账号
+     *
+     * @param lease 请求占用的账号，切换时经由它交接名额，调用方从它读取记账账号
+     */
+    public void callStream(AccountLease lease, String accessToken, String payload, TraceContext traceCtx,
+                           StreamCallback callback, StreamCancellation cancellation) {
+        Account account = lease.account();
+        Set<String> tried = new HashSet<>();
+        int maxHops = maxHops();
+        long tokens = estimateTokens(payload);
+        for (int hop = 0; ; hop++) {
+            tried.add(account.id());
+            boolean canSwitch = hop < maxHops;
+            // 本次尝试的账号（catch 中会切换 account）
+            Account attempt = account;
+            attempt.addTokensInFlight(tokens);
+            try {
+                kiroClient.callStream(payload, accessToken, traceCtx, callback, cancellation, canSwitch);
+                return;
+            } catch (KiroApiException e) {
+                if (!canSwitch || cancellation.isCancelled()) {
+                    throw e;
+                }
+                if (e.isTransportError()) {
+                    // 网络故障与账号无关，在当前账号上按普通规则重试
+                    maxHops = hop + 1;
+                    continue;
+                }
+                if (!isSwitchable(e)) {
+                    throw e;
+                }
+                Switched next = switchAccount(lease, account, e, traceCtx, tried);
+                if (next == null) {
+                    // 没有其他可用账号，在当前账号上按普通规则重试
+                    maxHops = hop + 1;
+                    continue;
+                }
+                if (next.ended()) {
+                    return;
+                }
+                account = next.account();
+                accessToken = next.accessToken();
+            } finally {
+                endAttempt(attempt, tokens, traceCtx);
+            }
+        }
+    }
+
+    /**
+     * 流式调用（异步），失败时切换账号；换账号取 token 可能阻塞，放到 boundedElastic 执行
+     */
+    public Mono<Void> callStreamAsync(AccountLease lease, String accessToken, String payload, TraceContext traceCtx,
+                                      StreamCallback callback) {
+        return callStreamAsync(lease, lease.account(), accessToken, payload, traceCtx, callback,
+                new HashSet<>(), 0, maxHops());
+    }
+
+    private Mono<Void> callStreamAsync(AccountLease lease, Account account, String accessToken, String payload,
+                                       TraceContext traceCtx, StreamCallback callback,
+                                       Set<String> tried, int hop, int maxHops) {
+        tried.add(account.id());
+        boolean canSwitch = hop < maxHops;
+        long tokens = estimateTokens(payload);
+        return Mono.defer(() -> {
+                    account.addTokensInFlight(tokens);
+                    return kiroClient.callStreamAsync(payload, accessToken, traceCtx, callback, canSwitch)
+                            .doFinally(signal -> endAttempt(account, tokens, traceCtx));
+                })
+                .onErrorResume(KiroApiException.class, e -> {
+                    if (canSwitch && e.isTransportError()) {
+                        // 网络故障与账号无关，在当前账号上按普通规则重试
+                        return callStreamAsync(lease, account, accessToken, payload, traceCtx, callback,
+                                tried, hop + 1, hop + 1);
+                    }
+                    if (!canSwitch || !isSwitchable(e)) {
+                        return Mono.error(e);
+                    }
+                    // 新账号的名额在 switchAccount 内就交给 lease，取 token 期间客户端断开也不会泄漏
+                    return Mono.fromCallable(() -> switchAccount(lease, account, e, traceCtx, tried))
+                            .subscribeOn(Schedulers.boundedElastic())
+                            .map(next -> next.ended()
+                                    ? Mono.<Void>empty()
+                                    : callStreamAsync(lease, next.account(), next.accessToken(), payload, traceCtx,
+                                            callback, tried, hop + 1, maxHops))
+                            // 没有其他可用账号，在当前账号上按普通规则重试
+                            .defaultIfEmpty(Mono.defer(() -> callStreamAsync(lease, account, accessToken, payload,
+                                    traceCtx, callback, tried, hop + 1, hop + 1)))
+                            .flatMap(call -> call);
+                });
+    }
+
+    private void endAttempt(Account account, long tokens, TraceContext traceCtx) {
+        account.addTokensInFlight(-tokens);
+        long firstByteMs = traceCtx.upstreamFirstByteMs();
+        if (firstByteMs >= 0) {
+            account.recordFirstByte(firstByteMs);
+        }
+    }
+
+    /**
+     * 按 payload 字符数粗估输入 token（约 4 字符 / token）
+     */
+    private static long estimateTokens(String payload) {
+        return payload.length() / 4;
+    }
+
+    private int maxHops() {
+        AppProperties.FailoverConfig config = properties.getFailover();
+        return config.isEnabled() ? Math.max(0, config.getMaxHops()) : 0;
+    }
+
+    /**
+     * 上游真实返回的 429 / 5xx 才切换账号
+     */
+    private boolean isSwitchable(KiroApiException e) {
+        return !e.isTransportError() && (e.getStatusCode() == 429 || e.getStatusCode() >= 500);
+    }
+
+    /**
+     * 选出下一个账号并取 token，成功后冷却失败账号并把名额交给 lease；没有可用账号返回 null
+     */
+    private Switched switchAccount(AccountLease lease, Account failed, KiroApiException cause,
+                                   TraceContext traceCtx, Set<String> tried) {
+        while (true) {
+            Account next;
+            try {
+                next = accountPool.getNext(tried);
+            } catch (NoAvailableAccountException e) {
+                Metrics.instance().increment("account_failover_exhausted_total");
+                return null;
+            }
+            tried.add(next.id());
+            String accessToken;
+            try {
+                accessToken = authService.getAccessToken(next.id(), next.credentials(), next.authMethod());
+            } catch (Exception e) {
+                log.warn("切换账号时获取 token 失败: account={}, error={}", next.name(), e.getMessage());
+                accountPool.recordError(next.id(), false);
+                accountPool.release(next);
+                // 客户端断开会中断取 token 的线程，不再继续找账号
+                if (Thread.currentThread().isInterrupted()) {
+                    return Switched.ENDED;
+                }
+                continue;
+            }
+            accountPool.recordFailover(failed.id(), cause.isRateLimit());
+            // 拿到名额后立即交给 lease；请求已结束（客户端断开）时交接失败，新账号的名额已归还
+            if (!lease.switchTo(next)) {
+                return Switched.ENDED;
+            }
+            traceCtx.setAccountId(next.id());
+            Metrics.instance().increment("account_failovers_total");
+            log.warn("账号 {} 上游返回 {}, 已冷却并切换到账号 {}", failed.name(), cause.getStatusCode(), next.name());
+            return new Switched(next, accessToken);
+        }
+    }
+
+    private record Switched(Account account, String accessToken) {
+
+        // 请求已结束，调用方应停止
+        static final Switched ENDED = new Switched(null, null);
+
+        boolean ended() {
+            return account == null;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.util.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 上游连接预热
+ * <p>
+ * 启动时及端点空闲期间定期向每个端点并发发送 HEAD 请求，提前完成 DNS / TCP / TLS 握手并让连接留在
+ * HttpClient 连接池中（HTTP/1.1 下并发数即预热连接数，HTTP/2 下一条连接即可）；
+ * 启动预热结束后才视为就绪
+ */
+@Component
+public class ConnectionWarmer {
+
+    private static final Logger log = LoggerFactory.getLogger(ConnectionWarmer.class);
+
+    private static final double[] LATENCY_BOUNDS = {50, 100, 250, 500, 1000, 2500, 5000, 10000};
+
+    private final HttpClient httpClient;
+    private final AppProperties properties;
+    // 端点 → 最近一次真实请求 / 预热成功时间
+    private final Map<String, Long> lastTraffic = new ConcurrentHashMap<>();
+    private final Map<String, Long> lastWarmed = new ConcurrentHashMap<>();
+    private volatile boolean ready;
+
+    public ConnectionWarmer(HttpClient kiroHttpClient, AppProperties properties) {
+        this.httpClient = kiroHttpClient;
+        this.properties = properties;
+        this.ready = !properties.getWarmup().isEnabled();
+        Metrics.instance().gauge("upstream_pool_ready", () -> ready ? 1 : 0);
+    }
+
+    /**
+     * 连接池是否已预热（未开启预热时始终就绪）
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmOnBoot() {
+        if (!properties.getWarmup().isEnabled()) {
+            return;
+        }
+        // 预热失败（上游不可达）也结束等待，避免就绪检查一直不通过
+        warm(properties.getEndpoints()).whenComplete((v, e) -> {
+            ready = true;
+            log.info("上游连接预热完成: {}/{} 个端点", lastWarmed.size(), properties.getEndpoints().size());
+        });
+    }
+
+    /**
+     * 空闲端点定期预热，保持连接不被 keep-alive 超时回收
+     */
+    @Scheduled(fixedDelayString = "${kiro.warmup.interval-seconds:60}", initialDelayString = "${kiro.warmup.interval-seconds:60}",
+            timeUnit = TimeUnit.SECONDS)
+    public void warmIdle() {
+        if (!properties.getWarmup().isEnabled()) {
+            return;
+        }
+        long idleMs = properties.getWarmup().getIntervalSeconds() * 1000L;
+        long now = System.currentTimeMillis();
+        List<String> idle = properties.getEndpoints().stream()
+                .filter(ep -> now - lastTraffic.getOrDefault(ep, 0L) >= idleMs)
+                .toList();
+        if (!idle.isEmpty()) {
+            warm(idle);
+        }
+    }
+
+    /**
+     * 真实请求拿到响应头后调用：记录空闲后首个请求的连接耗时，按是否预热过分 warm / cold
+     *
+     * @param ttfbMs 发出请求到响应头到达
+     */
+    public void recordRequest(String endpoint, long ttfbMs) {
+        long now = System.currentTimeMillis();
+        Long previous = lastTraffic.put(endpoint, now);
+        long idleMs = properties.getWarmup().getIntervalSeconds() * 1000L;
+        if (previous != null && now - previous < idleMs) {
+            return;
+        }
+        // 连接保持时间内预热过即为 warm
+        long keepAliveMs = properties.getWarmup().getKeepAliveSeconds() * 1000L;
+        Long warmedAt = lastWarmed.get(endpoint);
+        boolean warm = warmedAt != null && now - warmedAt < keepAliveMs;
+        Metrics.instance().observe("upstream_first_request_ms",
+                Metrics.labels("endpoint", endpoint, "pool", warm ? "warm" : "cold"), LATENCY_BOUNDS, ttfbMs);
+    }
+
+    private CompletableFuture<Void> warm(List<String> endpoints) {
+        int connections = Math.max(1, properties.getWarmup().getConnectionsPerEndpoint());
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (String endpoint : endpoints) {
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(endpoint))
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .timeout(Duration.ofSeconds(10))
+                    .build();
+            // 并发发送，HTTP/1.1 下每个请求各占一条连接
+            for (int i = 0; i < connections; i++) {
+                futures.add(httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, e) -> {
+                            if (e != null) {
+                                log.debug("端点预热失败: {}, {}", endpoint, e.getMessage());
+                                Metrics.instance().increment("upstream_warmup_failures_total");
+                                return;
+                            }
+                            // 任意状态码都说明连接已建立
+                            lastWarmed.put(endpoint, System.currentTimeMillis());
+                            Metrics.instance().increment("upstream_warmup_requests_total");
+                        }));
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .handle((v, e) -> null);
+    }
+}
@@ -0,0 +1,157 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.util.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 端点健康跟踪与路由
+ * <p>
+ * 每个端点维护 TTFB（响应头到达）EWMA、错误率 EWMA 和熔断状态：
+ * CLOSED 连续失败达到阈值 → OPEN；OPEN 到期后 → HALF_OPEN，放行一个探测请求，
+ * 探测成功 → CLOSED，失败 → 重新 OPEN。
+ * 新请求的端点顺序：待探测的 HALF_OPEN 端点 → 健康端点按 TTFB 升序 → 仍在熔断中的端点（兜底）
+ */
+@Component
+public class EndpointRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(EndpointRouter.class);
+
+    public enum CircuitState {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final AppProperties properties;
+    private final Map<String, EndpointState> states = new LinkedHashMap<>();
+
+    public EndpointRouter(AppProperties properties) {
+        this.properties = properties;
+        for (String endpoint : properties.getEndpoints()) {
+            EndpointState state = new EndpointState(endpoint, states.size());
+            states.put(endpoint, state);
+
+            String labels = Metrics.labels("endpoint", endpoint);
+            Metrics metrics = Metrics.instance();
+            metrics.gauge("endpoint_ttfb_ewma_ms", labels, () -> state.ttfbEwmaMs);
+            metrics.gauge("endpoint_error_rate", labels, () -> state.errorRate);
+            metrics.gauge("endpoint_circuit_state", labels, () -> state.circuit.ordinal());
+        }
+    }
+
+    /**
+     * 本次请求的端点尝试顺序
+     */
+    public synchronized List<String> order() {
+        long now = System.currentTimeMillis();
+        long openMs = properties.getEndpointHealth().getOpenSeconds() * 1000L;
+
+        List<EndpointState> probes = new ArrayList<>();
+        List<EndpointState> healthy = new ArrayList<>();
+        List<EndpointState> tripped = new ArrayList<>();
+        for (EndpointState state : states.values()) {
+            if (state.circuit == CircuitState.CLOSED) {
+                healthy.add(state);
+                continue;
+            }
+            // 熔断到期或上一次探测超时未回报，放行一个探测请求
+            boolean due = state.circuit == CircuitState.OPEN && now - state.openedAt >= openMs;
+            boolean probeStale = state.circuit == CircuitState.HALF_OPEN && now - state.probeStartedAt >= openMs;
+            if (due || probeStale) {
+                state.circuit = CircuitState.HALF_OPEN;
+                state.probeStartedAt = now;
+                probes.add(state);
+            } else {
+                tripped.add(state);
+            }
+        }
+        // 未测量过的端点 TTFB 视为 0，保证每个端点都能拿到样本；相同时保持配置顺序
+        healthy.sort(Comparator.<EndpointState>comparingDouble(s -> Math.max(s.ttfbEwmaMs, 0))
+                .thenComparingInt(s -> s.position));
+
+        List<String> order = new ArrayList<>(states.size());
+        probes.forEach(s -> order.add(s.endpoint));
+        healthy.forEach(s -> order.add(s.endpoint));
+        tripped.forEach(s -> order.add(s.endpoint));
+        return order;
+    }
+
+    /**
+     * 端点返回 200
+     *
+     * @param ttfbMs 发出请求到响应头到达
+     */
+    public synchronized void recordSuccess(String endpoint, long ttfbMs) {
+        EndpointState state = states.get(endpoint);
+        if (state == null) {
+            return;
+        }
+        double alpha = properties.getEndpointHealth().getEwmaAlpha();
+        state.ttfbEwmaMs = state.ttfbEwmaMs < 0 ? ttfbMs : alpha * ttfbMs + (1 - alpha) * state.ttfbEwmaMs;
+        state.errorRate = (1 - alpha) * state.errorRate;
+        state.consecutiveFailures = 0;
+        if (state.circuit != CircuitState.CLOSED) {
+            log.info("端点恢复: {}", endpoint);
+            state.circuit = CircuitState.CLOSED;
+        }
+    }
+
+    /**
+     * 端点失败（429、5xx、网络异常）；401/403 等与端点无关的错误不应调用
+     */
+    public synchronized void recordFailure(String endpoint, int statusCode) {
+        EndpointState state = states.get(endpoint);
+        if (state == null) {
+            return;
+        }
+        AppProperties.EndpointHealthConfig config = properties.getEndpointHealth();
+        state.errorRate = config.getEwmaAlpha() + (1 - config.getEwmaAlpha()) * state.errorRate;
+        state.consecutiveFailures++;
+        boolean probeFailed = state.circuit == CircuitState.HALF_OPEN;
+        if (probeFailed || (state.circuit == CircuitState.CLOSED && state.consecutiveFailures >= config.getFailureThreshold())) {
+            log.warn("端点熔断: {}, status={}, consecutiveFailures={}", endpoint, statusCode, state.consecutiveFailures);
+            state.circuit = CircuitState.OPEN;
+            state.openedAt = System.currentTimeMillis();
+            Metrics.instance().increment("endpoint_circuit_open_total");
+        }
+    }
+
+    /**
+     * 各端点当前状态（管理后台展示）
+     */
+    public synchronized List<EndpointSnapshot> snapshot() {
+        List<EndpointSnapshot> result = new ArrayList<>(states.size());
+        for (EndpointState s : states.values()) {
+            result.add(new EndpointSnapshot(s.endpoint, s.circuit.name(),
+                    s.ttfbEwmaMs < 0 ? null : Math.round(s.ttfbEwmaMs), s.errorRate, s.consecutiveFailures));
+        }
+        return result;
+    }
+
+    public record EndpointSnapshot(String endpoint, String circuit, Long ttfbEwmaMs,
+                                   double errorRate, int consecutiveFailures) {}
+
+    private static class EndpointState {
+        final String endpoint;
+        // 配置中的顺序
+        final int position;
+        volatile double ttfbEwmaMs = -1;
+        volatile double errorRate;
+        volatile CircuitState circuit = CircuitState.CLOSED;
+        int consecutiveFailures;
+        long openedAt;
+        long probeStartedAt;
+
+        EndpointState(String endpoint, int position) {
+            this.endpoint = endpoint;
+            this.position = position;
+        }
+    }
+}
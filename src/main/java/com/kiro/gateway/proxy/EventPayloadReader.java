@@ -0,0 +1,224 @@
+package com.kiro.gateway.proxy;
+
+import com.alibaba.fastjson2.JSONReader;
+import com.alibaba.fastjson2.util.Fnv;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 事件 payload 字段提取器
+ * <p>
+ * 基于 fastjson2 JSONReader 直接从 UTF-8 字节读取所需字段，
+ * 每种事件类型一条解码路径，不构建 JSONObject，其余字段按值跳过
+ */
+public final class EventPayloadReader {
+
+    private static final long CONTENT = Fnv.hashCode64("content");
+    private static final long TOOL_USE_ID = Fnv.hashCode64("toolUseId");
+    private static final long NAME = Fnv.hashCode64("name");
+    private static final long INPUT = Fnv.hashCode64("input");
+    private static final long USAGE = Fnv.hashCode64("usage");
+    private static final long TOKEN_USAGE = Fnv.hashCode64("tokenUsage");
+    private static final long INPUT_TOKENS = Fnv.hashCode64("inputTokens");
+    private static final long INPUT_TOKENS_SNAKE = Fnv.hashCode64("input_tokens");
+    private static final long UNCACHED_INPUT_TOKENS = Fnv.hashCode64("uncachedInputTokens");
+    private static final long OUTPUT_TOKENS = Fnv.hashCode64("outputTokens");
+    private static final long OUTPUT_TOKENS_SNAKE = Fnv.hashCode64("output_tokens");
+    private static final long CREDITS = Fnv.hashCode64("credits");
+    private static final long CONTEXT_USAGE_PERCENTAGE = Fnv.hashCode64("contextUsagePercentage");
+
+    private EventPayloadReader() {
+    }
+
+    /**
+     * assistantResponseEvent / reasoningContentEvent：读取 content，只分配 delta 字符串本身
+     */
+    public static String readContent(byte[] data, int offset, int length) {
+        try (JSONReader reader = open(data, offset, length)) {
+            if (!reader.nextIfObjectStart()) {
+                return null;
+            }
+            while (!reader.nextIfObjectEnd()) {
+                if (reader.readFieldNameHashCode() == CONTENT) {
+                    return reader.readString();
+                }
+                reader.skipValue();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * toolUseEvent：读取 toolUseId / name / input
+     */
+    public static ToolUse readToolUse(byte[] data, int offset, int length) {
+        String toolUseId = null;
+        String name = null;
+        String input = null;
+        try (JSONReader reader = open(data, offset, length)) {
+            if (!reader.nextIfObjectStart()) {
+                return null;
+            }
+            while (!reader.nextIfObjectEnd()) {
+                long field = reader.readFieldNameHashCode();
+                if (field == TOOL_USE_ID) {
+                    toolUseId = reader.readString();
+                } else if (field == NAME) {
+                    name = reader.readString();
+                } else if (field == INPUT) {
+                    input = reader.readString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+        return new ToolUse(toolUseId, name, input);
+    }
+
+    /**
+     * messageMetadataEvent / metadataEvent：读取 token 用量
+     * <p>
+     * 兼容多种嵌套格式，优先级 usage > tokenUsage > 顶层字段
+     */
+    public static Usage readMetadata(byte[] data, int offset, int length) {
+        UsageFields top = new UsageFields();
+        UsageFields usage = null;
+        UsageFields tokenUsage = null;
+        try (JSONReader reader = open(data, offset, length)) {
+            if (!reader.nextIfObjectStart()) {
+                return null;
+            }
+            while (!reader.nextIfObjectEnd()) {
+                long field = reader.readFieldNameHashCode();
+                if (field == USAGE && reader.isObject()) {
+                    usage = readUsageObject(reader);
+                } else if (field == TOKEN_USAGE && reader.isObject()) {
+                    tokenUsage = readUsageObject(reader);
+                } else if (!top.read(field, reader)) {
+                    reader.skipValue();
+                }
+            }
+        }
+        UsageFields selected = usage != null ? usage : tokenUsage != null ? tokenUsage : top;
+        return selected.toUsage();
+    }
+
+    /**
+     * meteringEvent：读取 credits（usage 优先，否则 credits）
+     * <p>
+     * 实际结构: {"unit":"credit","unitPlural":"credits","usage":0.14128...}
+     */
+    public static double readCredits(byte[] data, int offset, int length) {
+        double usage = 0;
+        double credits = 0;
+        try (JSONReader reader = open(data, offset, length)) {
+            if (!reader.nextIfObjectStart()) {
+                return 0;
+            }
+            while (!reader.nextIfObjectEnd()) {
+                long field = reader.readFieldNameHashCode();
+                if (field == USAGE) {
+                    usage = readDouble(reader);
+                } else if (field == CREDITS) {
+                    credits = readDouble(reader);
+                } else {
+                    reader.skipValue();
+                }
+            }
+        }
+        return usage > 0 ? usage : credits;
+    }
+
+    /**
+     * contextUsageEvent：读取 contextUsagePercentage
+     */
+    public static double readContextUsage(byte[] data, int offset, int length) {
+        try (JSONReader reader = open(data, offset, length)) {
+            if (!reader.nextIfObjectStart()) {
+                return 0;
+            }
+            while (!reader.nextIfObjectEnd()) {
+                if (reader.readFieldNameHashCode() == CONTEXT_USAGE_PERCENTAGE) {
+                    return readDouble(reader);
+                }
+                reader.skipValue();
+            }
+            return 0;
+        }
+    }
+
+    private static JSONReader open(byte[] data, int offset, int length) {
+        return JSONReader.of(data, offset, length, StandardCharsets.UTF_8);
+    }
+
+    private static UsageFields readUsageObject(JSONReader reader) {
+        UsageFields fields = new UsageFields();
+        reader.nextIfObjectStart();
+        while (!reader.nextIfObjectEnd()) {
+            long field = reader.readFieldNameHashCode();
+            if (!fields.read(field, reader)) {
+                reader.skipValue();
+            }
+        }
+        return fields;
+    }
+
+    private static double readDouble(JSONReader reader) {
+        return reader.nextIfNull() ? 0 : reader.readDoubleValue();
+    }
+
+    private static Integer readInt(JSONReader reader) {
+        return reader.nextIfNull() ? null : reader.readInt32Value();
+    }
+
+    /**
+     * 一个用量对象里出现过的字段（null 表示未出现）
+     */
+    private static class UsageFields {
+        Integer inputTokens;
+        Integer inputTokensSnake;
+        Integer uncachedInputTokens;
+        Integer outputTokens;
+        Integer outputTokensSnake;
+
+        boolean read(long field, JSONReader reader) {
+            if (field == INPUT_TOKENS) {
+                inputTokens = readInt(reader);
+            } else if (field == INPUT_TOKENS_SNAKE) {
+                inputTokensSnake = readInt(reader);
+            } else if (field == UNCACHED_INPUT_TOKENS) {
+                uncachedInputTokens = readInt(reader);
+            } else if (field == OUTPUT_TOKENS) {
+                outputTokens = readInt(reader);
+            } else if (field == OUTPUT_TOKENS_SNAKE) {
+                outputTokensSnake = readInt(reader);
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        Usage toUsage() {
+            int input = firstPresent(inputTokens, inputTokensSnake, uncachedInputTokens);
+            int output = firstPresent(outputTokens, outputTokensSnake, null);
+            return new Usage(input, output);
+        }
+
+        private static int firstPresent(Integer first, Integer second, Integer third) {
+            if (first != null) return first;
+            if (second != null) return second;
+            if (third != null) return third;
+            return 0;
+        }
+    }
+
+    /**
+     * 工具调用事件字段
+     */
+    public record ToolUse(String toolUseId, String name, String input) {}
+
+    /**
+     * Token 用量
+     */
+    public record Usage(int inputTokens, int outputTokens) {}
+}
@@ -1,15 +1,16 @@
 package com.kiro.gateway.proxy;
 
-import com.alibaba.fastjson2.JSONObject;
+import com.kiro.gateway.util.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.zip.GZIPInputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
 /**
  * AWS Event Stream 二进制解析器
@@ -17,8 +18,9 @@ import java.util.zip.GZIPInputStream;
  * 解析 Kiro API 返回的二进制事件流格式：
  * - 每个消息包含 prelude(12字节) + headers + payload + CRC(4字节)
  * - 支持嵌套事件和 gzip 压缩 payload
+ * - 可选 CRC 校验，遇到损坏数据时扫描定位下一帧
  */
-public class EventStreamParser {
+public class EventStreamParser implements AutoCloseable {
 
     private static final Logger log = LoggerFactory.getLogger(EventStreamParser.class);
 
@@ -26,31 +28,114 @@ public class EventStreamParser {
     private static final int MESSAGE_CRC_SIZE = 4;
     private static final int MIN_MESSAGE_SIZE = PRELUDE_SIZE + MESSAGE_CRC_SIZE;
 
+    // 初始缓冲区大小，不足时按 2 倍扩容
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+    private static final int MAX_MESSAGE_SIZE = 16 * 1024 * 1024;
+    // 为超大消息扩容后超过该大小的缓冲区，用完即缩回 INITIAL_CAPACITY，不随解析器常驻
+    private static final int SHRINK_THRESHOLD = 1024 * 1024;
+    // 嵌套事件流最大层级，防止恶意数据导致深递归
+    private static final int MAX_NESTING_DEPTH = 4;
+
+    // 需要识别的 header 名和值（原始字节比较）
+    private static final byte[] EVENT_TYPE_HEADER = ":event-type".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CONTENT_TYPE_HEADER = ":content-type".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NESTED_CONTENT_TYPE = "application/vnd.amazon.eventstream".getBytes(StandardCharsets.UTF_8);
+
+    // gzip 头尾（RFC 1952）
+    private static final int GZIP_HEADER_SIZE = 10;
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final int GZIP_FHCRC = 2;
+    private static final int GZIP_FEXTRA = 4;
+    private static final int GZIP_FNAME = 8;
+    private static final int GZIP_FCOMMENT = 16;
+
+    static {
+        // 压缩比 = 解压后字节 / 压缩字节
+        Metrics.instance().gauge("eventstream_gzip_compression_ratio", () -> {
+            long compressed = Metrics.instance().get("eventstream_gzip_compressed_bytes_total");
+            long decompressed = Metrics.instance().get("eventstream_gzip_decompressed_bytes_total");
+            return compressed == 0 ? 0 : (double) decompressed / compressed;
+        });
+    }
+
     private final StreamCallback callback;
-    private ByteBuffer buffer = ByteBuffer.allocate(0);
+    // 是否校验 prelude / message CRC
+    private final boolean validateCrc;
+
+    // 可增长缓冲区：[readPos, writePos) 为未解析数据，空间不足时先压缩再扩容
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int readPos;
+    private int writePos;
+    // 正在跳过损坏数据
+    private boolean resyncing;
+
+    // 当前帧的 header 解码结果，逐帧覆盖
+    private EventType frameEventType;
+    private String frameEventTypeName;
+    private boolean frameNested;
+    private int nestingDepth;
+
+    // gzip 解压：Inflater 和输出缓冲区按解析器复用，首次遇到压缩帧时创建
+    private Inflater inflater;
+    private byte[] inflateBuffer;
+    // 帧 CRC 和 gzip CRC 共用
+    private final CRC32 crc32 = new CRC32();
 
     // 工具调用缓冲
     private String currentToolUseId;
     private StringBuilder toolInputBuffer;
 
     public EventStreamParser(StreamCallback callback) {
+        this(callback, false);
+    }
+
+    public EventStreamParser(StreamCallback callback, boolean validateCrc) {
         this.callback = callback;
+        this.validateCrc = validateCrc;
     }
 
     /**
      * 向缓冲区添加数据
      */
     public void feed(byte[] data) {
-        // 合并旧缓冲区和新数据
-        byte[] combined = new byte[buffer.remaining() + data.length];
-        buffer.get(combined, 0, buffer.remaining());
-        System.arraycopy(data, 0, combined, combined.length - data.length, data.length);
-        buffer = ByteBuffer.wrap(combined);
+        feed(data, 0, data.length);
+    }
+
+    /**
+     * 向缓冲区添加数据（数组片段，调用方可复用读缓冲区）
+     */
+    public void feed(byte[] data, int offset, int length) {
+        ensureWritable(length);
+        System.arraycopy(data, offset, buffer, writePos, length);
+        writePos += length;
 
         // 解析所有完整的帧
         parseFrames();
     }
 
+    /**
+     * 向缓冲区添加数据（消费 ByteBuffer 的剩余字节）
+     */
+    public void feed(ByteBuffer data) {
+        int length = data.remaining();
+        ensureWritable(length);
+        data.get(buffer, writePos, length);
+        writePos += length;
+
+        parseFrames();
+    }
+
+    /**
+     * 向缓冲区添加数据（消费 DataBuffer 的可读字节，不负责释放）
+     */
+    public void feed(DataBuffer data) {
+        try (DataBuffer.ByteBufferIterator iterator = data.readableByteBuffers()) {
+            while (iterator.hasNext()) {
+                feed(iterator.next());
+            }
+        }
+    }
+
     /**
      * 解析流结束时的最终处理
      */
@@ -60,114 +145,284 @@ public class EventStreamParser {
         callback.onComplete();
     }
 
+    /**
+     * 释放 Inflater 持有的本地内存
+     */
+    @Override
+    public void close() {
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    /**
+     * 确保缓冲区尾部至少有 length 字节可写
+     */
+    private void ensureWritable(int length) {
+        if (buffer.length - writePos >= length) {
+            return;
+        }
+        int unread = writePos - readPos;
+
+        // 压缩：把未解析数据移到头部
+        if (buffer.length - unread >= length) {
+            System.arraycopy(buffer, readPos, buffer, 0, unread);
+            readPos = 0;
+            writePos = unread;
+            return;
+        }
+
+        // 扩容
+        int newCapacity = Math.max(buffer.length * 2, unread + length);
+        byte[] grown = new byte[newCapacity];
+        System.arraycopy(buffer, readPos, grown, 0, unread);
+        buffer = grown;
+        readPos = 0;
+        writePos = unread;
+    }
+
     private void parseFrames() {
-        while (buffer.remaining() >= MIN_MESSAGE_SIZE) {
-            int startPos = buffer.position();
-
-            // 读取 prelude
-            int totalLength = buffer.getInt();
-            int headersLength = buffer.getInt();
-            // 跳过 prelude CRC
-            buffer.getInt();
-
-            // 验证长度
-            if (totalLength < MIN_MESSAGE_SIZE || totalLength > 16 * 1024 * 1024) {
-                // 无效帧，跳过一个字节重试
-                buffer.position(startPos + 1);
+        while (writePos - readPos >= MIN_MESSAGE_SIZE) {
+            int startPos = readPos;
+
+            // 验证 prelude，无效时扫描到下一个可能的帧起点
+            if (!isValidPrelude(buffer, startPos)) {
+                resync(startPos);
                 continue;
             }
 
-            // 检查是否有足够数据
-            if (startPos + totalLength > buffer.limit()) {
-                // 数据不足，回退等待更多数据
-                buffer.position(startPos);
+            // 数据不足，等待更多数据
+            int totalLength = readInt(buffer, startPos);
+            if (startPos + totalLength > writePos) {
                 break;
             }
 
-            // 解析 headers
-            byte[] headersBytes = new byte[headersLength];
-            buffer.get(headersBytes);
-            java.util.Map<String, String> headers = parseHeaders(headersBytes);
-
-            // 解析 payload
-            int payloadLength = totalLength - PRELUDE_SIZE - headersLength - MESSAGE_CRC_SIZE;
-            byte[] payload = new byte[payloadLength];
-            buffer.get(payload);
-
-            // 跳过 message CRC
-            buffer.getInt();
-
-            // 检查嵌套事件流
-            String contentType = headers.get(":content-type");
-            if ("application/vnd.amazon.eventstream".equals(contentType) && payload.length > 0) {
-                // 嵌套事件流，递归解析 payload
-                ByteBuffer nested = ByteBuffer.wrap(payload);
-                parseNestedFrame(nested);
+            readPos = startPos + totalLength;
+            resyncing = false;
+
+            // prelude 已通过校验，帧边界可信，CRC 不符时整帧丢弃
+            if (!isValidMessageCrc(buffer, startPos, totalLength)) {
+                Metrics.instance().increment("eventstream_corrupt_frames_total");
+                log.warn("Event Stream 消息 CRC 校验失败, 丢弃 {} 字节", totalLength);
                 continue;
             }
+            if (!decodeMessage(buffer, startPos, totalLength, readInt(buffer, startPos + 4))) {
+                onCorruptHeaders(startPos, totalLength);
+            }
+        }
 
-            // 尝试解压 gzip
-            payload = tryDecompress(payload);
-
-            // 处理事件
-            String eventType = headers.get(":event-type");
-            if (eventType != null && payload.length > 0) {
-                handleEvent(eventType, new String(payload, StandardCharsets.UTF_8));
+        // 全部消费完时复位，避免无谓的压缩拷贝；为超大消息扩容的缓冲区缩回初始大小
+        if (readPos == writePos) {
+            readPos = 0;
+            writePos = 0;
+            if (buffer.length > SHRINK_THRESHOLD) {
+                buffer = new byte[INITIAL_CAPACITY];
             }
         }
+    }
 
-        // 压缩剩余数据
-        if (!buffer.hasRemaining()) {
-            buffer = ByteBuffer.allocate(0);
+    /**
+     * headers 字段越界：帧边界可信时整帧丢弃，否则从帧起点后重新同步
+     * <p>
+     * 开启 CRC 校验，或帧尾紧跟合法 prelude（或数据不足一个 prelude）时认为帧边界可信；
+     * 否则 prelude 中的长度本身可能有误
+     */
+    private void onCorruptHeaders(int startPos, int totalLength) {
+        int next = startPos + totalLength;
+        boolean trusted = validateCrc || writePos - next < PRELUDE_SIZE || isValidPrelude(buffer, next);
+        if (trusted) {
+            Metrics.instance().increment("eventstream_corrupt_frames_total");
+            log.warn("Event Stream headers 越界, 丢弃 {} 字节", totalLength);
             return;
         }
-        byte[] remaining = new byte[buffer.remaining()];
-        buffer.get(remaining);
-        buffer = ByteBuffer.wrap(remaining);
+        readPos = startPos;
+        resync(startPos);
     }
 
-    private void parseNestedFrame(ByteBuffer nested) {
-        if (nested.remaining() < MIN_MESSAGE_SIZE) {
-            return;
+    /**
+     * 跳过损坏数据，定位到下一个合法 prelude
+     * <p>
+     * 同一段损坏只计一次；找不到时保留末尾不足一个 prelude 的字节等待后续数据
+     */
+    private void resync(int startPos) {
+        if (!resyncing) {
+            resyncing = true;
+            Metrics.instance().increment("eventstream_corrupt_frames_total");
+            log.warn("Event Stream prelude 无效, 开始重新同步: offset={}", startPos);
         }
-        int totalLength = nested.getInt();
-        int headersLength = nested.getInt();
-        nested.getInt(); // prelude CRC
+        int next = findNextPrelude(buffer, startPos + 1, writePos);
+        Metrics.instance().add("eventstream_resync_bytes_total", next - startPos);
+        readPos = next;
+    }
 
-        if (totalLength < MIN_MESSAGE_SIZE || totalLength > nested.limit() + PRELUDE_SIZE) {
-            return;
+    /**
+     * 批量扫描下一个合法 prelude 的位置
+     * <p>
+     * 帧长度不超过 16MB，总长度最高字节只能是 0 或 1，先按该字节过滤再做完整校验
+     */
+    private int findNextPrelude(byte[] data, int from, int limit) {
+        int last = limit - PRELUDE_SIZE;
+        for (int pos = from; pos <= last; pos++) {
+            if ((data[pos] & 0xFE) == 0 && isValidPrelude(data, pos)) {
+                return pos;
+            }
         }
+        return Math.max(from, last + 1);
+    }
 
-        byte[] headersBytes = new byte[headersLength];
-        nested.get(headersBytes);
-        java.util.Map<String, String> headers = parseHeaders(headersBytes);
+    /**
+     * prelude 长度合法，且开启校验时 prelude CRC 一致
+     */
+    private boolean isValidPrelude(byte[] data, int pos) {
+        int totalLength = readInt(data, pos);
+        int headersLength = readInt(data, pos + 4);
+        if (totalLength < MIN_MESSAGE_SIZE || totalLength > MAX_MESSAGE_SIZE
+                || headersLength < 0 || headersLength > totalLength - MIN_MESSAGE_SIZE) {
+            return false;
+        }
+        return !validateCrc || checksum(data, pos, PRELUDE_SIZE - 4) == readInt(data, pos + PRELUDE_SIZE - 4);
+    }
 
+    /**
+     * 开启校验时比对 message CRC（覆盖 prelude + headers + payload）
+     */
+    private boolean isValidMessageCrc(byte[] data, int start, int totalLength) {
+        if (!validateCrc) {
+            return true;
+        }
+        return checksum(data, start, totalLength - MESSAGE_CRC_SIZE) == readInt(data, start + totalLength - MESSAGE_CRC_SIZE);
+    }
+
+    /**
+     * CRC32（JIT 内建指令加速）
+     */
+    private int checksum(byte[] data, int offset, int length) {
+        crc32.reset();
+        crc32.update(data, offset, length);
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * 原地解码一条完整消息
+     *
+     * @return headers 越界返回 false（帧损坏），此时不分发任何事件
+     */
+    private boolean decodeMessage(byte[] data, int start, int totalLength, int headersLength) {
+        if (!decodeHeaders(data, start + PRELUDE_SIZE, headersLength)) {
+            return false;
+        }
+
+        int payloadOffset = start + PRELUDE_SIZE + headersLength;
         int payloadLength = totalLength - PRELUDE_SIZE - headersLength - MESSAGE_CRC_SIZE;
-        byte[] payload = new byte[payloadLength];
-        nested.get(payload);
 
-        payload = tryDecompress(payload);
+        // 检查嵌套事件流
+        if (frameNested && payloadLength > 0) {
+            parseNestedFrames(data, payloadOffset, payloadLength);
+            return true;
+        }
 
-        String eventType = headers.get(":event-type");
-        if (eventType != null && payload.length > 0) {
-            handleEvent(eventType, new String(payload, StandardCharsets.UTF_8));
+        handlePayload(frameEventType, data, payloadOffset, payloadLength);
+        return true;
+    }
+
+    /**
+     * 逐个解析嵌套事件流 payload 中的全部帧
+     * <p>
+     * 内层帧按偏移在外层 payload 上原地解码，不拷贝
+     */
+    private void parseNestedFrames(byte[] data, int offset, int length) {
+        if (nestingDepth >= MAX_NESTING_DEPTH) {
+            log.warn("嵌套事件流层级过深, 丢弃 payload: depth={}, length={}", nestingDepth, length);
+            return;
         }
+        nestingDepth++;
+        try {
+            int pos = offset;
+            int end = offset + length;
+            while (end - pos >= MIN_MESSAGE_SIZE) {
+                int totalLength = readInt(data, pos);
+                int headersLength = readInt(data, pos + 4);
+
+                // 外层帧已完整，内层帧无效时无法恢复，丢弃剩余部分
+                if (!isValidPrelude(data, pos) || totalLength > end - pos
+                        || !isValidMessageCrc(data, pos, totalLength)) {
+                    Metrics.instance().increment("eventstream_corrupt_frames_total");
+                    log.warn("嵌套帧无效, 丢弃剩余 {} 字节", end - pos);
+                    return;
+                }
+
+                if (!decodeMessage(data, pos, totalLength, headersLength)) {
+                    Metrics.instance().increment("eventstream_corrupt_frames_total");
+                    log.warn("嵌套帧 headers 越界, 丢弃剩余 {} 字节", end - pos);
+                    return;
+                }
+                pos += totalLength;
+            }
+        } finally {
+            nestingDepth--;
+        }
+    }
+
+    /**
+     * 分发 payload：未压缩时直接从缓冲区原地解码，gzip 时解压到复用的输出缓冲区
+     */
+    private void handlePayload(EventType eventType, byte[] data, int offset, int length) {
+        if (eventType == null || length <= 0) {
+            return;
+        }
+        if (isGzip(data, offset, length)) {
+            int size = decompress(data, offset, length);
+            // 解压失败时按原始数据处理
+            if (size >= 0) {
+                handleEvent(eventType, inflateBuffer, 0, size);
+                shrinkInflateBuffer();
+                return;
+            }
+        }
+        handleEvent(eventType, data, offset, length);
     }
 
-    private java.util.Map<String, String> parseHeaders(byte[] data) {
-        java.util.Map<String, String> headers = new java.util.LinkedHashMap<>();
-        int offset = 0;
+    private static int readInt(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 24)
+                | ((data[offset + 1] & 0xFF) << 16)
+                | ((data[offset + 2] & 0xFF) << 8)
+                | (data[offset + 3] & 0xFF);
+    }
 
-        while (offset < data.length) {
-            // header name 长度
-            int nameLength = data[offset] & 0xFF;
-            offset++;
+    private static int readShort(byte[] data, int offset) {
+        return ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+    }
 
+    private static boolean bytesEqual(byte[] expected, byte[] data, int offset, int length) {
+        return expected.length == length
+                && Arrays.equals(expected, 0, length, data, offset, offset + length);
+    }
+
+    /**
+     * 解码 headers，只识别 :event-type 和 :content-type，其余按偏移跳过
+     * <p>
+     * 结果写入 frameEventType / frameNested，不创建 Map 和 String
+     *
+     * @return 任一字段越过 headers 区域时返回 false
+     */
+    private boolean decodeHeaders(byte[] data, int start, int length) {
+        frameEventType = null;
+        frameEventTypeName = null;
+        frameNested = false;
+        int offset = start;
+        int end = start + length;
+
+        while (offset < end) {
             // header name
-            String name = new String(data, offset, nameLength, StandardCharsets.UTF_8);
-            offset += nameLength;
+            int nameLength = data[offset] & 0xFF;
+            int nameOffset = offset + 1;
+            offset = nameOffset + nameLength;
 
             // header type
+            if (offset >= end) {
+                return false;
+            }
             int headerType = data[offset] & 0xFF;
             offset++;
 
@@ -175,19 +430,36 @@ public class EventStreamParser {
             switch (headerType) {
                 case 7 -> {
                     // string
-                    int strLen = ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
+                    if (offset + 2 > end) {
+                        return false;
+                    }
+                    int strLen = readShort(data, offset);
                     offset += 2;
-                    headers.put(name, new String(data, offset, strLen, StandardCharsets.UTF_8));
+                    if (offset + strLen > end) {
+                        return false;
+                    }
+                    if (bytesEqual(EVENT_TYPE_HEADER, data, nameOffset, nameLength)) {
+                        frameEventType = EventType.fromBytes(data, offset, strLen);
+                        // 仅未知类型才解码名称，用于日志
+                        if (frameEventType == EventType.UNKNOWN) {
+                            frameEventTypeName = new String(data, offset, strLen, StandardCharsets.UTF_8);
+                        }
+                    } else if (bytesEqual(CONTENT_TYPE_HEADER, data, nameOffset, nameLength)) {
+                        frameNested = bytesEqual(NESTED_CONTENT_TYPE, data, offset, strLen);
+                    }
                     offset += strLen;
                 }
                 case 6 -> {
                     // bytes
-                    int bytesLen = ((data[offset] & 0xFF) << 8) | (data[offset + 1] & 0xFF);
-                    offset += 2;
-                    offset += bytesLen;
+                    if (offset + 2 > end) {
+                        return false;
+                    }
+                    int bytesLen = readShort(data, offset);
+                    offset += 2 + bytesLen;
+                }
+                case 0, 1 -> {
+                    // bool true / false，无值字节
                 }
-                case 0 -> headers.put(name, "true");
-                case 1 -> headers.put(name, "false");
                 case 2 -> { offset++; }
                 case 3 -> { offset += 2; }
                 case 4 -> { offset += 4; }
@@ -196,63 +468,78 @@ public class EventStreamParser {
                 case 9 -> { offset += 16; }
                 default -> {
                     // 未知类型，停止解析
-                    return headers;
+                    return true;
                 }
             }
+            if (offset > end) {
+                return false;
+            }
         }
-        return headers;
+        return true;
     }
 
-    private void handleEvent(String eventType, String payload) {
+    private void handleEvent(EventType eventType, byte[] data, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
         try {
-            JSONObject json = JSONObject.parseObject(payload);
-            if (json == null) {
-                return;
-            }
-
             // 记录所有事件类型，方便排查
             if (log.isDebugEnabled()) {
-                log.debug("[EVENT] type={}, payload={}", eventType,
-                        payload.length() > 200 ? payload.substring(0, 200) + "..." : payload);
+                log.debug("[EVENT] type={}, payload={}", eventTypeName(eventType), preview(data, offset, length));
             }
 
             switch (eventType) {
-                case "assistantResponseEvent" -> handleAssistantResponse(json);
-                case "reasoningContentEvent" -> handleReasoningContent(json);
-                case "toolUseEvent" -> handleToolUseEvent(json);
-                case "messageMetadataEvent", "metadataEvent" -> handleMessageMetadata(json);
-                case "meteringEvent" -> handleMeteringEvent(json);
-                case "contextUsageEvent", "contextUsagePercentageEvent" -> {
-                    double pct = json.getDoubleValue("contextUsagePercentage");
+                case ASSISTANT_RESPONSE -> handleAssistantResponse(data, offset, length);
+                case REASONING_CONTENT -> handleReasoningContent(data, offset, length);
+                case TOOL_USE -> handleToolUseEvent(data, offset, length);
+                case MESSAGE_METADATA, METADATA -> handleMessageMetadata(data, offset, length);
+                case METERING -> handleMeteringEvent(data, offset, length);
+                case CONTEXT_USAGE, CONTEXT_USAGE_PERCENTAGE -> {
+                    double pct = EventPayloadReader.readContextUsage(data, offset, length);
                     log.info("[CONTEXT USAGE] {}%", pct);
                     callback.onContextUsage(pct);
                 }
-                default -> log.warn("未知事件类型: {}, payload={}", eventType,
-                        payload.length() > 200 ? payload.substring(0, 200) + "..." : payload);
+                default -> log.warn("未知事件类型: {}, payload={}", eventTypeName(eventType), preview(data, offset, length));
             }
         } catch (Exception e) {
-            log.warn("解析事件失败: type={}, error={}", eventType, e.getMessage());
+            log.warn("解析事件失败: type={}, error={}", eventTypeName(eventType), e.getMessage());
         }
     }
 
-    private void handleAssistantResponse(JSONObject json) {
-        String content = json.getString("content");
+    private String eventTypeName(EventType eventType) {
+        return eventType == EventType.UNKNOWN ? frameEventTypeName : eventType.wireName();
+    }
+
+    /**
+     * 日志用 payload 预览（最多 200 字符）
+     */
+    private static String preview(byte[] data, int offset, int length) {
+        String payload = new String(data, offset, length, StandardCharsets.UTF_8);
+        return payload.length() > 200 ? payload.substring(0, 200) + "..." : payload;
+    }
+
+    private void handleAssistantResponse(byte[] data, int offset, int length) {
+        String content = EventPayloadReader.readContent(data, offset, length);
         if (content != null && !content.isEmpty()) {
             callback.onText(content);
         }
     }
 
-    private void handleReasoningContent(JSONObject json) {
-        String content = json.getString("content");
+    private void handleReasoningContent(byte[] data, int offset, int length) {
+        String content = EventPayloadReader.readContent(data, offset, length);
         if (content != null && !content.isEmpty()) {
             callback.onThinking(content);
         }
     }
 
-    private void handleToolUseEvent(JSONObject json) {
-        String toolUseId = json.getString("toolUseId");
-        String name = json.getString("name");
-        String input = json.getString("input");
+    private void handleToolUseEvent(byte[] data, int offset, int length) {
+        EventPayloadReader.ToolUse toolUse = EventPayloadReader.readToolUse(data, offset, length);
+        if (toolUse == null) {
+            return;
+        }
+        String toolUseId = toolUse.toolUseId();
+        String name = toolUse.name();
+        String input = toolUse.input();
 
         if (toolUseId != null && name != null) {
             // 新工具调用开始
@@ -268,21 +555,13 @@ public class EventStreamParser {
         }
     }
 
-    private void handleMessageMetadata(JSONObject json) {
-        // 兼容多种嵌套格式：usage / tokenUsage / 顶层
-        JSONObject usage = json.getJSONObject("usage");
-        if (usage == null) {
-            usage = json.getJSONObject("tokenUsage");
-        }
+    private void handleMessageMetadata(byte[] data, int offset, int length) {
+        EventPayloadReader.Usage usage = EventPayloadReader.readMetadata(data, offset, length);
         if (usage == null) {
-            usage = json;
+            return;
         }
-
-        int inputTokens = usage.getIntValue("inputTokens",
-                usage.getIntValue("input_tokens",
-                        usage.getIntValue("uncachedInputTokens", 0)));
-        int outputTokens = usage.getIntValue("outputTokens",
-                usage.getIntValue("output_tokens", 0));
+        int inputTokens = usage.inputTokens();
+        int outputTokens = usage.outputTokens();
 
         if (inputTokens > 0 || outputTokens > 0) {
             log.info("[UPSTREAM METADATA] inputTokens={}, outputTokens={}", inputTokens, outputTokens);
@@ -290,10 +569,8 @@ public class EventStreamParser {
         }
     }
 
-    private void handleMeteringEvent(JSONObject json) {
-        // 实际结构: {"unit":"credit","unitPlural":"credits","usage":0.14128...}
-        double credits = json.getDoubleValue("usage");
-        if (credits <= 0) credits = json.getDoubleValue("credits");
+    private void handleMeteringEvent(byte[] data, int offset, int length) {
+        double credits = EventPayloadReader.readCredits(data, offset, length);
         if (credits > 0) {
             log.info("[METERING] credits={}", credits);
             callback.onCredits(credits);
@@ -308,24 +585,126 @@ public class EventStreamParser {
         }
     }
 
-    private byte[] tryDecompress(byte[] data) {
-        if (data.length < 2) {
-            return data;
-        }
-        // 检查 gzip 魔数 0x1f 0x8b
-        if ((data[0] & 0xFF) == 0x1F && (data[1] & 0xFF) == 0x8B) {
-            try (GZIPInputStream gis = new GZIPInputStream(new java.io.ByteArrayInputStream(data));
-                 ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-                byte[] buf = new byte[4096];
-                int len;
-                while ((len = gis.read(buf)) != -1) {
-                    bos.write(buf, 0, len);
+    /**
+     * 检查 gzip 魔数 0x1f 0x8b
+     */
+    private static boolean isGzip(byte[] data, int offset, int length) {
+        return length >= 2 && (data[offset] & 0xFF) == 0x1F && (data[offset + 1] & 0xFF) == 0x8B;
+    }
+
+    /**
+     * 用复用的 Inflater 解压 gzip payload 到 inflateBuffer
+     * <p>
+     * 手动解析 gzip 头尾，输入直接引用原缓冲区；校验 CRC32 和长度
+     *
+     * @return 解压后的字节数，失败返回 -1
+     */
+    private int decompress(byte[] data, int offset, int length) {
+        try {
+            int end = offset + length;
+            int pos = skipGzipHeader(data, offset, end);
+            int trailer = end - GZIP_TRAILER_SIZE;
+            if (pos > trailer) {
+                throw new DataFormatException("gzip 数据不完整");
+            }
+            long expectedCrc = readIntLE(data, trailer) & 0xFFFFFFFFL;
+            int expectedSize = readIntLE(data, trailer + 4);
+
+            if (inflater == null) {
+                inflater = new Inflater(true);
+                inflateBuffer = new byte[INITIAL_CAPACITY];
+            }
+            inflater.reset();
+            inflater.setInput(data, pos, trailer - pos);
+
+            // ISIZE 作为初始容量提示
+            if (expectedSize > inflateBuffer.length && expectedSize <= MAX_MESSAGE_SIZE) {
+                inflateBuffer = new byte[expectedSize];
+            }
+
+            int size = 0;
+            while (!inflater.finished()) {
+                if (size == inflateBuffer.length) {
+                    // 解压后超过单条消息上限（gzip 炸弹），放弃
+                    if (size >= MAX_MESSAGE_SIZE) {
+                        throw new DataFormatException("解压后超过 " + MAX_MESSAGE_SIZE + " 字节");
+                    }
+                    inflateBuffer = Arrays.copyOf(inflateBuffer, Math.min(inflateBuffer.length * 2, MAX_MESSAGE_SIZE));
+                }
+                int n = inflater.inflate(inflateBuffer, size, inflateBuffer.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("gzip 数据流被截断");
                 }
-                return bos.toByteArray();
-            } catch (IOException e) {
-                // 解压失败，使用原始数据
+                size += n;
             }
+
+            crc32.reset();
+            crc32.update(inflateBuffer, 0, size);
+            if (crc32.getValue() != expectedCrc || size != expectedSize) {
+                throw new DataFormatException("gzip 校验失败");
+            }
+
+            Metrics metrics = Metrics.instance();
+            metrics.increment("eventstream_gzip_frames_total");
+            metrics.add("eventstream_gzip_compressed_bytes_total", length);
+            metrics.add("eventstream_gzip_decompressed_bytes_total", size);
+            return size;
+        } catch (DataFormatException e) {
+            shrinkInflateBuffer();
+            Metrics.instance().increment("eventstream_gzip_errors_total");
+            log.warn("gzip payload 解压失败, 按原始数据处理: length={}, error={}", length, e.getMessage());
+            return -1;
         }
-        return data;
+    }
+
+    private void shrinkInflateBuffer() {
+        if (inflateBuffer != null && inflateBuffer.length > SHRINK_THRESHOLD) {
+            inflateBuffer = new byte[INITIAL_CAPACITY];
+        }
+    }
+
+    /**
+     * 跳过 gzip 头（RFC 1952），返回 deflate 数据起始位置
+     */
+    private static int skipGzipHeader(byte[] data, int offset, int end) throws DataFormatException {
+        if (end - offset < GZIP_HEADER_SIZE + GZIP_TRAILER_SIZE || data[offset + 2] != 8) {
+            throw new DataFormatException("无效的 gzip 头");
+        }
+        int flags = data[offset + 3] & 0xFF;
+        int pos = offset + GZIP_HEADER_SIZE;
+        if ((flags & GZIP_FEXTRA) != 0) {
+            if (pos + 2 > end) {
+                throw new DataFormatException("无效的 gzip 头");
+            }
+            int extraLength = (data[pos] & 0xFF) | ((data[pos + 1] & 0xFF) << 8);
+            pos += 2 + extraLength;
+        }
+        if ((flags & GZIP_FNAME) != 0) {
+            pos = skipZeroTerminated(data, pos, end);
+        }
+        if ((flags & GZIP_FCOMMENT) != 0) {
+            pos = skipZeroTerminated(data, pos, end);
+        }
+        if ((flags & GZIP_FHCRC) != 0) {
+            pos += 2;
+        }
+        return pos;
+    }
+
+    private static int skipZeroTerminated(byte[] data, int pos, int end) throws DataFormatException {
+        while (pos < end && data[pos] != 0) {
+            pos++;
+        }
+        if (pos >= end) {
+            throw new DataFormatException("无效的 gzip 头");
+        }
+        return pos + 1;
+    }
+
+    private static int readIntLE(byte[] data, int offset) {
+        return (data[offset] & 0xFF)
+                | ((data[offset + 1] & 0xFF) << 8)
+                | ((data[offset + 2] & 0xFF) << 16)
+                | ((data[offset + 3] & 0xFF) << 24);
     }
 }
@@ -0,0 +1,52 @@
+package com.kiro.gateway.proxy;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Kiro Event Stream 事件类型
+ * <p>
+ * 直接用 header 原始字节匹配，解析时不创建 String
+ */
+public enum EventType {
+
+    ASSISTANT_RESPONSE("assistantResponseEvent"),
+    REASONING_CONTENT("reasoningContentEvent"),
+    TOOL_USE("toolUseEvent"),
+    MESSAGE_METADATA("messageMetadataEvent"),
+    METADATA("metadataEvent"),
+    METERING("meteringEvent"),
+    CONTEXT_USAGE("contextUsageEvent"),
+    CONTEXT_USAGE_PERCENTAGE("contextUsagePercentageEvent"),
+    // 未识别的事件类型
+    UNKNOWN(null);
+
+    private static final EventType[] KNOWN = Arrays.stream(values())
+            .filter(t -> t.wireName != null)
+            .toArray(EventType[]::new);
+
+    private final String wireName;
+    private final byte[] wireBytes;
+
+    EventType(String wireName) {
+        this.wireName = wireName;
+        this.wireBytes = wireName != null ? wireName.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * 按 header 值的原始字节查找事件类型，未匹配返回 UNKNOWN
+     */
+    public static EventType fromBytes(byte[] data, int offset, int length) {
+        for (EventType type : KNOWN) {
+            byte[] name = type.wireBytes;
+            if (name.length == length && Arrays.equals(name, 0, length, data, offset, offset + length)) {
+                return type;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    public String wireName() {
+        return wireName;
+    }
+}
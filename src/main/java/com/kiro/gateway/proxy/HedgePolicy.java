@@ -0,0 +1,203 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.util.Metrics;
+import com.kiro.gateway.util.TokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.Supplier;
+
+/**
+ * 首字节对冲请求（仅异步模式）
+ * <p>
+ * 主请求在「近期首字节耗时的 P 分位」内没有收到响应体时，发出一个对冲请求，
+ * 先收到响应体的一方胜出，另一方立即取消；对冲次数受令牌桶预算限制，不会让上游负载翻倍
+ */
+@Component
+public class HedgePolicy {
+
+    private static final Logger log = LoggerFactory.getLogger(HedgePolicy.class);
+
+    // 首字节耗时采样窗口
+    private static final int WINDOW = 512;
+    // 样本不足时使用 maxDelayMs
+    private static final int MIN_SAMPLES = 32;
+
+    private final AppProperties.HedgeConfig config;
+    private final TokenBucket budget;
+    private final long[] samples = new long[WINDOW];
+    private int sampleCount;
+    private int sampleIndex;
+    private long cachedDelayMs = -1;
+    private final DoubleAdder extraCredits = new DoubleAdder();
+
+    public HedgePolicy(AppProperties properties) {
+        this.config = properties.getHedge();
+        this.budget = new TokenBucket(config.getBudgetRatio(), config.getBudgetMaxTokens());
+        Metrics metrics = Metrics.instance();
+        metrics.gauge("hedge_budget_tokens", budget::tokens);
+        metrics.gauge("hedge_delay_ms", this::delayMs);
+        metrics.counter("hedge_extra_credits_estimated_total", extraCredits::sum);
+    }
+
+    public boolean isEnabled() {
+        return config.isEnabled();
+    }
+
+    /**
+     * 单次请求的对冲状态
+     */
+    public Attempt newAttempt() {
+        return new Attempt();
+    }
+
+    /**
+     * 落败方已开始流式响应时，按胜出方的 credits 估算多花费的 credits（落败方已生成的部分同样计费）
+     */
+    public void recordExtraCredits(double credits) {
+        extraCredits.add(credits);
+    }
+
+    /**
+     * 当前对冲延迟：近期首字节耗时的 P 分位，限制在 [minDelayMs, maxDelayMs]
+     */
+    public synchronized long delayMs() {
+        if (sampleCount < MIN_SAMPLES) {
+            return config.getMaxDelayMs();
+        }
+        if (cachedDelayMs < 0) {
+            long[] sorted = Arrays.copyOf(samples, sampleCount);
+            Arrays.sort(sorted);
+            int idx = (int) Math.ceil(config.getPercentile() / 100.0 * sorted.length) - 1;
+            long percentile = sorted[Math.max(0, Math.min(idx, sorted.length - 1))];
+            cachedDelayMs = Math.max(config.getMinDelayMs(), Math.min(config.getMaxDelayMs(), percentile));
+        }
+        return cachedDelayMs;
+    }
+
+    private synchronized void recordFirstByte(long elapsedMs) {
+        samples[sampleIndex] = elapsedMs;
+        sampleIndex = (sampleIndex + 1) % WINDOW;
+        if (sampleCount < WINDOW) {
+            sampleCount++;
+        }
+        // 每 32 个样本重新计算一次分位数
+        if (sampleIndex % 32 == 0) {
+            cachedDelayMs = -1;
+        }
+    }
+
+    /**
+     * 一次请求的主 / 对冲竞速
+     */
+    public class Attempt {
+
+        private final AtomicBoolean hedged = new AtomicBoolean();
+        private volatile boolean hedgeWon;
+
+        private Attempt() {
+        }
+
+        /**
+         * 是否发出过对冲请求
+         */
+        public boolean hedged() {
+            return hedged.get();
+        }
+
+        /**
+         * 对冲请求是否胜出（竞速产出首个元素时确定，下游收到首个元素时已可读取）
+         */
+        public boolean hedgeWon() {
+            return hedgeWon;
+        }
+
+        /**
+         * 主请求与延迟发出的对冲请求竞速，先产出元素的一方胜出
+         * <p>
+         * 主请求的错误直接结束竞速；对冲请求在产出元素前失败或空结束只是退出竞争，
+         * 对冲已发出时主请求空结束同样等待对冲结果，两方都退出时以空流结束。
+         * 首字节耗时只采样主请求：对冲发出后主请求在首字节前被取消时，记录取消时已等待的时间（真实值的下界）
+         *
+         * @param primary 主请求响应体
+         * @param hedge   对冲请求响应体（到达延迟且预算允许时才订阅）
+         */
+        public <T> Flux<T> race(Flux<T> primary, Supplier<Flux<T>> hedge) {
+            budget.deposit();
+            long start = System.nanoTime();
+            long delay = delayMs();
+            // 未产出元素就结束的一方计数，到 2 表示两方都已退出
+            AtomicInteger outOfRace = new AtomicInteger();
+
+            Flux<Raced<T>> hedgeSource = Mono.delay(Duration.ofMillis(delay))
+                    .flatMapMany(tick -> {
+                        if (!budget.tryWithdraw()) {
+                            Metrics.instance().increment("hedge_denied_total");
+                            return Flux.<T>never();
+                        }
+                        hedged.set(true);
+                        Metrics.instance().increment("hedge_requests_total");
+                        log.debug("首字节超过 {}ms，发出对冲请求", delay);
+                        boolean[] emitted = {false};
+                        return hedge.get()
+                                .doOnNext(value -> emitted[0] = true)
+                                .onErrorResume(e -> {
+                                    if (emitted[0]) {
+                                        return Flux.error(e);
+                                    }
+                                    log.debug("对冲请求失败: {}", e.getMessage());
+                                    return Flux.empty();
+                                })
+                                .switchIfEmpty(dropOut(outOfRace));
+                    })
+                    .map(value -> new Raced<>(true, value));
+
+            boolean[] primaryFirst = {true};
+            Flux<Raced<T>> primarySource = primary
+                    .doOnNext(value -> {
+                        if (primaryFirst[0]) {
+                            primaryFirst[0] = false;
+                            recordFirstByte((System.nanoTime() - start) / 1_000_000);
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (primaryFirst[0] && hedged.get()) {
+                            recordFirstByte((System.nanoTime() - start) / 1_000_000);
+                        }
+                    })
+                    .switchIfEmpty(Flux.defer(() -> hedged.get() ? dropOut(outOfRace) : Flux.empty()))
+                    .map(value -> new Raced<>(false, value));
+
+            boolean[] first = {true};
+            return Flux.firstWithSignal(primarySource, hedgeSource)
+                    .doOnNext(raced -> {
+                        if (first[0]) {
+                            first[0] = false;
+                            if (raced.hedge()) {
+                                hedgeWon = true;
+                                Metrics.instance().increment("hedge_wins_total");
+                            }
+                        }
+                    })
+                    .map(Raced::value);
+        }
+
+        /**
+         * 一方未产出元素就结束：另一方仍在竞争时挂起让出胜利，两方都退出时空结束
+         */
+        private <T> Flux<T> dropOut(AtomicInteger outOfRace) {
+            return Flux.defer(() -> outOfRace.incrementAndGet() < 2 ? Flux.<T>never() : Flux.<T>empty());
+        }
+    }
+
+    private record Raced<T>(boolean hedge, T value) {}
+}
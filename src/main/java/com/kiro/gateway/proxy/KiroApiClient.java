@@ -2,24 +2,37 @@ package com.kiro.gateway.proxy;
 
 import com.kiro.gateway.config.AppProperties;
 import com.kiro.gateway.exception.KiroApiException;
+import com.kiro.gateway.exception.KiroGatewayException;
 import com.kiro.gateway.trace.TraceContext;
+import com.kiro.gateway.util.ConcurrencyLimiter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import reactor.adapter.JdkFlowAdapter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
 
 /**
  * Kiro API 客户端
  * <p>
- * 双端点回退：CodeWhisperer → AmazonQ（429时自动切换）
+ * 多端点回退：按 EndpointRouter 给出的顺序（最快的健康端点优先，429时自动切换）
  * 每步操作写入 TraceContext
+ * 支持阻塞读取（callStream）和基于 sendAsync 的异步模式（callStreamAsync / streamEvents）
  */
 @Component
 public class KiroApiClient {
@@ -29,17 +42,27 @@ public class KiroApiClient {
     private final HttpClient httpClient;
     private final AppProperties properties;
     private final RetryHandler retryHandler;
-
-    public KiroApiClient(HttpClient kiroHttpClient, AppProperties properties, RetryHandler retryHandler) {
+    private final EndpointRouter endpointRouter;
+    private final HedgePolicy hedgePolicy;
+    private final UpstreamPool upstreamPool;
+    private final ConnectionWarmer connectionWarmer;
+
+    public KiroApiClient(HttpClient kiroHttpClient, AppProperties properties, RetryHandler retryHandler,
+                         EndpointRouter endpointRouter, HedgePolicy hedgePolicy, UpstreamPool upstreamPool,
+                         ConnectionWarmer connectionWarmer) {
         this.httpClient = kiroHttpClient;
         this.properties = properties;
         this.retryHandler = retryHandler;
+        this.endpointRouter = endpointRouter;
+        this.hedgePolicy = hedgePolicy;
+        this.upstreamPool = upstreamPool;
+        this.connectionWarmer = connectionWarmer;
     }
 
     /**
      * 调用 Kiro API（流式）
      * <p>
-     * 支持双端点回退和自动重试
+     * 支持多端点回退和自动重试
      *
      * @param payload     请求体 JSON
      * @param accessToken access token
@@ -47,12 +70,38 @@ public class KiroApiClient {
      * @param callback    流式回调
      */
     public void callStream(String payload, String accessToken, TraceContext traceCtx, StreamCallback callback) {
-        List<String> endpoints = properties.getEndpoints();
+        callStream(payload, accessToken, traceCtx, callback, new StreamCancellation());
+    }
+
+    /**
+     * 调用 Kiro API（流式，可取消）
+     * <p>
+     * 客户端断开后关闭上游响应体并直接返回，不再回调 onComplete / onError
+     */
+    public void callStream(String payload, String accessToken, TraceContext traceCtx, StreamCallback callback,
+                           StreamCancellation cancellation) {
+        callStream(payload, accessToken, traceCtx, callback, cancellation, false);
+    }
+
+    /**
+     * 调用 Kiro API（流式，可取消）
+     *
+     * @param failFast 429 / 5xx 不在当前账号上退避重试，直接抛出交给账号切换（仍会切换端点）
+     */
+    public void callStream(String payload, String accessToken, TraceContext traceCtx, StreamCallback callback,
+                           StreamCancellation cancellation, boolean failFast) {
+        List<String> endpoints = endpointRouter.order();
+        RetryHandler.Backoff backoff = retryHandler.backoff();
 
         for (int epIdx = 0; epIdx < endpoints.size(); epIdx++) {
             String endpoint = endpoints.get(epIdx);
 
             for (int attempt = 0; attempt <= retryHandler.maxRetries(); attempt++) {
+                if (cancellation.isCancelled()) {
+                    return;
+                }
+                // 占用上游连接许可（当前线程为专用流线程，可阻塞等待），响应体读完或放弃后归还
+                ConcurrencyLimiter.Permit permit = upstreamPool.acquire(endpoint).block();
                 try {
                     // 构建请求头
                     String headersJson = buildHeadersJson(accessToken, endpoint);
@@ -61,10 +110,16 @@ public class KiroApiClient {
                     traceCtx.recordKiroRequest(payload, endpoint, headersJson);
 
                     HttpRequest request = buildRequest(endpoint, payload, accessToken);
+                    if (attempt == 0) {
+                        retryHandler.recordRequest(endpoint);
+                    }
+                    long sentAt = System.nanoTime();
                     HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
 
                     int statusCode = response.statusCode();
                     traceCtx.recordKiroResponseStatus(statusCode);
+                    recordEndpointHealth(endpoint, statusCode, sentAt);
+                    upstreamPool.recordVersion(response.version());
 
                     // 认证错误，不回退不重试
                     if (statusCode == 401 || statusCode == 403) {
@@ -76,11 +131,15 @@ public class KiroApiClient {
                     if (statusCode == 429) {
                         if (epIdx < endpoints.size() - 1) {
                             log.warn("端点 {} 返回 429, 切换到下一个端点", endpoint);
+                            closeQuietly(response.body());
                             break;
                         }
                         // 最后一个端点，尝试重试
-                        if (retryHandler.shouldRetry(statusCode, attempt)) {
-                            retryHandler.waitBeforeRetry(attempt, statusCode);
+                        if (!failFast && retryHandler.shouldRetry(endpoint, statusCode, attempt)) {
+                            // 等待期间不占用连接
+                            closeQuietly(response.body());
+                            permit.release();
+                            retryHandler.waitBeforeRetry(backoff, attempt, statusCode);
                             continue;
                         }
                         String body = readBody(response);
@@ -89,8 +148,10 @@ public class KiroApiClient {
 
                     // 5xx 服务器错误，重试
                     if (statusCode >= 500) {
-                        if (retryHandler.shouldRetry(statusCode, attempt)) {
-                            retryHandler.waitBeforeRetry(attempt, statusCode);
+                        if (!failFast && retryHandler.shouldRetry(endpoint, statusCode, attempt)) {
+                            closeQuietly(response.body());
+                            permit.release();
+                            retryHandler.waitBeforeRetry(backoff, attempt, statusCode);
                             continue;
                         }
                         String body = readBody(response);
@@ -103,24 +164,46 @@ public class KiroApiClient {
                         throw new KiroApiException(statusCode, body);
                     }
 
-                    // 成功：解析 Event Stream
-                    parseEventStream(response.body(), traceCtx, callback);
+                    // 成功：解析 Event Stream，客户端断开时关闭响应体中止读取
+                    InputStream body = response.body();
+                    cancellation.onCancel(() -> closeQuietly(body));
+                    parseEventStream(body, traceCtx, callback, cancellation);
                     return;
 
                 } catch (KiroApiException e) {
                     throw e;
                 } catch (Exception e) {
+                    if (cancellation.isCancelled()) {
+                        return;
+                    }
                     log.error("调用 Kiro API 异常: endpoint={}, attempt={}", endpoint, attempt, e);
-                    if (retryHandler.shouldRetry(500, attempt)) {
-                        retryHandler.waitBeforeRetry(attempt, 500);
+                    endpointRouter.recordFailure(endpoint, 500);
+                    if (!failFast && retryHandler.shouldRetry(endpoint, 500, attempt)) {
+                        permit.release();
+                        retryHandler.waitBeforeRetry(backoff, attempt, 500);
                         continue;
                     }
-                    throw new KiroApiException(500, e.getMessage(), e);
+                    throw KiroApiException.transport(e);
+                } finally {
+                    permit.release();
                 }
             }
         }
     }
 
+    /**
+     * 按响应状态更新端点健康：200 记录 TTFB，429 / 5xx 记为端点失败，其余错误与端点无关
+     */
+    private void recordEndpointHealth(String endpoint, int statusCode, long sentAt) {
+        if (statusCode == 200) {
+            long ttfbMs = (System.nanoTime() - sentAt) / 1_000_000;
+            endpointRouter.recordSuccess(endpoint, ttfbMs);
+            connectionWarmer.recordRequest(endpoint, ttfbMs);
+        } else if (statusCode == 429 || statusCode >= 500) {
+            endpointRouter.recordFailure(endpoint, statusCode);
+        }
+    }
+
     private HttpRequest buildRequest(String endpoint, String payload, String accessToken) {
         String region = properties.getRegion();
         String kiroVersion = properties.getKiroVersion();
@@ -149,80 +232,233 @@ public class KiroApiClient {
         return "{\"Authorization\":\"Bearer " + maskedToken + "\",\"endpoint\":\"" + endpoint + "\"}";
     }
 
-    private void parseEventStream(InputStream body, TraceContext traceCtx, StreamCallback callback) {
-        EventStreamParser parser = new EventStreamParser(new StreamCallback() {
-            @Override
-            public void onText(String text) {
-                traceCtx.appendKiroEvent("{\"type\":\"text\",\"content\":\"" + escapeJson(text) + "\"}");
-                callback.onText(text);
-            }
+    private void parseEventStream(InputStream body, TraceContext traceCtx, StreamCallback callback,
+                                  StreamCancellation cancellation) {
+        boolean validateCrc = properties.getEventStream().isValidateCrc();
+        EventStreamParser parser = new EventStreamParser(new TracingCallback(traceCtx, callback), validateCrc);
 
-            @Override
-            public void onThinking(String thinking) {
-                traceCtx.appendKiroEvent("{\"type\":\"thinking\",\"content\":\"" + escapeJson(thinking) + "\"}");
-                callback.onThinking(thinking);
+        try {
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = body.read(buf)) != -1) {
+                traceCtx.recordFirstUpstreamByte();
+                // 解析器内部会拷贝到自身缓冲区，读缓冲区可直接复用
+                parser.feed(buf, 0, len);
             }
-
-            @Override
-            public void onToolUseStart(String toolUseId, String name) {
-                traceCtx.appendKiroEvent("{\"type\":\"tool_use_start\",\"id\":\"" + toolUseId + "\",\"name\":\"" + name + "\"}");
-                callback.onToolUseStart(toolUseId, name);
+            if (!cancellation.isCancelled()) {
+                parser.finish();
             }
-
-            @Override
-            public void onToolUseInput(String toolUseId, String inputDelta) {
-                callback.onToolUseInput(toolUseId, inputDelta);
+        } catch (Exception e) {
+            // 响应体被取消动作关闭，属于正常中止
+            if (cancellation.isCancelled()) {
+                log.debug("客户端已断开，停止读取上游响应");
+                return;
             }
+            log.error("解析 Event Stream 失败", e);
+            callback.onError(e.getMessage());
+        } finally {
+            parser.close();
+        }
+    }
 
-            @Override
-            public void onToolUseEnd(String toolUseId) {
-                traceCtx.appendKiroEvent("{\"type\":\"tool_use_end\",\"id\":\"" + toolUseId + "\"}");
-                callback.onToolUseEnd(toolUseId);
-            }
+    private void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (Exception e) {
+            log.debug("关闭上游响应体失败: {}", e.getMessage());
+        }
+    }
 
-            @Override
-            public void onUsage(int inputTokens, int outputTokens) {
-                traceCtx.recordTokenUsage(inputTokens, outputTokens, 0);
-                callback.onUsage(inputTokens, outputTokens);
-            }
+    // ==================== 异步模式 ====================
 
-            @Override
-            public void onCredits(double credits) {
-                traceCtx.appendKiroEvent("{\"type\":\"metering\",\"credits\":" + credits + "}");
-                traceCtx.recordTokenUsage(traceCtx.inputTokens(), traceCtx.outputTokens(), credits);
-                callback.onCredits(credits);
-            }
+    /**
+     * 调用 Kiro API（异步流式，回调形式）
+     * <p>
+     * 与 callStream 语义一致：连接阶段的错误以 KiroApiException 结束 Mono，
+     * 开始读取响应体后的错误转为 callback.onError
+     */
+    public Mono<Void> callStreamAsync(String payload, String accessToken, TraceContext traceCtx, StreamCallback callback) {
+        return callStreamAsync(payload, accessToken, traceCtx, callback, false);
+    }
 
-            @Override
-            public void onContextUsage(double percentage) {
-                callback.onContextUsage(percentage);
-            }
+    /**
+     * 调用 Kiro API（异步流式，回调形式）
+     *
+     * @param failFast 429 / 5xx 不在当前账号上退避重试，直接以 KiroApiException 结束交给账号切换
+     */
+    public Mono<Void> callStreamAsync(String payload, String accessToken, TraceContext traceCtx, StreamCallback callback,
+                                      boolean failFast) {
+        return parseEventStreamAsync(openBody(payload, accessToken, traceCtx, failFast), traceCtx)
+                .doOnNext(event -> event.dispatch(callback))
+                .then()
+                .doOnSuccess(v -> callback.onComplete())
+                // 连接阶段的错误（KiroApiException、上游连接已满）原样结束；读取响应体后的错误转为 onError
+                .onErrorResume(e -> !(e instanceof KiroGatewayException), e -> {
+                    log.error("解析 Event Stream 失败", e);
+                    traceCtx.recordError(e.getMessage());
+                    callback.onError(e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * 调用 Kiro API（异步流式，事件流形式）
+     * <p>
+     * 基于 HttpClient.sendAsync，响应体 ByteBuffer 到达即喂给解析器，不占用阻塞线程；
+     * 取消订阅会中止响应体读取
+     */
+    public Flux<StreamEvent> streamEvents(String payload, String accessToken, TraceContext traceCtx) {
+        return parseEventStreamAsync(openBody(payload, accessToken, traceCtx, false), traceCtx);
+    }
+
+    /**
+     * 建立连接并读取响应体；开启对冲时主请求首字节超时后向下一个端点发对冲请求，先出数据的一方胜出
+     * <p>
+     * 主请求和对冲请求各自记录请求与计时，只把胜出方的提交到 TraceContext
+     */
+    private Flux<List<ByteBuffer>> openBody(String payload, String accessToken, TraceContext traceCtx, boolean failFast) {
+        List<String> endpoints = endpointRouter.order();
+        TraceContext.UpstreamAttempt primaryUpstream = new TraceContext.UpstreamAttempt();
+        Flux<List<ByteBuffer>> primary = bodyFrom(payload, accessToken, primaryUpstream, endpoints, failFast);
+        // 只有一个端点时对冲请求会用同一账号打到同一端点，不对冲
+        if (!hedgePolicy.isEnabled() || endpoints.size() < 2) {
+            return commitUpstream(primary, traceCtx, () -> primaryUpstream);
+        }
+        // 对冲请求从下一个端点开始，不做退避重试
+        List<String> rotated = new ArrayList<>(endpoints.subList(1, endpoints.size()));
+        rotated.add(endpoints.get(0));
+        TraceContext.UpstreamAttempt hedgeUpstream = new TraceContext.UpstreamAttempt();
+        HedgePolicy.Attempt attempt = hedgePolicy.newAttempt();
+        Flux<List<ByteBuffer>> raced = attempt.race(primary,
+                        () -> bodyFrom(payload, accessToken, hedgeUpstream, rotated, true))
+                .doFinally(signal -> {
+                    // 落败方拿到 200 即上游已开始生成，这部分同样计费，按胜出方 credits 估算；
+                    // 未发出、失败或在响应前被取消的一方不计
+                    TraceContext.UpstreamAttempt loser = attempt.hedgeWon() ? primaryUpstream : hedgeUpstream;
+                    if (attempt.hedged() && loser.streamed()) {
+                        hedgePolicy.recordExtraCredits(traceCtx.credits());
+                    }
+                });
+        return commitUpstream(raced, traceCtx, () -> attempt.hedgeWon() ? hedgeUpstream : primaryUpstream);
+    }
 
-            @Override
-            public void onComplete() {
-                callback.onComplete();
+    /**
+     * 收到首批数据时提交胜出方的请求与计时；没有数据就结束（出错、空响应、取消）时提交主请求的
+     */
+    private static Flux<List<ByteBuffer>> commitUpstream(Flux<List<ByteBuffer>> body, TraceContext traceCtx,
+                                                         Supplier<TraceContext.UpstreamAttempt> winner) {
+        AtomicBoolean committed = new AtomicBoolean();
+        Runnable commit = () -> {
+            if (committed.compareAndSet(false, true)) {
+                traceCtx.commitUpstream(winner.get());
             }
+        };
+        return body.doOnNext(buffers -> commit.run())
+                .doOnError(e -> commit.run())
+                .doOnComplete(commit)
+                .doOnCancel(commit);
+    }
+
+    private Flux<List<ByteBuffer>> bodyFrom(String payload, String accessToken, TraceContext.UpstreamAttempt upstream,
+                                            List<String> endpoints, boolean failFast) {
+        return connectAsync(payload, accessToken, upstream, endpoints, retryHandler.backoff(), failFast, 0, 0)
+                .flatMapMany(connected -> JdkFlowAdapter.flowPublisherToFlux(connected.response().body())
+                        .doOnNext(buffers -> upstream.recordFirstByte())
+                        .doFinally(signal -> connected.permit().release()));
+    }
+
+    /**
+     * 建立连接直到拿到 200 响应，端点回退和重试规则与 callStream 一致
+     * <p>
+     * 返回的连接许可需在响应体读完或放弃后归还
+     */
+    private Mono<Connected> connectAsync(String payload, String accessToken, TraceContext.UpstreamAttempt upstream,
+                                         List<String> endpoints, RetryHandler.Backoff backoff, boolean failFast,
+                                         int epIdx, int attempt) {
+        String endpoint = endpoints.get(epIdx);
+
+        long[] sentAt = new long[1];
+        return upstreamPool.acquire(endpoint).flatMap(permit -> Mono.defer(() -> {
+                    // 记录 Kiro 请求（阶段 ②）
+                    upstream.recordRequest(payload, endpoint, buildHeadersJson(accessToken, endpoint));
+                    HttpRequest request = buildRequest(endpoint, payload, accessToken);
+                    if (attempt == 0) {
+                        retryHandler.recordRequest(endpoint);
+                    }
+                    sentAt[0] = System.nanoTime();
+                    return Mono.fromFuture(httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofPublisher()));
+                })
+                .doOnCancel(permit::release)
+                .flatMap(response -> onResponse(response, permit, sentAt[0], payload, accessToken, upstream,
+                        endpoints, backoff, failFast, epIdx, attempt))
+                // 网络异常按 500 重试（KiroGatewayException 来自状态码处理或后续尝试，原样传递）
+                .onErrorResume(e -> !(e instanceof KiroGatewayException), e -> {
+                    permit.release();
+                    log.error("调用 Kiro API 异常: endpoint={}, attempt={}", endpoint, attempt, e);
+                    endpointRouter.recordFailure(endpoint, 500);
+                    if (!failFast && retryHandler.shouldRetry(endpoint, 500, attempt)) {
+                        return retryHandler.delayBeforeRetry(backoff, attempt, 500)
+                                .then(connectAsync(payload, accessToken, upstream, endpoints, backoff, failFast, epIdx, attempt + 1));
+                    }
+                    return Mono.error(KiroApiException.transport(e));
+                }));
+    }
 
-            @Override
-            public void onError(String error) {
-                traceCtx.recordError(error);
-                callback.onError(error);
+    private Mono<Connected> onResponse(HttpResponse<Flow.Publisher<List<ByteBuffer>>> response,
+                                       ConcurrencyLimiter.Permit permit, long sentAt,
+                                       String payload, String accessToken, TraceContext.UpstreamAttempt upstream,
+                                       List<String> endpoints, RetryHandler.Backoff backoff, boolean failFast,
+                                       int epIdx, int attempt) {
+        String endpoint = endpoints.get(epIdx);
+        boolean lastEndpoint = epIdx == endpoints.size() - 1;
+        int statusCode = response.statusCode();
+        upstream.recordResponseStatus(statusCode);
+        recordEndpointHealth(endpoint, statusCode, sentAt);
+        upstreamPool.recordVersion(response.version());
+        if (statusCode == 200) {
+            return Mono.just(new Connected(response, permit));
+        }
+        return readBodyAsync(response.body()).flatMap(body -> {
+            // 错误响应体已读完，等待重试期间不占用连接
+            permit.release();
+            // 429 尝试切换端点
+            if (statusCode == 429 && !lastEndpoint) {
+                log.warn("端点 {} 返回 429, 切换到下一个端点", endpoint);
+                return connectAsync(payload, accessToken, upstream, endpoints, backoff, failFast, epIdx + 1, 0);
+            }
+            // 429（最后一个端点）和 5xx 重试，401/403 等不重试
+            if (!failFast && retryHandler.shouldRetry(endpoint, statusCode, attempt)) {
+                return retryHandler.delayBeforeRetry(backoff, attempt, statusCode)
+                        .then(connectAsync(payload, accessToken, upstream, endpoints, backoff, failFast, epIdx, attempt + 1));
             }
+            return Mono.error(new KiroApiException(statusCode, body));
         });
+    }
 
-        try {
-            byte[] buf = new byte[8192];
-            int len;
-            while ((len = body.read(buf)) != -1) {
-                byte[] chunk = new byte[len];
-                System.arraycopy(buf, 0, chunk, 0, len);
-                parser.feed(chunk);
-            }
-            parser.finish();
-        } catch (Exception e) {
-            log.error("解析 Event Stream 失败", e);
-            callback.onError(e.getMessage());
-        }
+    /**
+     * 响应体 ByteBuffer 到达即解析，每批 buffer 产出的事件按序下发
+     */
+    private Flux<StreamEvent> parseEventStreamAsync(Flux<List<ByteBuffer>> body, TraceContext traceCtx) {
+        boolean validateCrc = properties.getEventStream().isValidateCrc();
+        return Flux.using(
+                () -> new EventCollector(traceCtx, validateCrc),
+                collector -> body
+                        .concatMapIterable(collector::feed)
+                        .concatWith(Flux.defer(() -> Flux.fromIterable(collector.finish()))),
+                EventCollector::close);
+    }
+
+    private Mono<String> readBodyAsync(Flow.Publisher<List<ByteBuffer>> body) {
+        return JdkFlowAdapter.flowPublisherToFlux(body)
+                .concatMapIterable(buffers -> buffers)
+                .reduce(new ByteArrayOutputStream(), (out, buffer) -> {
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    out.writeBytes(bytes);
+                    return out;
+                })
+                .map(out -> out.toString(StandardCharsets.UTF_8))
+                .onErrorResume(e -> Mono.just("读取响应体失败: " + e.getMessage()));
     }
 
     private String readBody(HttpResponse<InputStream> response) {
@@ -241,4 +477,170 @@ public class KiroApiClient {
                 .replace("\r", "\\r")
                 .replace("\t", "\\t");
     }
+
+    /**
+     * 200 响应及其占用的连接许可
+     */
+    private record Connected(HttpResponse<Flow.Publisher<List<ByteBuffer>>> response, ConcurrencyLimiter.Permit permit) {}
+
+    /**
+     * 记录 Kiro 事件到 TraceContext 后转发的回调包装
+     */
+    private class TracingCallback implements StreamCallback {
+
+        private final TraceContext traceCtx;
+        private final StreamCallback delegate;
+
+        TracingCallback(TraceContext traceCtx, StreamCallback delegate) {
+            this.traceCtx = traceCtx;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void onText(String text) {
+            traceCtx.appendKiroEvent("{\"type\":\"text\",\"content\":\"" + escapeJson(text) + "\"}");
+            delegate.onText(text);
+        }
+
+        @Override
+        public void onThinking(String thinking) {
+            traceCtx.appendKiroEvent("{\"type\":\"thinking\",\"content\":\"" + escapeJson(thinking) + "\"}");
+            delegate.onThinking(thinking);
+        }
+
+        @Override
+        public void onToolUseStart(String toolUseId, String name) {
+            traceCtx.appendKiroEvent("{\"type\":\"tool_use_start\",\"id\":\"" + toolUseId + "\",\"name\":\"" + name + "\"}");
+            delegate.onToolUseStart(toolUseId, name);
+        }
+
+        @Override
+        public void onToolUseInput(String toolUseId, String inputDelta) {
+            delegate.onToolUseInput(toolUseId, inputDelta);
+        }
+
+        @Override
+        public void onToolUseEnd(String toolUseId) {
+            traceCtx.appendKiroEvent("{\"type\":\"tool_use_end\",\"id\":\"" + toolUseId + "\"}");
+            delegate.onToolUseEnd(toolUseId);
+        }
+
+        @Override
+        public void onUsage(int inputTokens, int outputTokens) {
+            traceCtx.recordTokenUsage(inputTokens, outputTokens, 0);
+            delegate.onUsage(inputTokens, outputTokens);
+        }
+
+        @Override
+        public void onCredits(double credits) {
+            traceCtx.appendKiroEvent("{\"type\":\"metering\",\"credits\":" + credits + "}");
+            traceCtx.recordTokenUsage(traceCtx.inputTokens(), traceCtx.outputTokens(), credits);
+            delegate.onCredits(credits);
+        }
+
+        @Override
+        public void onContextUsage(double percentage) {
+            delegate.onContextUsage(percentage);
+        }
+
+        @Override
+        public void onComplete() {
+            delegate.onComplete();
+        }
+
+        @Override
+        public void onError(String error) {
+            traceCtx.recordError(error);
+            delegate.onError(error);
+        }
+    }
+
+    /**
+     * 异步模式下把解析器回调收集为 StreamEvent 批次
+     */
+    private class EventCollector implements StreamCallback, AutoCloseable {
+
+        private final EventStreamParser parser;
+        private List<StreamEvent> events = new ArrayList<>();
+
+        EventCollector(TraceContext traceCtx, boolean validateCrc) {
+            this.parser = new EventStreamParser(new TracingCallback(traceCtx, this), validateCrc);
+        }
+
+        List<StreamEvent> feed(List<ByteBuffer> buffers) {
+            for (ByteBuffer buffer : buffers) {
+                parser.feed(buffer);
+            }
+            return drain();
+        }
+
+        List<StreamEvent> finish() {
+            parser.finish();
+            return drain();
+        }
+
+        private List<StreamEvent> drain() {
+            if (events.isEmpty()) {
+                return List.of();
+            }
+            List<StreamEvent> batch = events;
+            events = new ArrayList<>();
+            return batch;
+        }
+
+        @Override
+        public void close() {
+            parser.close();
+        }
+
+        @Override
+        public void onText(String text) {
+            events.add(StreamEvent.text(text));
+        }
+
+        @Override
+        public void onThinking(String thinking) {
+            events.add(StreamEvent.thinking(thinking));
+        }
+
+        @Override
+        public void onToolUseStart(String toolUseId, String name) {
+            events.add(StreamEvent.toolUseStart(toolUseId, name));
+        }
+
+        @Override
+        public void onToolUseInput(String toolUseId, String inputDelta) {
+            events.add(StreamEvent.toolUseInput(toolUseId, inputDelta));
+        }
+
+        @Override
+        public void onToolUseEnd(String toolUseId) {
+            events.add(StreamEvent.toolUseEnd(toolUseId));
+        }
+
+        @Override
+        public void onUsage(int inputTokens, int outputTokens) {
+            events.add(StreamEvent.usage(inputTokens, outputTokens));
+        }
+
+        @Override
+        public void onCredits(double credits) {
+            events.add(StreamEvent.credits(credits));
+        }
+
+        @Override
+        public void onContextUsage(double percentage) {
+            events.add(StreamEvent.contextUsage(percentage));
+        }
+
+        @Override
+        public void onComplete() {
+            // 完成由 Flux 终止信号表达
+        }
+
+        @Override
+        public void onError(String error) {
+            // 错误由 Flux 终止信号表达
+        }
+    }
 }
@@ -1,33 +1,41 @@
 package com.kiro.gateway.proxy;
 
 import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.util.Metrics;
+import com.kiro.gateway.util.TokenBucket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
- * 自动重试 + 指数退避
+ * 自动重试 + 带抖动的指数退避 + 按端点的重试预算
  * <p>
- * 对 429/5xx 错误自动重试，delay × 2^attempt
+ * 对 429/5xx 错误自动重试，退避上限 base × 2^attempt，按 jitter 配置打散（none / full / decorrelated）；
+ * 每个端点一个令牌桶：每个新请求存入 budgetRatio 个令牌，每次重试消耗 1 个，
+ * 令牌不足时放弃重试，避免故障期间重试放大流量
  */
 @Component
 public class RetryHandler {
 
     private static final Logger log = LoggerFactory.getLogger(RetryHandler.class);
 
-    private final int maxRetries;
-    private final long baseDelayMs;
+    private final AppProperties.RetryConfig config;
+    private final ConcurrentHashMap<String, TokenBucket> budgets = new ConcurrentHashMap<>();
 
     public RetryHandler(AppProperties properties) {
-        this.maxRetries = properties.getRetry().getMaxRetries();
-        this.baseDelayMs = properties.getRetry().getBaseDelayMs();
+        this.config = properties.getRetry();
     }
 
     /**
-     * 判断是否应该重试
+     * 判断状态码和次数是否允许重试（不消耗预算）
      */
     public boolean shouldRetry(int statusCode, int attempt) {
-        if (attempt >= maxRetries) {
+        if (attempt >= config.getMaxRetries()) {
             return false;
         }
         // 429 (Rate Limit) 或 5xx (服务器错误) 可重试
@@ -36,17 +44,42 @@ public class RetryHandler {
     }
 
     /**
-     * 计算重试延迟（毫秒）
+     * 判断是否应该重试，允许时从端点预算中扣除一次
      */
-    public long getDelay(int attempt) {
-        return (long) (baseDelayMs * Math.pow(2, attempt));
+    public boolean shouldRetry(String endpoint, int statusCode, int attempt) {
+        if (!shouldRetry(statusCode, attempt)) {
+            return false;
+        }
+        if (!config.isBudgetEnabled() || budget(endpoint).tryWithdraw()) {
+            Metrics.instance().increment("retries_spent_total");
+            return true;
+        }
+        log.warn("端点 {} 重试预算耗尽, 放弃重试(status={})", endpoint, statusCode);
+        Metrics.instance().increment("retries_denied_total");
+        return false;
     }
 
     /**
-     * 执行重试等待
+     * 记录一次新请求（非重试），为端点预算存入令牌
      */
-    public void waitBeforeRetry(int attempt, int statusCode) {
-        long delay = getDelay(attempt);
+    public void recordRequest(String endpoint) {
+        if (config.isBudgetEnabled()) {
+            budget(endpoint).deposit();
+        }
+    }
+
+    /**
+     * 单次调用的退避状态（decorrelated 抖动依赖上一次延迟）
+     */
+    public Backoff backoff() {
+        return new Backoff();
+    }
+
+    /**
+     * 阻塞等待重试延迟（仅用于阻塞读取模式的专用线程）
+     */
+    public void waitBeforeRetry(Backoff backoff, int attempt, int statusCode) {
+        long delay = backoff.nextDelayMs(attempt);
         log.warn("请求失败(status={}), 第{}次重试, 等待{}ms", statusCode, attempt + 1, delay);
         try {
             Thread.sleep(delay);
@@ -55,7 +88,58 @@ public class RetryHandler {
         }
     }
 
+    /**
+     * 非阻塞等待重试延迟
+     */
+    public Mono<Long> delayBeforeRetry(Backoff backoff, int attempt, int statusCode) {
+        long delay = backoff.nextDelayMs(attempt);
+        log.warn("请求失败(status={}), 第{}次重试, 等待{}ms", statusCode, attempt + 1, delay);
+        return Mono.delay(Duration.ofMillis(delay));
+    }
+
     public int maxRetries() {
-        return maxRetries;
+        return config.getMaxRetries();
+    }
+
+    private TokenBucket budget(String endpoint) {
+        return budgets.computeIfAbsent(endpoint, ep -> {
+            TokenBucket budget = new TokenBucket(config.getBudgetRatio(), config.getBudgetMaxTokens());
+            Metrics.instance().gauge("retry_budget_tokens", Metrics.labels("endpoint", ep), budget::tokens);
+            return budget;
+        });
+    }
+
+    /**
+     * 退避计算
+     */
+    public class Backoff {
+
+        private long previousMs;
+
+        private Backoff() {
+        }
+
+        /**
+         * 第 attempt 次重试前的延迟（毫秒），attempt 从 0 开始，切换端点后重新从 0 计
+         */
+        public long nextDelayMs(int attempt) {
+            long base = config.getBaseDelayMs();
+            long cap = config.getMaxDelayMs();
+            long exponential = Math.min(cap, (long) (base * Math.pow(2, attempt)));
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long delay = switch (config.getJitter()) {
+                case "none" -> exponential;
+                // 上一次延迟的 3 倍内随机，不低于 base
+                case "decorrelated" -> {
+                    long previous = attempt == 0 || previousMs == 0 ? base : previousMs;
+                    long upper = Math.min(cap, previous * 3);
+                    yield upper > base ? random.nextLong(base, upper + 1) : Math.min(base, cap);
+                }
+                // full：[0, 指数上限] 内均匀随机
+                default -> random.nextLong(exponential + 1);
+            };
+            previousMs = delay;
+            return delay;
+        }
     }
 }
@@ -0,0 +1,78 @@
+package com.kiro.gateway.proxy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流式请求取消句柄
+ * <p>
+ * 客户端断开时 cancel() 执行已注册的中止动作（关闭响应体 / 取消订阅）；
+ * 流的结束只会被记录一次：cancel() 与 finish() 谁先成功谁负责收尾
+ */
+public class StreamCancellation {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamCancellation.class);
+
+    private static final int ACTIVE = 0;
+    private static final int FINISHED = 1;
+    private static final int CANCELLED = 2;
+
+    private final AtomicInteger state = new AtomicInteger(ACTIVE);
+    private final List<Runnable> hooks = new ArrayList<>();
+
+    /**
+     * 注册中止动作，已取消时立即执行
+     */
+    public void onCancel(Runnable hook) {
+        synchronized (hooks) {
+            if (state.get() != CANCELLED) {
+                hooks.add(hook);
+                return;
+            }
+        }
+        runQuietly(hook);
+    }
+
+    /**
+     * 客户端取消
+     *
+     * @return true 表示由本次调用负责收尾（流尚未正常结束）
+     */
+    public boolean cancel() {
+        if (!state.compareAndSet(ACTIVE, CANCELLED)) {
+            return false;
+        }
+        List<Runnable> pending;
+        synchronized (hooks) {
+            pending = new ArrayList<>(hooks);
+            hooks.clear();
+        }
+        pending.forEach(StreamCancellation::runQuietly);
+        return true;
+    }
+
+    /**
+     * 流正常结束或出错
+     *
+     * @return true 表示由本次调用负责收尾（客户端未取消）
+     */
+    public boolean finish() {
+        return state.compareAndSet(ACTIVE, FINISHED);
+    }
+
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    private static void runQuietly(Runnable hook) {
+        try {
+            hook.run();
+        } catch (Exception e) {
+            log.debug("执行取消动作失败: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.kiro.gateway.proxy;
+
+/**
+ * Kiro 流式事件（规范化后的单个事件）
+ * <p>
+ * 异步模式下 KiroApiClient 以 Flux&lt;StreamEvent&gt; 输出，完成和错误由 Flux 终止信号表达
+ *
+ * @param type        事件类型
+ * @param text        文本 / thinking / 工具输入片段
+ * @param toolUseId   工具调用 ID
+ * @param name        工具名
+ * @param inputTokens 输入 token（USAGE）
+ * @param outputTokens 输出 token（USAGE）
+ * @param value       credits（CREDITS）或上下文百分比（CONTEXT_USAGE）
+ */
+public record StreamEvent(Type type, String text, String toolUseId, String name,
+                          int inputTokens, int outputTokens, double value) {
+
+    public enum Type {
+        TEXT, THINKING, TOOL_USE_START, TOOL_USE_INPUT, TOOL_USE_END, USAGE, CREDITS, CONTEXT_USAGE
+    }
+
+    public static StreamEvent text(String text) {
+        return new StreamEvent(Type.TEXT, text, null, null, 0, 0, 0);
+    }
+
+    public static StreamEvent thinking(String thinking) {
+        return new StreamEvent(Type.THINKING, thinking, null, null, 0, 0, 0);
+    }
+
+    public static StreamEvent toolUseStart(String toolUseId, String name) {
+        return new StreamEvent(Type.TOOL_USE_START, null, toolUseId, name, 0, 0, 0);
+    }
+
+    public static StreamEvent toolUseInput(String toolUseId, String inputDelta) {
+        return new StreamEvent(Type.TOOL_USE_INPUT, inputDelta, toolUseId, null, 0, 0, 0);
+    }
+
+    public static StreamEvent toolUseEnd(String toolUseId) {
+        return new StreamEvent(Type.TOOL_USE_END, null, toolUseId, null, 0, 0, 0);
+    }
+
+    public static StreamEvent usage(int inputTokens, int outputTokens) {
+        return new StreamEvent(Type.USAGE, null, null, null, inputTokens, outputTokens, 0);
+    }
+
+    public static StreamEvent credits(double credits) {
+        return new StreamEvent(Type.CREDITS, null, null, null, 0, 0, credits);
+    }
+
+    public static StreamEvent contextUsage(double percentage) {
+        return new StreamEvent(Type.CONTEXT_USAGE, null, null, null, 0, 0, percentage);
+    }
+
+    /**
+     * 转发到回调接口
+     */
+    public void dispatch(StreamCallback callback) {
+        switch (type) {
+            case TEXT -> callback.onText(text);
+            case THINKING -> callback.onThinking(text);
+            case TOOL_USE_START -> callback.onToolUseStart(toolUseId, name);
+            case TOOL_USE_INPUT -> callback.onToolUseInput(toolUseId, text);
+            case TOOL_USE_END -> callback.onToolUseEnd(toolUseId);
+            case USAGE -> callback.onUsage(inputTokens, outputTokens);
+            case CREDITS -> callback.onCredits(value);
+            case CONTEXT_USAGE -> callback.onContextUsage(value);
+        }
+    }
+}
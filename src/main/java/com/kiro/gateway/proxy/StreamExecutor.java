@@ -0,0 +1,60 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.exception.OverloadedException;
+import com.kiro.gateway.util.ConcurrencyLimiter;
+import com.kiro.gateway.util.Metrics;
+import jakarta.annotation.PreDestroy;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+
+/**
+ * 流式请求执行器
+ * <p>
+ * 准入控制：并发上限 + 有界等待队列，排队超时或队列已满返回过载错误（带 Retry-After）；
+ * 阻塞模式的上游读取在有界的具名线程池上运行，替代每请求 new Thread
+ */
+@Component
+public class StreamExecutor {
+
+    private final ConcurrencyLimiter limiter;
+    private final Scheduler scheduler;
+
+    public StreamExecutor(AppProperties properties) {
+        AppProperties.ConcurrencyConfig config = properties.getConcurrency();
+        this.limiter = new ConcurrencyLimiter(config.getMaxStreams(), config.getMaxQueued(),
+                Duration.ofMillis(config.getQueueTimeoutMs()),
+                () -> new OverloadedException("网关繁忙，请稍后重试", config.getRejectStatus(), config.getRetryAfterSeconds()));
+        // 准入已限制并发，线程数与许可数一致；客户端断开后上游读取可能稍晚结束，任务队列留足余量
+        this.scheduler = Schedulers.newBoundedElastic(config.getMaxStreams(),
+                Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "kiro-stream");
+
+        Metrics metrics = Metrics.instance();
+        metrics.gauge("streams_active", limiter::active);
+        metrics.gauge("streams_queued", limiter::queued);
+        metrics.counter("streams_rejected_total", limiter::rejected);
+    }
+
+    /**
+     * 申请流式请求许可，流结束后需调用 Permit.release
+     */
+    public Mono<ConcurrencyLimiter.Permit> admit() {
+        return limiter.acquire();
+    }
+
+    /**
+     * 在流式线程池上执行阻塞读取
+     */
+    public void execute(Runnable task) {
+        scheduler.schedule(task);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scheduler.dispose();
+    }
+}
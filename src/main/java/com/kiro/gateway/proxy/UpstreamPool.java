@@ -0,0 +1,60 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.exception.OverloadedException;
+import com.kiro.gateway.util.ConcurrencyLimiter;
+import com.kiro.gateway.util.Metrics;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 上游连接占用控制
+ * <p>
+ * JDK HttpClient 不暴露连接池状态，这里按 host 统计在途请求并限制上限：
+ * HTTP/1.1 下每个在途请求独占一条连接，上限即每 host 连接数；HTTP/2 下同一 host 复用一条连接，上限即并发流数
+ */
+@Component
+public class UpstreamPool {
+
+    private final AppProperties.HttpConfig config;
+    private final ConcurrentHashMap<String, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+
+    public UpstreamPool(AppProperties properties) {
+        this.config = properties.getHttp();
+    }
+
+    /**
+     * 申请向该端点发请求的许可，响应体读完（或放弃）后需调用 Permit.release
+     */
+    public Mono<ConcurrencyLimiter.Permit> acquire(String endpoint) {
+        return limiter(URI.create(endpoint).getHost()).acquire();
+    }
+
+    /**
+     * 统计实际协商出的协议版本（HTTP/2 不可用时 JDK 会回落到 HTTP/1.1）
+     */
+    public void recordVersion(HttpClient.Version version) {
+        Metrics.instance().increment(version == HttpClient.Version.HTTP_2
+                ? "upstream_responses_http2_total" : "upstream_responses_http1_total");
+    }
+
+    private ConcurrencyLimiter limiter(String host) {
+        return limiters.computeIfAbsent(host, h -> {
+            int max = config.getMaxInflightPerHost() > 0 ? config.getMaxInflightPerHost() : Integer.MAX_VALUE;
+            ConcurrencyLimiter limiter = new ConcurrencyLimiter(max, config.getMaxQueuedPerHost(),
+                    Duration.ofMillis(config.getQueueTimeoutMs()),
+                    () -> new OverloadedException("上游连接已满: " + h, 429, 1));
+            String labels = Metrics.labels("host", h);
+            Metrics metrics = Metrics.instance();
+            metrics.gauge("upstream_inflight", labels, limiter::active);
+            metrics.gauge("upstream_queued", labels, limiter::queued);
+            metrics.counter("upstream_rejected_total", labels, limiter::rejected);
+            return limiter;
+        });
+    }
+}
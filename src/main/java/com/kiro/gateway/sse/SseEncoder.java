@@ -0,0 +1,254 @@
+package com.kiro.gateway.sse;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * SSE delta 编码器
+ * <p>
+ * 事件前缀按类型预先编码为字节，文本直接做 JSON 转义写入 DataBuffer，
+ * 不构建 JSONObject、不拼接中间 String。输出与 fastjson2 序列化结果逐字节一致：
+ * 仅转义 " \ 和控制字符（\b \t \n \f \r 用短形式，其余为小写 \\u00xx），孤立代理字符输出 '?'
+ * <p>
+ * 每个 SseStream 持有一个实例，内部暂存区非线程安全
+ */
+public abstract class SseEncoder {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    // 预编码的小索引
+    private static final int CACHED_INDEXES = 64;
+
+    private byte[] scratch = new byte[512];
+    private int pos;
+
+    /**
+     * Anthropic Messages API：event: content_block_delta
+     */
+    public static SseEncoder claude() {
+        return new ClaudeEncoder();
+    }
+
+    /**
+     * OpenAI Chat Completions：data: chat.completion.chunk，id / created / model 在流内固定
+     */
+    public static SseEncoder openAi(String completionId, long created, String model) {
+        return new OpenAiEncoder(completionId, created, model);
+    }
+
+    /**
+     * 写入一个完整 delta 事件
+     */
+    public void encodeDelta(SseStream.DeltaType type, int index, String text, DataBuffer out) {
+        pos = 0;
+        writeDelta(type, index, text);
+        out.ensureWritable(pos);
+        out.write(scratch, 0, pos);
+    }
+
+    /**
+     * 写入已格式化的 SSE 帧
+     */
+    public void encodeRaw(String frame, DataBuffer out) {
+        out.write(frame, StandardCharsets.UTF_8);
+    }
+
+    protected abstract void writeDelta(SseStream.DeltaType type, int index, String text);
+
+    protected void writeBytes(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, scratch, pos, bytes.length);
+        pos += bytes.length;
+    }
+
+    protected void writeInt(long value) {
+        if (value < 0) {
+            ensure(1);
+            scratch[pos++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        ensure(digits);
+        for (int i = pos + digits - 1; i >= pos; i--) {
+            scratch[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+        pos += digits;
+    }
+
+    /**
+     * 写入带引号的 JSON 字符串
+     */
+    protected void writeJsonString(String s) {
+        int len = s.length();
+        // 最坏情况：每个字符 \\u00xx 6 字节
+        ensure(len * 6 + 2);
+        byte[] buf = scratch;
+        int p = pos;
+        buf[p++] = '"';
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (c >= 0x20 && c != '"' && c != '\\') {
+                    buf[p++] = (byte) c;
+                    continue;
+                }
+                buf[p++] = '\\';
+                switch (c) {
+                    case '"' -> buf[p++] = '"';
+                    case '\\' -> buf[p++] = '\\';
+                    case '\b' -> buf[p++] = 'b';
+                    case '\t' -> buf[p++] = 't';
+                    case '\n' -> buf[p++] = 'n';
+                    case '\f' -> buf[p++] = 'f';
+                    case '\r' -> buf[p++] = 'r';
+                    default -> {
+                        buf[p++] = 'u';
+                        buf[p++] = '0';
+                        buf[p++] = '0';
+                        buf[p++] = HEX[c >> 4];
+                        buf[p++] = HEX[c & 0xF];
+                    }
+                }
+            } else if (c < 0x800) {
+                buf[p++] = (byte) (0xC0 | (c >> 6));
+                buf[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                char low;
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(low = s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, low);
+                    buf[p++] = (byte) (0xF0 | (cp >> 18));
+                    buf[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[p++] = (byte) (0x80 | (cp & 0x3F));
+                    i++;
+                } else {
+                    buf[p++] = '?';
+                }
+            } else {
+                buf[p++] = (byte) (0xE0 | (c >> 12));
+                buf[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buf[p++] = '"';
+        pos = p;
+    }
+
+    private void ensure(int extra) {
+        if (pos + extra > scratch.length) {
+            byte[] grown = new byte[Math.max(scratch.length * 2, pos + extra)];
+            System.arraycopy(scratch, 0, grown, 0, pos);
+            scratch = grown;
+        }
+    }
+
+    /**
+     * 取出暂存区内容并清空
+     */
+    protected byte[] snapshot() {
+        byte[] copy = new byte[pos];
+        System.arraycopy(scratch, 0, copy, 0, pos);
+        pos = 0;
+        return copy;
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * event: content_block_delta
+     * data: {"type":"content_block_delta","index":N,"delta":{"type":"text_delta","text":"..."}}
+     */
+    private static final class ClaudeEncoder extends SseEncoder {
+
+        private static final byte[][][] PREFIXES = new byte[SseStream.DeltaType.values().length][CACHED_INDEXES][];
+        private static final byte[] SUFFIX = ascii("}}\n\n");
+
+        static {
+            for (SseStream.DeltaType type : SseStream.DeltaType.values()) {
+                for (int i = 0; i < CACHED_INDEXES; i++) {
+                    PREFIXES[type.ordinal()][i] = prefix(type, i);
+                }
+            }
+        }
+
+        private static byte[] prefix(SseStream.DeltaType type, int index) {
+            String delta = switch (type) {
+                case TEXT -> "{\"type\":\"text_delta\",\"text\":";
+                case THINKING -> "{\"type\":\"thinking_delta\",\"thinking\":";
+                case TOOL_INPUT -> "{\"type\":\"input_json_delta\",\"partial_json\":";
+            };
+            return ascii("event: content_block_delta\ndata: {\"type\":\"content_block_delta\",\"index\":"
+                    + index + ",\"delta\":" + delta);
+        }
+
+        @Override
+        protected void writeDelta(SseStream.DeltaType type, int index, String text) {
+            writeBytes(index < CACHED_INDEXES ? PREFIXES[type.ordinal()][index] : prefix(type, index));
+            writeJsonString(text);
+            writeBytes(SUFFIX);
+        }
+    }
+
+    /**
+     * data: {"id":"...","object":"chat.completion.chunk","created":N,"model":"...",
+     * "choices":[{"index":0,"delta":{"content":"..."}}]}
+     */
+    private static final class OpenAiEncoder extends SseEncoder {
+
+        private static final byte[] CONTENT = ascii("\"content\":");
+        private static final byte[] REASONING_CONTENT = ascii("\"reasoning_content\":");
+        private static final byte[] TOOL_CALL_INDEX = ascii("\"tool_calls\":[{\"index\":");
+        private static final byte[] TOOL_CALL_ARGUMENTS = ascii(",\"function\":{\"arguments\":");
+        private static final byte[] TOOL_CALL_END = ascii("}}]");
+        private static final byte[] SUFFIX = ascii("}}]}\n\n");
+
+        private final byte[] prefix;
+
+        OpenAiEncoder(String completionId, long created, String model) {
+            // 流内固定部分只编码一次（null 字段与 fastjson2 一样省略）
+            writeBytes(ascii("data: {"));
+            if (completionId != null) {
+                writeBytes(ascii("\"id\":"));
+                writeJsonString(completionId);
+                writeBytes(ascii(","));
+            }
+            writeBytes(ascii("\"object\":\"chat.completion.chunk\",\"created\":"));
+            writeInt(created);
+            if (model != null) {
+                writeBytes(ascii(",\"model\":"));
+                writeJsonString(model);
+            }
+            writeBytes(ascii(",\"choices\":[{\"index\":0,\"delta\":{"));
+            this.prefix = snapshot();
+        }
+
+        @Override
+        protected void writeDelta(SseStream.DeltaType type, int index, String text) {
+            writeBytes(prefix);
+            switch (type) {
+                case TEXT -> {
+                    writeBytes(CONTENT);
+                    writeJsonString(text);
+                }
+                case THINKING -> {
+                    writeBytes(REASONING_CONTENT);
+                    writeJsonString(text);
+                }
+                case TOOL_INPUT -> {
+                    writeBytes(TOOL_CALL_INDEX);
+                    writeInt(index);
+                    writeBytes(TOOL_CALL_ARGUMENTS);
+                    writeJsonString(text);
+                    writeBytes(TOOL_CALL_END);
+                }
+            }
+            writeBytes(SUFFIX);
+        }
+    }
+}
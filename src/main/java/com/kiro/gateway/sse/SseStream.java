@@ -0,0 +1,357 @@
+package com.kiro.gateway.sse;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.util.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界、可合并的 SSE 输出流
+ * <p>
+ * 按下游 request 的需求发送，未发送的帧留在每流队列中；
+ * 队列达到上限或全局在途字符数超出预算时，相邻的同类 delta（文本 / thinking / 工具输入）
+ * 合并为一个更大的 delta，相邻的完整帧拼接为一帧，不丢数据。
+ * 两个上限都是软上限：类型交替的帧无法合并，仍会入队；在途量按 UTF-16 字符计，不是编码后的字节数。
+ * delta 在发送时才由 SseEncoder 编码进 DataBuffer，合并后只编码一次
+ * <p>
+ * 刷新策略：下游每个元素（一个 DataBuffer）对应一次 flush，队列中的帧攒批后一次发出。
+ * 首个事件、块边界（非 delta 帧）和流结束立即刷新，
+ * 其余 delta 在攒够 flushChars 或等待 flushIntervalMs 后刷新
+ */
+public class SseStream {
+
+    private static final Logger log = LoggerFactory.getLogger(SseStream.class);
+
+    // 所有活跃流，用于 gauge 汇总
+    private static final Set<SseStream> ACTIVE = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    // 全局在途字符数（所有流队列中尚未发送的 UTF-16 字符）
+    private static final AtomicLong INFLIGHT_CHARS = new AtomicLong();
+
+    static {
+        Metrics metrics = Metrics.instance();
+        metrics.gauge("sse_inflight_chars", INFLIGHT_CHARS::get);
+        metrics.gauge("sse_streams_active", ACTIVE::size);
+        metrics.gauge("sse_queue_depth_max", () -> ACTIVE.stream().mapToInt(SseStream::depth).max().orElse(0));
+        metrics.gauge("sse_queue_depth_sum", () -> ACTIVE.stream().mapToInt(SseStream::depth).sum());
+    }
+
+    /**
+     * 可合并的 delta 类型
+     */
+    public enum DeltaType {
+        TEXT, THINKING, TOOL_INPUT
+    }
+
+    private final int maxQueued;
+    private final long maxInflightChars;
+    private final long flushIntervalMs;
+    private final int flushChars;
+    private final SseEncoder encoder;
+    private final DataBufferFactory bufferFactory;
+    private final ArrayDeque<Frame> queue = new ArrayDeque<>();
+    private final Flux<DataBuffer> flux;
+
+    private FluxSink<DataBuffer> sink;
+    private boolean draining;
+    private boolean missed;
+    private boolean completed;
+    private boolean cancelled;
+    private int peakDepth;
+    private long coalesced;
+
+    // 刷新状态
+    private int queuedChars;
+    private int queuedBoundaries;
+    private boolean firstFlushed;
+    private boolean flushDue;
+    private Disposable flushTimer;
+    private int queuedDeltas;
+    private Runnable deltaFlushListener;
+
+    /**
+     * @param config        缓冲上限与刷新策略
+     * @param encoder       delta 编码器（每流一个实例）
+     * @param bufferFactory 响应的 DataBuffer 工厂
+     */
+    public SseStream(AppProperties.SseConfig config, SseEncoder encoder, DataBufferFactory bufferFactory) {
+        this.maxQueued = config.getMaxQueuedEvents();
+        this.maxInflightChars = config.getMaxInflightChars();
+        this.flushIntervalMs = config.getFlushIntervalMs();
+        this.flushChars = config.getFlushChars();
+        this.encoder = encoder;
+        this.bufferFactory = bufferFactory;
+        this.flux = Flux.create(s -> {
+            synchronized (this) {
+                this.sink = s;
+            }
+            ACTIVE.add(this);
+            s.onRequest(n -> drain());
+            s.onDispose(this::dispose);
+            drain();
+        });
+    }
+
+    /**
+     * 发送一个完整 SSE 帧；队列已满且队尾也是完整帧时拼接到队尾
+     */
+    public void emit(String frame) {
+        synchronized (this) {
+            if (completed || cancelled) {
+                return;
+            }
+            Frame tail = queue.peekLast();
+            if (tail != null && tail.mergeable(null, 0) && isFull()) {
+                merge(tail, frame);
+            } else {
+                enqueue(new Frame(null, 0, frame));
+            }
+        }
+        drain();
+    }
+
+    /**
+     * 发送可合并的 delta
+     */
+    public void emitDelta(DeltaType type, int index, String text) {
+        synchronized (this) {
+            if (completed || cancelled) {
+                return;
+            }
+            Frame tail = queue.peekLast();
+            if (tail != null && tail.mergeable(type, index) && isFull()) {
+                merge(tail, text);
+            } else {
+                enqueue(new Frame(type, index, text));
+            }
+        }
+        drain();
+    }
+
+    /**
+     * 结束流，队列中剩余的帧发送完后完成
+     */
+    public void complete() {
+        synchronized (this) {
+            if (completed || cancelled) {
+                return;
+            }
+            completed = true;
+        }
+        drain();
+    }
+
+    /**
+     * 每次刷新包含文本 / thinking delta 时回调（用于 TTFT / 间隔统计）
+     */
+    public void onDeltaFlush(Runnable listener) {
+        this.deltaFlushListener = listener;
+    }
+
+    public Flux<DataBuffer> asFlux() {
+        return flux;
+    }
+
+    public synchronized int depth() {
+        return queue.size();
+    }
+
+    private boolean isFull() {
+        return queue.size() >= maxQueued || INFLIGHT_CHARS.get() >= maxInflightChars;
+    }
+
+    private void merge(Frame tail, String text) {
+        tail.append(text);
+        queuedChars += text.length();
+        INFLIGHT_CHARS.addAndGet(text.length());
+        coalesced++;
+        Metrics.instance().increment("sse_coalesced_deltas_total");
+    }
+
+    private void enqueue(Frame frame) {
+        queue.addLast(frame);
+        queuedChars += frame.size();
+        if (frame.type == null) {
+            queuedBoundaries++;
+        } else if (frame.type != DeltaType.TOOL_INPUT) {
+            queuedDeltas++;
+        }
+        INFLIGHT_CHARS.addAndGet(frame.size());
+        peakDepth = Math.max(peakDepth, queue.size());
+    }
+
+    /**
+     * 是否立即刷新当前队列
+     */
+    private boolean shouldFlush() {
+        return flushIntervalMs <= 0 || !firstFlushed || completed || flushDue
+                || queuedBoundaries > 0 || queuedChars >= flushChars;
+    }
+
+    /**
+     * 取出队列中所有帧编码进同一个 DataBuffer
+     */
+    private DataBuffer pollBatch() {
+        int frames = queue.size();
+        DataBuffer batch = bufferFactory.allocateBuffer(queuedChars + frames * 128);
+        Frame frame;
+        while ((frame = queue.pollFirst()) != null) {
+            frame.writeTo(encoder, batch);
+        }
+        INFLIGHT_CHARS.addAndGet(-queuedChars);
+        if (queuedDeltas > 0 && deltaFlushListener != null) {
+            deltaFlushListener.run();
+        }
+        queuedChars = 0;
+        queuedBoundaries = 0;
+        queuedDeltas = 0;
+        firstFlushed = true;
+        flushDue = false;
+        if (flushTimer != null) {
+            flushTimer.dispose();
+            flushTimer = null;
+        }
+        Metrics metrics = Metrics.instance();
+        metrics.increment("sse_flushes_total");
+        metrics.add("sse_frames_total", frames);
+        return batch;
+    }
+
+    /**
+     * 队列中有待发送的 delta 但未达到刷新条件，到期后强制刷新
+     */
+    private void scheduleFlush() {
+        if (flushTimer != null || queue.isEmpty()) {
+            return;
+        }
+        flushTimer = Schedulers.parallel().schedule(() -> {
+            synchronized (this) {
+                flushTimer = null;
+                flushDue = true;
+            }
+            drain();
+        }, flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 按下游需求发送，重入或并发调用只登记 missed，由正在排空的线程继续
+     */
+    private void drain() {
+        synchronized (this) {
+            if (sink == null) {
+                return;
+            }
+            if (draining) {
+                missed = true;
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            DataBuffer batch;
+            synchronized (this) {
+                if (cancelled) {
+                    draining = false;
+                    return;
+                }
+                if (!queue.isEmpty() && sink.requestedFromDownstream() > 0 && shouldFlush()) {
+                    batch = pollBatch();
+                } else if (missed) {
+                    missed = false;
+                    continue;
+                } else {
+                    draining = false;
+                    if (!queue.isEmpty()) {
+                        scheduleFlush();
+                    }
+                    if (!completed || !queue.isEmpty()) {
+                        return;
+                    }
+                    batch = null;
+                }
+            }
+            if (batch == null) {
+                sink.complete();
+                return;
+            }
+            sink.next(batch);
+        }
+    }
+
+    /**
+     * 完成、出错或客户端取消：释放未发送帧占用的预算
+     */
+    private void dispose() {
+        long released = 0;
+        synchronized (this) {
+            cancelled = true;
+            released = queuedChars;
+            queuedChars = 0;
+            queue.clear();
+            if (flushTimer != null) {
+                flushTimer.dispose();
+                flushTimer = null;
+            }
+        }
+        INFLIGHT_CHARS.addAndGet(-released);
+        ACTIVE.remove(this);
+        if (coalesced > 0) {
+            log.debug("SSE 流结束: peakDepth={}, coalesced={}", peakDepth, coalesced);
+        }
+    }
+
+    /**
+     * 队列中的一帧：type 为 null 表示完整的 SSE 文本
+     */
+    private static final class Frame {
+        final DeltaType type;
+        final int index;
+        String text;
+        StringBuilder merged;
+
+        Frame(DeltaType type, int index, String text) {
+            this.type = type;
+            this.index = index;
+            this.text = text;
+        }
+
+        /**
+         * 同类同索引的 delta 可合并；完整帧（type 为 null）之间直接拼接
+         */
+        boolean mergeable(DeltaType otherType, int otherIndex) {
+            return type == otherType && index == otherIndex;
+        }
+
+        void append(String more) {
+            if (merged == null) {
+                merged = new StringBuilder(text.length() + more.length() * 4).append(text);
+            }
+            merged.append(more);
+        }
+
+        int size() {
+            return merged != null ? merged.length() : text.length();
+        }
+
+        void writeTo(SseEncoder encoder, DataBuffer out) {
+            String content = merged != null ? merged.toString() : text;
+            if (type == null) {
+                encoder.encodeRaw(content, out);
+            } else {
+                encoder.encodeDelta(type, index, content, out);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.kiro.gateway.trace;
+
+/**
+ * 单次请求的延迟统计
+ *
+ * @param headersMs       发出请求到收到上游响应头（JDK HttpClient 不暴露建连耗时，含排队、建连和上游处理）
+ * @param ttfbMs          发出请求到收到上游响应体首字节
+ * @param ttftMs          请求开始到首个文本 / thinking delta 发送给客户端
+ * @param avgGapMs        相邻 delta 发送间隔均值
+ * @param maxGapMs        相邻 delta 发送间隔最大值
+ * @param tokensPerSecond 首个到最后一个 delta 之间的 output token 速率
+ * @param deltaGapsMs     delta 间隔的蓄水池样本，最多 256 个（写入直方图用）
+ */
+public record LatencyStats(Long headersMs, Long ttfbMs, Long ttftMs,
+                           Double avgGapMs, Long maxGapMs, Double tokensPerSecond,
+                           int[] deltaGapsMs) {
+}
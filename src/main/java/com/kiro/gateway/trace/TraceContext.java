@@ -2,8 +2,10 @@ package com.kiro.gateway.trace;
 
 import java.time.Instant;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * 单次请求追踪上下文
@@ -13,8 +15,12 @@ import java.util.UUID;
  */
 public class TraceContext {
 
+    // 每个请求保留的 delta 间隔样本数
+    private static final int MAX_GAP_SAMPLES = 256;
+
     private final String traceId;
     private final Instant startTime;
+    private final long startNanos = System.nanoTime();
 
     // ① 客户端请求
     private String clientRequest;
@@ -37,6 +43,19 @@ public class TraceContext {
     // ④ 客户端响应
     private String clientResponse;
     private Integer clientStatus;
+    private boolean clientCancelled;
+
+    // 延迟（纳秒时间戳，0 表示尚未发生）
+    private long kiroRequestNanos;
+    private long kiroHeadersNanos;
+    private long firstByteNanos;
+    private long firstDeltaNanos;
+    private long lastDeltaNanos;
+    // delta 间隔：均值 / 最大值按全部间隔累计，直方图只用蓄水池采样，长输出不会无限增长
+    private final int[] deltaGapSamples = new int[MAX_GAP_SAMPLES];
+    private int deltaGapCount;
+    private long deltaGapSumMs;
+    private int deltaGapMaxMs;
 
     // 通用
     private String accountId;
@@ -44,6 +63,7 @@ public class TraceContext {
     private String errorMessage;
     private boolean stream;
     private String apiKey;
+    private Boolean affinityHit;
 
     private TraceContext(String traceId) {
         this.traceId = traceId;
@@ -52,9 +72,12 @@ public class TraceContext {
 
     /**
      * 创建新的追踪上下文
+     * <p>
+     * traceId 取 64 位随机数的 16 位十六进制：不需要密码学强度，不走 UUID.randomUUID()（SecureRandom 读 /dev/urandom），
+     * 可在事件循环线程上调用
      */
     public static TraceContext create() {
-        return new TraceContext(UUID.randomUUID().toString().replace("-", "").substring(0, 16));
+        return new TraceContext(HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextLong()));
     }
 
     /**
@@ -77,17 +100,105 @@ public class TraceContext {
     /**
      * 记录 Kiro 请求（阶段 ②）
      */
-    public void recordKiroRequest(String requestBody, String endpoint, String headers) {
+    public synchronized void recordKiroRequest(String requestBody, String endpoint, String headers) {
         this.kiroRequest = requestBody;
         this.kiroEndpoint = endpoint;
         this.kiroHeaders = headers;
+        // 每次尝试重新计时，只统计最终成功的那次连接
+        this.kiroRequestNanos = System.nanoTime();
+        this.kiroHeadersNanos = 0;
+        this.firstByteNanos = 0;
     }
 
     /**
      * 记录 Kiro 响应状态（阶段 ③）
      */
-    public void recordKiroResponseStatus(int status) {
+    public synchronized void recordKiroResponseStatus(int status) {
         this.kiroStatus = status;
+        // 响应头到达时刻；JDK HttpClient 不暴露建连耗时，只能统计到响应头
+        this.kiroHeadersNanos = System.nanoTime();
+    }
+
+    /**
+     * 记录收到上游响应体首个字节
+     */
+    public synchronized void recordFirstUpstreamByte() {
+        if (firstByteNanos == 0) {
+            firstByteNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 提交一次上游尝试的请求与计时（对冲时只提交胜出方）
+     */
+    public synchronized void commitUpstream(UpstreamAttempt attempt) {
+        this.kiroRequest = attempt.request;
+        this.kiroEndpoint = attempt.endpoint;
+        this.kiroHeaders = attempt.headers;
+        this.kiroStatus = attempt.status;
+        this.kiroRequestNanos = attempt.requestNanos;
+        this.kiroHeadersNanos = attempt.headersNanos;
+        this.firstByteNanos = attempt.firstByteNanos;
+    }
+
+    /**
+     * 最近一次上游尝试的首字节耗时（ms），尚未收到返回 -1
+     */
+    public synchronized long upstreamFirstByteMs() {
+        return firstByteNanos > 0 ? millisBetween(kiroRequestNanos, firstByteNanos) : -1;
+    }
+
+    /**
+     * 记录一次文本 / thinking delta 发送给客户端（首次即 TTFT，之后记录间隔）
+     */
+    public synchronized void recordDeltaSent() {
+        long now = System.nanoTime();
+        if (firstDeltaNanos == 0) {
+            firstDeltaNanos = now;
+        } else {
+            int gapMs = (int) ((now - lastDeltaNanos) / 1_000_000);
+            deltaGapSumMs += gapMs;
+            deltaGapMaxMs = Math.max(deltaGapMaxMs, gapMs);
+            if (deltaGapCount < MAX_GAP_SAMPLES) {
+                deltaGapSamples[deltaGapCount] = gapMs;
+            } else {
+                int slot = ThreadLocalRandom.current().nextInt(deltaGapCount + 1);
+                if (slot < MAX_GAP_SAMPLES) {
+                    deltaGapSamples[slot] = gapMs;
+                }
+            }
+            deltaGapCount++;
+        }
+        lastDeltaNanos = now;
+    }
+
+    /**
+     * 当前的延迟统计（未发生的阶段为 null）
+     */
+    public synchronized LatencyStats latencyStats() {
+        Long headersMs = kiroHeadersNanos > 0 ? millisBetween(kiroRequestNanos, kiroHeadersNanos) : null;
+        Long ttfbMs = firstByteNanos > 0 ? millisBetween(kiroRequestNanos, firstByteNanos) : null;
+        Long ttftMs = firstDeltaNanos > 0 ? millisBetween(startNanos, firstDeltaNanos) : null;
+
+        Double avgGapMs = null;
+        Long maxGapMs = null;
+        if (deltaGapCount > 0) {
+            avgGapMs = (double) deltaGapSumMs / deltaGapCount;
+            maxGapMs = (long) deltaGapMaxMs;
+        }
+
+        // 输出速度：首个 delta 到最后一个 delta 之间的 output token 速率
+        Double tokensPerSecond = null;
+        long generationNanos = lastDeltaNanos - firstDeltaNanos;
+        if (outputTokens > 0 && firstDeltaNanos > 0 && generationNanos > 0) {
+            tokensPerSecond = outputTokens / (generationNanos / 1e9);
+        }
+        return new LatencyStats(headersMs, ttfbMs, ttftMs, avgGapMs, maxGapMs, tokensPerSecond,
+                Arrays.copyOf(deltaGapSamples, Math.min(deltaGapCount, MAX_GAP_SAMPLES)));
+    }
+
+    private static long millisBetween(long fromNanos, long toNanos) {
+        return (toNanos - fromNanos) / 1_000_000;
     }
 
     /**
@@ -121,6 +232,15 @@ public class TraceContext {
         this.clientStatus = status;
     }
 
+    /**
+     * 记录客户端中途断开（状态码沿用 499 Client Closed Request）
+     */
+    public void recordClientCancelled() {
+        this.clientCancelled = true;
+        this.clientResponse = "[cancelled]";
+        this.clientStatus = 499;
+    }
+
     /**
      * 记录错误
      */
@@ -146,10 +266,59 @@ public class TraceContext {
                 kiroRequest, kiroEndpoint, kiroHeaders,
                 kiroStatus, kiroEvents, inputTokens, outputTokens, credits,
                 clientResponse, clientStatus, errorMessage,
-                stream, apiKey
+                stream, apiKey, clientCancelled, affinityHit, latencyStats()
         );
     }
 
+    /**
+     * 单次上游尝试（含端点回退和重试）的请求与计时
+     * <p>
+     * 对冲时主请求和对冲请求并发进行，各自记录到一份 UpstreamAttempt，互不覆盖；
+     * 每份只在所属请求的响应式链上按序写入；客户端取消时会在其他线程提交，字段为 volatile
+     */
+    public static class UpstreamAttempt {
+
+        private volatile String request;
+        private volatile String endpoint;
+        private volatile String headers;
+        private volatile Integer status;
+        private volatile long requestNanos;
+        private volatile long headersNanos;
+        private volatile long firstByteNanos;
+
+        /**
+         * 记录发出请求，每次重试重新计时
+         */
+        public void recordRequest(String requestBody, String endpoint, String headers) {
+            this.request = requestBody;
+            this.endpoint = endpoint;
+            this.headers = headers;
+            this.status = null;
+            this.requestNanos = System.nanoTime();
+            this.headersNanos = 0;
+            this.firstByteNanos = 0;
+        }
+
+        public void recordResponseStatus(int status) {
+            this.status = status;
+            this.headersNanos = System.nanoTime();
+        }
+
+        public void recordFirstByte() {
+            if (firstByteNanos == 0) {
+                firstByteNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * 最近一次尝试是否拿到 200 流式响应（上游已开始生成）
+         */
+        public boolean streamed() {
+            Integer current = status;
+            return current != null && current == 200;
+        }
+    }
+
     // --- getter / setter ---
 
     public String traceId() { return traceId; }
@@ -166,6 +335,9 @@ public class TraceContext {
     public void setStream(boolean stream) { this.stream = stream; }
     public String apiKey() { return apiKey; }
     public void setApiKey(String apiKey) { this.apiKey = apiKey; }
+    public Boolean affinityHit() { return affinityHit; }
+    public void setAffinityHit(Boolean affinityHit) { this.affinityHit = affinityHit; }
     public String errorMessage() { return errorMessage; }
     public String kiroEndpoint() { return kiroEndpoint; }
+    public boolean clientCancelled() { return clientCancelled; }
 }
@@ -31,7 +31,11 @@ public record TraceLog(
         String errorMessage,
         // 其他
         boolean stream,
-        String apiKey
+        String apiKey,
+        boolean clientCancelled,
+        // 会话亲和是否命中首选账号（未使用 affinity 策略时为 null）
+        Boolean affinityHit,
+        LatencyStats latency
 ) {
 
     /**
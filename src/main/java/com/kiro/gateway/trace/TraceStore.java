@@ -4,6 +4,7 @@ import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import com.kiro.gateway.dao.RequestLogDAO;
 import com.kiro.gateway.dao.TraceDAO;
+import com.kiro.gateway.util.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
@@ -24,6 +25,13 @@ public class TraceStore {
     private static final Logger log = LoggerFactory.getLogger(TraceStore.class);
     private static final int BUFFER_SIZE = 1000;
 
+    // 延迟直方图桶（毫秒）
+    private static final double[] LATENCY_BUCKETS_MS = {50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+    // delta 间隔桶（毫秒）
+    private static final double[] GAP_BUCKETS_MS = {5, 10, 25, 50, 100, 250, 500, 1000, 5000};
+    // 输出速度桶（token/s）
+    private static final double[] RATE_BUCKETS = {5, 10, 20, 40, 60, 80, 100, 150, 250};
+
     private final RequestLogDAO requestLogDAO;
     private final TraceDAO traceDAO;
     private final BlockingQueue<TraceLog> recentTraces = new ArrayBlockingQueue<>(BUFFER_SIZE);
@@ -52,18 +60,55 @@ public class TraceStore {
      */
     public void saveWithRequestLog(TraceLog traceLog, String accountName) {
         save(traceLog);
+        recordLatencyMetrics(traceLog, accountName);
 
         String conversationId = extractConversationId(traceLog.clientRequest(), traceLog.apiKey());
+        LatencyStats latency = traceLog.latency();
         requestLogDAO.insert(
                 traceLog.traceId(), traceLog.apiType(), traceLog.model(),
                 traceLog.accountId(), accountName,
                 traceLog.inputTokens(), traceLog.outputTokens(), traceLog.credits(),
                 traceLog.durationMs(), traceLog.success(), traceLog.errorMessage(),
                 traceLog.apiKey(), traceLog.stream(), traceLog.kiroEndpoint(),
-                conversationId
+                conversationId, traceLog.clientCancelled(),
+                latency.headersMs(), latency.ttfbMs(), latency.ttftMs(),
+                latency.avgGapMs(), latency.maxGapMs(), latency.tokensPerSecond()
         );
     }
 
+    /**
+     * 延迟指标写入直方图，按 model / account / endpoint / api_type 打标签
+     */
+    private void recordLatencyMetrics(TraceLog traceLog, String accountName) {
+        LatencyStats latency = traceLog.latency();
+        String labels = Metrics.labels(
+                "model", traceLog.model(), //
+                "account", accountName, //
+                "endpoint", traceLog.kiroEndpoint(), //
+                "api_type", traceLog.apiType());
+        Metrics metrics = Metrics.instance();
+        if (latency.headersMs() != null) {
+            metrics.observe("upstream_headers_ms", labels, LATENCY_BUCKETS_MS, latency.headersMs());
+        }
+        if (latency.ttfbMs() != null) {
+            metrics.observe("upstream_ttfb_ms", labels, LATENCY_BUCKETS_MS, latency.ttfbMs());
+        }
+        if (latency.ttftMs() != null) {
+            metrics.observe("ttft_ms", labels, LATENCY_BUCKETS_MS, latency.ttftMs());
+            // 会话亲和命中 / 未命中的 TTFT 对比
+            if (traceLog.affinityHit() != null) {
+                metrics.observe("affinity_ttft_ms", Metrics.labels("affinity", traceLog.affinityHit() ? "hit" : "miss"),
+                        LATENCY_BUCKETS_MS, latency.ttftMs());
+            }
+        }
+        for (int gap : latency.deltaGapsMs()) {
+            metrics.observe("inter_delta_gap_ms", labels, GAP_BUCKETS_MS, gap);
+        }
+        if (latency.tokensPerSecond() != null) {
+            metrics.observe("output_tokens_per_second", labels, RATE_BUCKETS, latency.tokensPerSecond());
+        }
+    }
+
     /**
      * 从 clientRequest 中提取 conversation_id
      * <p>
@@ -72,7 +117,18 @@ public class TraceStore {
     public static String extractConversationId(String clientRequest, String apiKey) {
         if (clientRequest == null || clientRequest.isEmpty()) return null;
         try {
-            JSONObject req = JSONObject.parseObject(clientRequest);
+            return extractConversationId(JSONObject.parseObject(clientRequest), apiKey);
+        } catch (Exception e) {
+            log.debug("提取 conversationId 失败: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 从已解析的请求中提取 conversation_id（选账号时使用，避免重复解析）
+     */
+    public static String extractConversationId(JSONObject req, String apiKey) {
+        try {
             JSONArray messages = req.getJSONArray("messages");
             if (messages == null || messages.isEmpty()) return null;
 
@@ -0,0 +1,161 @@
+package com.kiro.gateway.util;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * 非阻塞并发限制器
+ * <p>
+ * 固定许可数 + 有界 FIFO 等待队列，等待不占用线程；
+ * 队列已满立即拒绝，排队超时同样拒绝，拒绝异常由调用方提供
+ */
+public class ConcurrencyLimiter {
+
+    private final int maxConcurrency;
+    private final int maxQueued;
+    private final long queueTimeoutMs;
+    private final Supplier<? extends RuntimeException> rejection;
+
+    private final ArrayDeque<Waiter> waiters = new ArrayDeque<>();
+    private int active;
+    private long rejected;
+
+    /**
+     * @param maxConcurrency 最大并发
+     * @param maxQueued      最大排队数
+     * @param queueTimeout   排队超时
+     * @param rejection      拒绝时抛出的异常
+     */
+    public ConcurrencyLimiter(int maxConcurrency, int maxQueued, Duration queueTimeout,
+                              Supplier<? extends RuntimeException> rejection) {
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueued = maxQueued;
+        this.queueTimeoutMs = queueTimeout.toMillis();
+        this.rejection = rejection;
+    }
+
+    /**
+     * 申请许可，有空闲许可立即返回，否则排队等待
+     */
+    public Mono<Permit> acquire() {
+        return Mono.<Permit>create(sink -> {
+            Waiter waiter;
+            synchronized (this) {
+                if (active < maxConcurrency) {
+                    active++;
+                    sink.success(new Permit());
+                    return;
+                }
+                if (waiters.size() >= maxQueued) {
+                    rejected++;
+                    sink.error(rejection.get());
+                    return;
+                }
+                waiter = new Waiter(sink);
+                waiters.addLast(waiter);
+            }
+            sink.onCancel(() -> cancel(waiter));
+            waiter.timer = Schedulers.parallel().schedule(() -> expire(waiter), queueTimeoutMs, TimeUnit.MILLISECONDS);
+            // 计时器挂上之前已被转交或取消时，由这里撤销
+            if (waiter.done.get()) {
+                waiter.disposeTimer();
+            }
+        })
+                // 许可已转交但订阅者刚好取消时，被丢弃的许可要归还
+                .doOnDiscard(Permit.class, Permit::release);
+    }
+
+    public synchronized int active() {
+        return active;
+    }
+
+    public synchronized int queued() {
+        return waiters.size();
+    }
+
+    public synchronized long rejected() {
+        return rejected;
+    }
+
+    /**
+     * 归还许可：优先转交给队首仍在等待的请求
+     */
+    private void release() {
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                next = waiters.pollFirst();
+                if (next == null) {
+                    active--;
+                    return;
+                }
+            }
+            // 等待者可能已超时或取消，转交失败继续找下一个
+            if (next.done.compareAndSet(false, true)) {
+                next.disposeTimer();
+                next.sink.success(new Permit());
+                return;
+            }
+        }
+    }
+
+    private void expire(Waiter waiter) {
+        if (!waiter.done.compareAndSet(false, true)) {
+            return;
+        }
+        synchronized (this) {
+            waiters.remove(waiter);
+            rejected++;
+        }
+        waiter.sink.error(rejection.get());
+    }
+
+    private void cancel(Waiter waiter) {
+        if (!waiter.done.compareAndSet(false, true)) {
+            return;
+        }
+        waiter.disposeTimer();
+        synchronized (this) {
+            waiters.remove(waiter);
+        }
+    }
+
+    /**
+     * 并发许可，release 幂等
+     */
+    public class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                ConcurrencyLimiter.this.release();
+            }
+        }
+    }
+
+    private static class Waiter {
+        final MonoSink<Permit> sink;
+        final AtomicBoolean done = new AtomicBoolean();
+        volatile Disposable timer;
+
+        Waiter(MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+
+        void disposeTimer() {
+            Disposable t = timer;
+            if (t != null) {
+                t.dispose();
+            }
+        }
+    }
+}
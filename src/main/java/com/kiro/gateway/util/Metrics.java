@@ -1,12 +1,14 @@
 package com.kiro.gateway.util;
 
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
 
 /**
  * Prometheus 风格指标收集器
  * <p>
- * 请求计数、延迟直方图、Token 使用统计
+ * 请求计数（含外部累计的计数器）、延迟直方图、Token 使用统计、瞬时值 gauge、带标签的 gauge 和直方图
  */
 public class Metrics {
 
@@ -14,9 +16,18 @@ public class Metrics {
 
     // 计数器
     private final ConcurrentHashMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+    // 外部累计的计数器：输出时实时取值，取值只增不减
+    private final ConcurrentHashMap<String, DoubleSupplier> counterSuppliers = new ConcurrentHashMap<>();
     // 延迟直方图桶
     private final long[] bucketBounds = {50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
     private final ConcurrentHashMap<String, long[]> histograms = new ConcurrentHashMap<>();
+    // gauge：输出时实时取值
+    private final ConcurrentHashMap<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
+    // 带标签的 gauge / 外部累计的计数器，key 为 name{labels}
+    private final ConcurrentHashMap<String, LabeledGauge> labeledGauges = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, LabeledGauge> labeledCounters = new ConcurrentHashMap<>();
+    // 带标签的直方图，key 为 name{labels}
+    private final ConcurrentHashMap<String, LabeledHistogram> labeledHistograms = new ConcurrentHashMap<>();
 
     public static Metrics instance() {
         return INSTANCE;
@@ -44,6 +55,38 @@ public class Metrics {
         return counter != null ? counter.get() : 0;
     }
 
+    /**
+     * 注册由外部累计的计数器（同名覆盖），supplier 返回值须单调不减
+     */
+    public void counter(String name, DoubleSupplier supplier) {
+        counterSuppliers.put(name, supplier);
+    }
+
+    /**
+     * 注册带标签、由外部累计的计数器（同名同标签覆盖），supplier 返回值须单调不减
+     *
+     * @param labels 由 {@link #labels(String...)} 生成的标签串
+     */
+    public void counter(String name, String labels, DoubleSupplier supplier) {
+        labeledCounters.put(name + "{" + labels + "}", new LabeledGauge(name, labels, supplier));
+    }
+
+    /**
+     * 注册 gauge（同名覆盖）
+     */
+    public void gauge(String name, DoubleSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * 注册带标签的 gauge（同名同标签覆盖）
+     *
+     * @param labels 由 {@link #labels(String...)} 生成的标签串
+     */
+    public void gauge(String name, String labels, DoubleSupplier supplier) {
+        labeledGauges.put(name + "{" + labels + "}", new LabeledGauge(name, labels, supplier));
+    }
+
     /**
      * 记录延迟到直方图
      */
@@ -60,6 +103,34 @@ public class Metrics {
         }
     }
 
+    /**
+     * 记录一次观测值到带标签的直方图
+     *
+     * @param name   指标名
+     * @param labels 由 {@link #labels(String...)} 生成的标签串
+     * @param bounds 桶上界（升序），同名指标应使用同一组
+     * @param value  观测值
+     */
+    public void observe(String name, String labels, double[] bounds, double value) {
+        labeledHistograms.computeIfAbsent(name + "{" + labels + "}", k -> new LabeledHistogram(name, labels, bounds))
+                .observe(value);
+    }
+
+    /**
+     * 生成 Prometheus 标签串：labels("model", "x", "api_type", "claude") → model="x",api_type="claude"
+     */
+    public static String labels(String... pairs) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i + 1 < pairs.length; i += 2) {
+            if (i > 0) sb.append(',');
+            String value = pairs[i + 1] != null ? pairs[i + 1] : "";
+            sb.append(pairs[i]).append("=\"")
+                    .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return sb.toString();
+    }
+
     /**
      * 记录请求
      */
@@ -84,6 +155,20 @@ public class Metrics {
             sb.append("# TYPE kiro_").append(name).append(" counter\n");
             sb.append("kiro_").append(name).append(" ").append(value.get()).append("\n");
         });
+        counterSuppliers.forEach((name, supplier) -> {
+            sb.append("# TYPE kiro_").append(name).append(" counter\n");
+            sb.append("kiro_").append(name).append(" ").append(supplier.getAsDouble()).append("\n");
+        });
+
+        // gauge
+        gauges.forEach((name, supplier) -> {
+            sb.append("# TYPE kiro_").append(name).append(" gauge\n");
+            sb.append("kiro_").append(name).append(" ").append(supplier.getAsDouble()).append("\n");
+        });
+
+        // 带标签的计数器和 gauge（按名称排序，同名只输出一次 TYPE）
+        appendLabeled(sb, labeledCounters, "counter");
+        appendLabeled(sb, labeledGauges, "gauge");
 
         // 直方图
         histograms.forEach((name, buckets) -> {
@@ -101,6 +186,78 @@ public class Metrics {
             }
         });
 
+        // 带标签的直方图（按名称排序，同名只输出一次 TYPE）
+        String lastName = null;
+        for (LabeledHistogram histogram : new TreeMap<>(labeledHistograms).values()) {
+            if (!histogram.name.equals(lastName)) {
+                sb.append("# TYPE kiro_").append(histogram.name).append(" histogram\n");
+                lastName = histogram.name;
+            }
+            histogram.appendTo(sb);
+        }
+
         return sb.toString();
     }
+
+    private static void appendLabeled(StringBuilder sb, ConcurrentHashMap<String, LabeledGauge> metrics, String type) {
+        String lastName = null;
+        for (LabeledGauge gauge : new TreeMap<>(metrics).values()) {
+            if (!gauge.name.equals(lastName)) {
+                sb.append("# TYPE kiro_").append(gauge.name).append(" ").append(type).append("\n");
+                lastName = gauge.name;
+            }
+            sb.append("kiro_").append(gauge.name).append("{").append(gauge.labels).append("} ")
+                    .append(gauge.supplier.getAsDouble()).append("\n");
+        }
+    }
+
+    private record LabeledGauge(String name, String labels, DoubleSupplier supplier) {}
+
+    /**
+     * 单个标签组合的直方图：桶计数、总和、总数
+     */
+    private static class LabeledHistogram {
+        final String name;
+        final String labels;
+        final double[] bounds;
+        final long[] buckets;
+        double sum;
+        long count;
+
+        LabeledHistogram(String name, String labels, double[] bounds) {
+            this.name = name;
+            this.labels = labels;
+            this.bounds = bounds;
+            this.buckets = new long[bounds.length + 1];
+        }
+
+        synchronized void observe(double value) {
+            int i = 0;
+            while (i < bounds.length && value > bounds[i]) {
+                i++;
+            }
+            buckets[i]++;
+            sum += value;
+            count++;
+        }
+
+        synchronized void appendTo(StringBuilder sb) {
+            String prefix = labels.isEmpty() ? "" : labels + ",";
+            long cumulative = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                cumulative += buckets[i];
+                sb.append("kiro_").append(name).append("_bucket{").append(prefix).append("le=\"")
+                        .append(formatBound(bounds[i])).append("\"} ").append(cumulative).append("\n");
+            }
+            sb.append("kiro_").append(name).append("_bucket{").append(prefix).append("le=\"+Inf\"} ")
+                    .append(count).append("\n");
+            String suffix = labels.isEmpty() ? " " : "{" + labels + "} ";
+            sb.append("kiro_").append(name).append("_sum").append(suffix).append(sum).append("\n");
+            sb.append("kiro_").append(name).append("_count").append(suffix).append(count).append("\n");
+        }
+
+        private static String formatBound(double bound) {
+            return bound == Math.rint(bound) ? Long.toString((long) bound) : Double.toString(bound);
+        }
+    }
 }
@@ -0,0 +1,42 @@
+package com.kiro.gateway.util;
+
+/**
+ * 按流量比例补充的令牌桶
+ * <p>
+ * 每个正常请求存入 ratio 个令牌，每次额外动作（重试、对冲）消耗 1 个，
+ * 容量即允许的突发次数；长期看额外动作不超过正常流量的 ratio 倍
+ */
+public class TokenBucket {
+
+    private final double ratio;
+    private final double maxTokens;
+    private double tokens;
+
+    public TokenBucket(double ratio, double maxTokens) {
+        this.ratio = ratio;
+        this.maxTokens = maxTokens;
+        this.tokens = maxTokens;
+    }
+
+    /**
+     * 记录一次正常请求
+     */
+    public synchronized void deposit() {
+        tokens = Math.min(maxTokens, tokens + ratio);
+    }
+
+    /**
+     * 尝试消耗一个令牌
+     */
+    public synchronized boolean tryWithdraw() {
+        if (tokens < 1) {
+            return false;
+        }
+        tokens -= 1;
+        return true;
+    }
+
+    public synchronized double tokens() {
+        return tokens;
+    }
+}
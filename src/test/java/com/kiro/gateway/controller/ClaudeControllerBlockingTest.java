@@ -0,0 +1,205 @@
+package com.kiro.gateway.controller;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.kiro.gateway.auth.AuthService;
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.dao.AccountDAO;
+import com.kiro.gateway.dao.ApiKeyDAO;
+import com.kiro.gateway.dto.kiro.KiroPayload;
+import com.kiro.gateway.exception.OverloadedException;
+import com.kiro.gateway.model.ModelResolver;
+import com.kiro.gateway.pool.Account;
+import com.kiro.gateway.pool.AccountPool;
+import com.kiro.gateway.proxy.AccountFailover;
+import com.kiro.gateway.proxy.StreamCallback;
+import com.kiro.gateway.proxy.StreamExecutor;
+import com.kiro.gateway.trace.TraceFilter;
+import com.kiro.gateway.trace.TraceStore;
+import com.kiro.gateway.translator.ClaudeTranslator;
+import com.kiro.gateway.translator.RequestTranslator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.config.EnableWebFlux;
+import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
+import reactor.blockhound.BlockHound;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 在真实 Netty 服务器上跑 /v1/messages，BlockHound 检查事件循环线程上没有阻塞调用
+ * <p>
+ * 各依赖的 mock 用 Thread.sleep 模拟阻塞（SQLite 查询、OIDC 刷新、上游读取）
+ */
+class ClaudeControllerBlockingTest {
+
+    // BlockHound 全局只能安装一次，检测到的阻塞调用记在这里而不是直接抛出，避免影响同一 JVM 中的其他测试
+    private static final List<String> blockingCalls = new CopyOnWriteArrayList<>();
+
+    private AnnotationConfigApplicationContext context;
+    private DisposableServer server;
+    private AccountPool accountPool;
+    private AccountFailover failover;
+    private WebTestClient client;
+
+    @BeforeAll
+    static void installBlockHound() {
+        BlockHound.install(builder -> builder
+                // Reactor Netty 事件循环线程
+                .nonBlockingThreadPredicate(p -> p.or(t -> t.getName().startsWith("reactor-http-")))
+                .blockingMethodCallback(method -> blockingCalls.add(Thread.currentThread().getName() + ": " + method)));
+    }
+
+    @BeforeEach
+    void setUp() {
+        blockingCalls.clear();
+        AppProperties properties = new AppProperties();
+
+        AccountDAO accountDAO = mock(AccountDAO.class);
+        when(accountDAO.findAll()).thenReturn(List.of());
+        accountPool = new AccountPool(properties, accountDAO);
+        accountPool.init();
+        accountPool.addAccount("account-0", "{}", "social");
+
+        ApiKeyDAO apiKeyDAO = mock(ApiKeyDAO.class);
+        when(apiKeyDAO.validate(anyString())).thenAnswer(inv -> {
+            Thread.sleep(5);
+            return "sk-test".equals(inv.getArgument(0));
+        });
+
+        AuthService authService = mock(AuthService.class);
+        when(authService.getAccessToken(anyString(), anyString(), anyString())).thenAnswer(inv -> {
+            Thread.sleep(5);
+            return "token";
+        });
+
+        KiroPayload payload = mock(KiroPayload.class);
+        when(payload.toJsonString()).thenReturn("{}");
+        ClaudeTranslator translator = mock(ClaudeTranslator.class);
+        when(translator.translate(any(), anyString(), anyBoolean()))
+                .thenReturn(new RequestTranslator.TranslateResult(payload, Map.of()));
+        when(translator.toClaudeResponse(any(), any(), any(), anyInt(), anyInt(), any(), any()))
+                .thenAnswer(inv -> JSONObject.of("type", "message", "content", inv.getArgument(0)));
+
+        failover = mock(AccountFailover.class);
+        doAnswer(inv -> {
+            Thread.sleep(5);
+            StreamCallback callback = inv.getArgument(4);
+            callback.onText("hello");
+            callback.onComplete();
+            return null;
+        }).when(failover).callStream(any(), anyString(), anyString(), any(), any(), any());
+
+        ModelResolver modelResolver = mock(ModelResolver.class);
+        when(modelResolver.resolve(any()))
+                .thenReturn(new ModelResolver.ResolveResult("kiro-model", "claude-test", false, true));
+
+        context = new AnnotationConfigApplicationContext();
+        context.register(WebFluxConfig.class);
+        context.registerBean(ClaudeController.class, () -> new ClaudeController(accountPool, authService, failover,
+                translator, modelResolver, mock(TraceStore.class), properties, mock(StreamExecutor.class)));
+        context.registerBean(TraceFilter.class, TraceFilter::new);
+        context.registerBean(ApiKeyFilter.class, () -> new ApiKeyFilter(properties, apiKeyDAO));
+        context.refresh();
+
+        server = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .handle(new ReactorHttpHandlerAdapter(WebHttpHandlerBuilder.applicationContext(context).build()))
+                .bindNow();
+        client = WebTestClient.bindToServer()
+                .baseUrl("http://localhost:" + server.port())
+                .responseTimeout(Duration.ofSeconds(10))
+                .build();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.disposeNow();
+        context.close();
+        accountPool.shutdown();
+    }
+
+    @Test
+    void blockHoundDetectsBlockingOnNonBlockingThreads() {
+        Mono.delay(Duration.ZERO)
+                .doOnNext(tick -> {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                })
+                .block();
+        assertFalse(blockingCalls.isEmpty(), "BlockHound 未生效");
+    }
+
+    @Test
+    void messagesDoNotBlockEventLoop() {
+        client.post().uri("/v1/messages")
+                .header("Authorization", "Bearer sk-test")
+                .header("Content-Type", "application/json")
+                .bodyValue("{\"model\":\"claude-test\",\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody(String.class).isEqualTo("{\"type\":\"message\",\"content\":\"hello\"}");
+
+        assertEquals(List.of(), blockingCalls);
+    }
+
+    @Test
+    void rejectedApiKeyDoesNotBlockEventLoop() {
+        client.post().uri("/v1/messages")
+                .header("Authorization", "Bearer sk-wrong")
+                .header("Content-Type", "application/json")
+                .bodyValue("{\"model\":\"claude-test\",\"messages\":[]}")
+                .exchange()
+                .expectStatus().isUnauthorized();
+
+        assertEquals(List.of(), blockingCalls);
+    }
+
+    @Test
+    void localOverloadDoesNotCountAgainstAccount() {
+        doThrow(new OverloadedException("上游连接已满: a.example.com", 429, 1))
+                .when(failover).callStream(any(), anyString(), anyString(), any(), any(), any());
+
+        client.post().uri("/v1/messages")
+                .header("Authorization", "Bearer sk-test")
+                .header("Content-Type", "application/json")
+                .bodyValue("{\"model\":\"claude-test\",\"messages\":[{\"role\":\"user\",\"content\":\"hi\"}]}")
+                .exchange()
+                .expectStatus().is5xxServerError();
+
+        Account account = accountPool.listAccounts().get(0);
+        assertEquals(0, account.errorCount());
+        assertEquals(List.of(), blockingCalls);
+    }
+
+    @Configuration(proxyBeanMethods = false)
+    @EnableWebFlux
+    static class WebFluxConfig {
+    }
+}
@@ -0,0 +1,96 @@
+package com.kiro.gateway.pool;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 账号选择耗时：getNext + release，按账号数、策略和单账号并发上限
+ * <p>
+ * select 为单线程，selectContended 为 4 线程并发选择；selectWithAffinityKey 带会话指纹走 acquire，
+ * affinity 策略只有这条路径会查哈希环
+ * <p>
+ * 不随测试运行，从 IDE 或 {@code java -cp <test-classpath> com.kiro.gateway.pool.AccountPoolBenchmark} 启动，
+ * 加 {@code -prof gc} 可看每次选择的分配量
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountPoolBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int accounts;
+
+    @Param({"round-robin", "random", "least-used", "smart-score", "least-inflight", "p2c", "affinity"})
+    public String strategy;
+
+    // 0 不限并发；1 时每次选择都会让账号占满再归还，覆盖占满 / 恢复路径
+    @Param({"0", "1"})
+    public int maxConcurrent;
+
+    private AccountPool pool;
+    private final String[] affinityKeys = new String[1024];
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        pool = AccountPoolTest.newPool(strategy, maxConcurrent);
+        AccountPoolTest.addAccounts(pool, accounts);
+        for (int i = 0; i < affinityKeys.length; i++) {
+            affinityKeys[i] = "conversation-" + i;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Account select() {
+        Account account = pool.getNext(Set.of());
+        pool.release(account);
+        return account;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Account selectContended() {
+        Account account = pool.getNext(Set.of());
+        pool.release(account);
+        return account;
+    }
+
+    @Benchmark
+    public Account selectWithAffinityKey() {
+        String key = affinityKeys[ThreadLocalRandom.current().nextInt(affinityKeys.length)];
+        Account account = pool.acquire(key).block();
+        pool.recordAffinity(key, account);
+        pool.release(account);
+        return account;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AccountPoolBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,286 @@
+package com.kiro.gateway.pool;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.dao.AccountDAO;
+import com.kiro.gateway.exception.NoAvailableAccountException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AccountPoolTest {
+
+    private AccountPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void readySetAndStrategyStayConsistentUnderConcurrentUpdates() throws Exception {
+        for (String strategy : List.of("round-robin", "least-used", "smart-score", "least-inflight", "affinity")) {
+            pool = newPool(strategy, 0);
+            List<String> ids = addAccounts(pool, 4);
+
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            CountDownLatch start = new CountDownLatch(1);
+            for (int t = 0; t < 8; t++) {
+                executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        String id = ids.get(random.nextInt(ids.size()));
+                        switch (random.nextInt(3)) {
+                            case 0 -> pool.recordSuccess(id, 1, 1, 0);
+                            case 1 -> pool.recordFailover(id, random.nextBoolean());
+                            default -> {
+                                try {
+                                    pool.release(pool.getNext(Set.of()));
+                                } catch (NoAvailableAccountException ignored) {
+                                    // 全部冷却中
+                                }
+                            }
+                        }
+                    }
+                    return null;
+                });
+            }
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS));
+
+            Set<String> available = ids.stream()
+                    .filter(id -> pool.getById(id).isAvailable())
+                    .collect(Collectors.toSet());
+            assertEquals(available, readyIds(pool), strategy + ": 就绪集合与账号状态不一致");
+            assertEquals(available, drain(pool), strategy + ": 策略可选账号与就绪集合不一致");
+            pool.shutdown();
+        }
+        pool = null;
+    }
+
+    @Test
+    void removedAccountIsNotReindexed() {
+        pool = newPool("least-used", 0);
+        String id = addAccounts(pool, 1).get(0);
+        Account account = pool.getById(id);
+        pool.removeAccount(id);
+        // 请求结束时仍会对已删除账号记账
+        pool.recordSuccess(id, 1, 1, 0);
+        pool.release(account);
+        assertEquals(Set.of(), readyIds(pool));
+    }
+
+    @Test
+    void updateKeepsInFlightSlotsOnSameAccount() {
+        pool = newPool("round-robin", 1);
+        String id = addAccounts(pool, 1).get(0);
+        Account held = pool.getNext(Set.of());
+        pool.updateAccount(id, "renamed", "{\"refreshToken\":\"new\"}", "social");
+
+        // 名额仍被占用，并发上限不被突破
+        assertThrows(NoAvailableAccountException.class, () -> pool.getNext(Set.of()));
+        assertEquals("renamed", pool.getById(id).name());
+
+        pool.release(held);
+        assertEquals(0, pool.getById(id).inFlight());
+        assertEquals(0, pool.totalInFlight());
+        pool.release(pool.getNext(Set.of()));
+    }
+
+    @Test
+    void fallbackScanSpreadsAcrossReadyAccounts() {
+        pool = newPool("least-used", 0);
+        addAccounts(pool, 40);
+        // least-used 的选择稳定，排除它后每次都走兜底扫描
+        Account preferred = pool.getNext(Set.of());
+        pool.release(preferred);
+
+        Set<String> picked = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            Account account = pool.getNext(Set.of(preferred.id()));
+            picked.add(account.id());
+            pool.release(account);
+        }
+        assertTrue(picked.size() > 1, "兜底扫描总是从同一位置开始: " + picked);
+    }
+
+    @Test
+    void repeatedCooldownsKeepOneQueueEntryPerAccount() {
+        pool = newPool("round-robin", 0);
+        List<String> ids = addAccounts(pool, 2);
+        for (int i = 0; i < 100; i++) {
+            pool.recordFailover(ids.get(0), false);
+            pool.recordFailover(ids.get(1), i % 2 == 0);
+        }
+        assertEquals(2, cooldownEntries(pool));
+        assertEquals(Set.of(), readyIds(pool));
+    }
+
+    @Test
+    void saturationDoesNotRebuildReadySet() {
+        pool = newPool("round-robin", 1);
+        addAccounts(pool, 3);
+        Account[] before = readySnapshot(pool);
+
+        Account first = pool.getNext(Set.of());
+        Account second = pool.getNext(Set.of());
+        // 占满的账号仍在就绪集合中，占用和归还都不复制数组
+        assertSame(before, readySnapshot(pool));
+        pool.release(first);
+        pool.release(second);
+        assertSame(before, readySnapshot(pool));
+        assertEquals(3, readyIds(pool).size());
+    }
+
+    @Test
+    void findsFreeAccountWhenMostAreSaturated() {
+        for (String strategy : List.of("round-robin", "random", "least-used", "smart-score", "least-inflight", "p2c")) {
+            pool = newPool(strategy, 1);
+            List<String> ids = addAccounts(pool, 100);
+            List<Account> held = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                held.add(pool.getNext(Set.of()));
+            }
+            assertThrows(NoAvailableAccountException.class, () -> pool.getNext(Set.of()), strategy);
+
+            // 只归还一个：策略和有界扫描多半落在占满的账号上，空闲提示队列兜底
+            Account freed = held.remove(ThreadLocalRandom.current().nextInt(held.size()));
+            pool.release(freed);
+            Account next = pool.getNext(Set.of());
+            assertEquals(freed.id(), next.id(), strategy);
+            held.add(next);
+
+            held.forEach(pool::release);
+            assertEquals(0, pool.totalInFlight(), strategy);
+            pool.shutdown();
+        }
+        pool = null;
+    }
+
+    @Test
+    void runtimeSwitchToAffinityPlacesCooledAccountsOnRing() {
+        pool = newPool("round-robin", 0);
+        List<String> ids = addAccounts(pool, 4);
+        pool.recordFailover(ids.get(0), false);
+
+        pool.setStrategy("affinity");
+        // 冷却中的账号也占环上位置，冷却结束后会话不会再次迁移
+        assertEquals(Set.copyOf(ids), affinityMembers(pool));
+    }
+
+    @Test
+    void hash64SpreadsSimilarKeys() {
+        Set<Long> hashes = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            hashes.add(AccountPool.hash64("account#" + i));
+        }
+        assertEquals(10_000, hashes.size());
+        // 相邻键的高位也要变化，否则虚拟节点在环上扎堆
+        long buckets = hashes.stream().map(h -> h >>> 60).distinct().count();
+        assertEquals(16, buckets);
+    }
+
+    static AccountPool newPool(String strategy, int maxConcurrent) {
+        AppProperties properties = new AppProperties();
+        properties.setPoolStrategy(strategy);
+        properties.getAccountLimit().setMaxConcurrent(maxConcurrent);
+        properties.getAccountLimit().setQueueTimeoutMs(200);
+        AccountDAO dao = mock(AccountDAO.class);
+        when(dao.findAll()).thenReturn(List.of());
+        AccountPool pool = new AccountPool(properties, dao);
+        pool.init();
+        return pool;
+    }
+
+    static List<String> addAccounts(AccountPool pool, int count) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(pool.addAccount("account-" + i, "{}", "social"));
+        }
+        return ids;
+    }
+
+    /**
+     * 逐个取出所有可选账号（占用后排除），再全部归还
+     */
+    static Set<String> drain(AccountPool pool) {
+        Set<String> taken = new HashSet<>();
+        List<Account> held = new ArrayList<>();
+        while (true) {
+            try {
+                Account account = pool.getNext(taken);
+                taken.add(account.id());
+                held.add(account);
+            } catch (NoAvailableAccountException e) {
+                break;
+            }
+        }
+        held.forEach(pool::release);
+        return taken;
+    }
+
+    static int cooldownEntries(AccountPool pool) {
+        try {
+            Field field = AccountPool.class.getDeclaredField("cooldowns");
+            field.setAccessible(true);
+            return ((Collection<?>) field.get(pool)).size();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static Set<String> readyIds(AccountPool pool) {
+        Set<String> ids = new HashSet<>();
+        for (Account account : readySnapshot(pool)) {
+            ids.add(account.id());
+        }
+        return ids;
+    }
+
+    static Account[] readySnapshot(AccountPool pool) {
+        try {
+            Field field = AccountPool.class.getDeclaredField("readySet");
+            field.setAccessible(true);
+            return ((ReadySet) field.get(pool)).snapshot();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static Set<String> affinityMembers(AccountPool pool) {
+        try {
+            Field strategyField = AccountPool.class.getDeclaredField("strategy");
+            strategyField.setAccessible(true);
+            Object strategy = strategyField.get(pool);
+            Field membersField = strategy.getClass().getDeclaredField("members");
+            membersField.setAccessible(true);
+            return Set.copyOf(((Map<String, Account>) membersField.get(strategy)).keySet());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
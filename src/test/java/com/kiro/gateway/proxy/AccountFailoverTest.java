@@ -0,0 +1,214 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.auth.AuthService;
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.dao.AccountDAO;
+import com.kiro.gateway.exception.KiroApiException;
+import com.kiro.gateway.pool.Account;
+import com.kiro.gateway.pool.AccountLease;
+import com.kiro.gateway.pool.AccountPool;
+import com.kiro.gateway.trace.TraceContext;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AccountFailoverTest {
+
+    private AccountPool pool;
+    private KiroApiClient client;
+    private AccountFailover failover;
+
+    @BeforeEach
+    void setUp() {
+        AppProperties properties = new AppProperties();
+        AccountDAO dao = mock(AccountDAO.class);
+        when(dao.findAll()).thenReturn(List.of());
+        pool = new AccountPool(properties, dao);
+        pool.init();
+
+        AuthService authService = mock(AuthService.class);
+        when(authService.getAccessToken(anyString(), anyString(), anyString()))
+                .thenAnswer(inv -> "token-" + inv.getArgument(0));
+        client = mock(KiroApiClient.class);
+        failover = new AccountFailover(pool, authService, client, properties);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void switchesAccountOnRateLimit() {
+        String first = pool.addAccount("first", "{}", "social");
+        String second = pool.addAccount("second", "{}", "social");
+        AccountLease lease = leaseOf(first);
+        doThrow(new KiroApiException(429, "throttled")).when(client)
+                .callStream(anyString(), eq("token-" + first), any(), any(), any(), anyBoolean());
+
+        failover.callStream(lease, "token-" + first, "{}", TraceContext.create(), mock(StreamCallback.class),
+                new StreamCancellation());
+
+        verify(client).callStream(anyString(), eq("token-" + second), any(), any(), any(), anyBoolean());
+        assertEquals(second, lease.account().id());
+        // 失败账号已冷却，名额已交接
+        assertFalse(pool.getById(first).isAvailable());
+        assertEquals(0, pool.getById(first).inFlight());
+        assertEquals(1, pool.getById(second).inFlight());
+        lease.release();
+        assertEquals(0, pool.totalInFlight());
+    }
+
+    @Test
+    void switchesAccountOnServerErrorAsync() {
+        String first = pool.addAccount("first", "{}", "social");
+        String second = pool.addAccount("second", "{}", "social");
+        AccountLease lease = leaseOf(first);
+        when(client.callStreamAsync(anyString(), eq("token-" + first), any(), any(), anyBoolean()))
+                .thenReturn(Mono.error(new KiroApiException(503, "unavailable")));
+        when(client.callStreamAsync(anyString(), eq("token-" + second), any(), any(), anyBoolean()))
+                .thenReturn(Mono.empty());
+
+        StepVerifier.create(failover.callStreamAsync(lease, "token-" + first, "{}", TraceContext.create(),
+                        mock(StreamCallback.class)))
+                .verifyComplete();
+
+        assertEquals(second, lease.account().id());
+        assertFalse(pool.getById(first).isAvailable());
+        lease.release();
+        assertEquals(0, pool.totalInFlight());
+    }
+
+    @Test
+    void retriesOnCurrentAccountWhenNoOtherAccountIsLeft() {
+        String only = pool.addAccount("only", "{}", "social");
+        AccountLease lease = leaseOf(only);
+        // 可切换时快速失败；没有其他账号后以普通重试模式（canSwitch=false）重放
+        doThrow(new KiroApiException(503, "unavailable")).when(client)
+                .callStream(anyString(), anyString(), any(), any(), any(), eq(true));
+        doNothing().when(client)
+                .callStream(anyString(), anyString(), any(), any(), any(), eq(false));
+
+        failover.callStream(lease, "token-" + only, "{}", TraceContext.create(), mock(StreamCallback.class),
+                new StreamCancellation());
+
+        verify(client, times(1)).callStream(anyString(), eq("token-" + only), any(), any(), any(), eq(true));
+        verify(client, times(1)).callStream(anyString(), eq("token-" + only), any(), any(), any(), eq(false));
+        assertSame(pool.getById(only), lease.account());
+        lease.release();
+        assertEquals(0, pool.totalInFlight());
+    }
+
+    @Test
+    void rethrowsWhenFallbackRetryFails() {
+        String only = pool.addAccount("only", "{}", "social");
+        AccountLease lease = leaseOf(only);
+        doThrow(new KiroApiException(503, "unavailable")).when(client)
+                .callStream(anyString(), anyString(), any(), any(), any(), anyBoolean());
+
+        KiroApiException e = assertThrows(KiroApiException.class, () -> failover.callStream(lease, "token-" + only,
+                "{}", TraceContext.create(), mock(StreamCallback.class), new StreamCancellation()));
+
+        assertEquals(503, e.getStatusCode());
+        lease.release();
+        assertEquals(0, pool.totalInFlight());
+    }
+
+    @Test
+    void authErrorIsNotSwitched() {
+        String first = pool.addAccount("first", "{}", "social");
+        String second = pool.addAccount("second", "{}", "social");
+        AccountLease lease = leaseOf(first);
+        doThrow(new KiroApiException(403, "forbidden")).when(client)
+                .callStream(anyString(), anyString(), any(), any(), any(), anyBoolean());
+
+        assertThrows(KiroApiException.class, () -> failover.callStream(lease, "token-" + first, "{}",
+                TraceContext.create(), mock(StreamCallback.class), new StreamCancellation()));
+
+        verify(client, never()).callStream(anyString(), eq("token-" + second), any(), any(), any(), anyBoolean());
+        assertEquals(first, lease.account().id());
+        lease.release();
+    }
+
+    @Test
+    void transportErrorRetriesOnCurrentAccountWithoutCooldown() {
+        String first = pool.addAccount("first", "{}", "social");
+        String second = pool.addAccount("second", "{}", "social");
+        AccountLease lease = leaseOf(first);
+        doThrow(KiroApiException.transport(new IOException("connection refused"))).when(client)
+                .callStream(anyString(), anyString(), any(), any(), any(), eq(true));
+        doNothing().when(client)
+                .callStream(anyString(), anyString(), any(), any(), any(), eq(false));
+
+        failover.callStream(lease, "token-" + first, "{}", TraceContext.create(), mock(StreamCallback.class),
+                new StreamCancellation());
+
+        // 网络故障不切换账号，以普通重试模式在同一账号上重放
+        verify(client).callStream(anyString(), eq("token-" + first), any(), any(), any(), eq(false));
+        verify(client, never()).callStream(anyString(), eq("token-" + second), any(), any(), any(), anyBoolean());
+        assertEquals(first, lease.account().id());
+        assertTrue(pool.getById(first).isAvailable());
+        lease.release();
+        assertEquals(0, pool.totalInFlight());
+    }
+
+    @Test
+    void transportErrorDoesNotCoolDownAccountAsync() {
+        String first = pool.addAccount("first", "{}", "social");
+        pool.addAccount("second", "{}", "social");
+        AccountLease lease = leaseOf(first);
+        when(client.callStreamAsync(anyString(), anyString(), any(), any(), anyBoolean()))
+                .thenReturn(Mono.error(KiroApiException.transport(new IOException("connection reset"))));
+
+        StepVerifier.create(failover.callStreamAsync(lease, "token-" + first, "{}", TraceContext.create(),
+                        mock(StreamCallback.class)))
+                .expectErrorSatisfies(e -> assertTrue(((KiroApiException) e).isTransportError()))
+                .verify();
+
+        verify(client).callStreamAsync(anyString(), eq("token-" + first), any(), any(), eq(true));
+        verify(client).callStreamAsync(anyString(), eq("token-" + first), any(), any(), eq(false));
+        assertEquals(first, lease.account().id());
+        assertTrue(pool.getById(first).isAvailable());
+        lease.release();
+        assertEquals(0, pool.totalInFlight());
+    }
+
+    /**
+     * 占用指定账号的名额（排除其他账号）并交给 lease
+     */
+    private AccountLease leaseOf(String id) {
+        Set<String> others = new HashSet<>();
+        for (Account account : pool.listAccounts()) {
+            if (!account.id().equals(id)) {
+                others.add(account.id());
+            }
+        }
+        AccountLease lease = new AccountLease(pool);
+        lease.hold(pool.getNext(others));
+        return lease;
+    }
+}
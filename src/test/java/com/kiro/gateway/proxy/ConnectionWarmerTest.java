@@ -0,0 +1,79 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.controller.HealthController;
+import com.kiro.gateway.pool.AccountPool;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class ConnectionWarmerTest {
+
+    @Test
+    void readyOnlyAfterBootWarmupCompletes() {
+        AppProperties properties = newProperties(true);
+        HttpClient httpClient = mock(HttpClient.class);
+        CompletableFuture<HttpResponse<Void>> response = new CompletableFuture<>();
+        doReturn(response).when(httpClient).sendAsync(any(), any());
+        ConnectionWarmer warmer = new ConnectionWarmer(httpClient, properties);
+        HealthController health = new HealthController(mock(AccountPool.class), warmer);
+
+        assertFalse(warmer.isReady());
+        warmer.warmOnBoot();
+        assertFalse(warmer.isReady());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, health.ready().block().getStatusCode());
+
+        response.complete(null);
+        assertTrue(warmer.isReady());
+        assertEquals(HttpStatus.OK, health.ready().block().getStatusCode());
+        // 每个端点按 connectionsPerEndpoint 并发预热
+        verify(httpClient, times(4)).sendAsync(any(), any());
+    }
+
+    @Test
+    void failedWarmupStillBecomesReady() {
+        AppProperties properties = newProperties(true);
+        HttpClient httpClient = mock(HttpClient.class);
+        doReturn(CompletableFuture.failedFuture(new IOException("unreachable")))
+                .when(httpClient).sendAsync(any(), any());
+        ConnectionWarmer warmer = new ConnectionWarmer(httpClient, properties);
+
+        warmer.warmOnBoot();
+        assertTrue(warmer.isReady());
+    }
+
+    @Test
+    void disabledWarmupIsReadyWithoutRequests() {
+        HttpClient httpClient = mock(HttpClient.class);
+        ConnectionWarmer warmer = new ConnectionWarmer(httpClient, newProperties(false));
+
+        assertTrue(warmer.isReady());
+        warmer.warmOnBoot();
+        warmer.warmIdle();
+        verify(httpClient, never()).sendAsync(any(), any());
+    }
+
+    private static AppProperties newProperties(boolean enabled) {
+        AppProperties properties = new AppProperties();
+        properties.setEndpoints(List.of("https://a.example.com/generateAssistantResponse",
+                "https://b.example.com/generateAssistantResponse"));
+        properties.getWarmup().setEnabled(enabled);
+        properties.getWarmup().setConnectionsPerEndpoint(2);
+        return properties;
+    }
+}
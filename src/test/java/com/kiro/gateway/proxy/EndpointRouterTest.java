@@ -0,0 +1,98 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class EndpointRouterTest {
+
+    private static final String A = "https://a.example.com/generateAssistantResponse";
+    private static final String B = "https://b.example.com/generateAssistantResponse";
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        AppProperties properties = newProperties();
+        EndpointRouter router = new EndpointRouter(properties);
+
+        router.recordFailure(A, 503);
+        assertEquals("CLOSED", circuit(router, A));
+        router.recordFailure(A, 503);
+        assertEquals("OPEN", circuit(router, A));
+        // 熔断中的端点排到最后兜底
+        assertEquals(List.of(B, A), router.order());
+    }
+
+    @Test
+    void successResetsFailureCount() {
+        EndpointRouter router = new EndpointRouter(newProperties());
+
+        router.recordFailure(A, 500);
+        router.recordSuccess(A, 100);
+        router.recordFailure(A, 500);
+        assertEquals("CLOSED", circuit(router, A));
+    }
+
+    @Test
+    void halfOpenProbeFailureReopens() {
+        AppProperties properties = newProperties();
+        EndpointRouter router = new EndpointRouter(properties);
+        router.recordFailure(A, 429);
+        router.recordFailure(A, 429);
+
+        // 熔断到期：放行一个探测请求，排在最前
+        properties.getEndpointHealth().setOpenSeconds(0);
+        assertEquals(List.of(A, B), router.order());
+        assertEquals("HALF_OPEN", circuit(router, A));
+
+        router.recordFailure(A, 429);
+        assertEquals("OPEN", circuit(router, A));
+    }
+
+    @Test
+    void halfOpenProbeSuccessCloses() {
+        AppProperties properties = newProperties();
+        EndpointRouter router = new EndpointRouter(properties);
+        router.recordSuccess(B, 50);
+        router.recordFailure(A, 500);
+        router.recordFailure(A, 500);
+
+        properties.getEndpointHealth().setOpenSeconds(0);
+        router.order();
+        assertEquals("HALF_OPEN", circuit(router, A));
+
+        router.recordSuccess(A, 200);
+        assertEquals("CLOSED", circuit(router, A));
+        // 恢复后按 TTFB 排序
+        assertEquals(List.of(B, A), router.order());
+    }
+
+    @Test
+    void probeStaysTrippedUntilOpenPeriodElapses() {
+        AppProperties properties = newProperties();
+        EndpointRouter router = new EndpointRouter(properties);
+        router.recordFailure(A, 500);
+        router.recordFailure(A, 500);
+
+        router.order();
+        assertEquals("OPEN", circuit(router, A));
+    }
+
+    private static AppProperties newProperties() {
+        AppProperties properties = new AppProperties();
+        properties.setEndpoints(List.of(A, B));
+        properties.getEndpointHealth().setFailureThreshold(2);
+        properties.getEndpointHealth().setOpenSeconds(30);
+        return properties;
+    }
+
+    private static String circuit(EndpointRouter router, String endpoint) {
+        return router.snapshot().stream()
+                .filter(s -> s.endpoint().equals(endpoint))
+                .findFirst()
+                .orElseThrow()
+                .circuit();
+    }
+}
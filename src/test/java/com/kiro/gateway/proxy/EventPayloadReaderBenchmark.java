@@ -0,0 +1,148 @@
+package com.kiro.gateway.proxy;
+
+import com.alibaba.fastjson2.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 事件 payload 字段提取：EventPayloadReader 与改造前的 JSONObject.parseObject 路径对比
+ * <p>
+ * 语料按一次典型流式响应的事件构成：大量正文 / thinking delta（短文本、中文、转义字符），
+ * 少量工具调用，结尾的 metadata（三种嵌套格式）、metering、contextUsage；
+ * payload 放在同一个大缓冲区中按偏移读取，与解析器原地解码一致。
+ * 基线按旧代码处理：拷贝出 payload、转 String、parseObject 后取字段。
+ * <p>
+ * 不随测试运行，从 IDE 或 {@code java -cp <test-classpath> com.kiro.gateway.proxy.EventPayloadReaderBenchmark} 启动，
+ * 加 {@code -prof gc} 可看每个事件的分配量
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventPayloadReaderBenchmark {
+
+    private enum Kind { CONTENT, TOOL_USE, METADATA, METERING, CONTEXT_USAGE }
+
+    private Kind[] kinds;
+    private int[] offsets;
+    private int[] lengths;
+    private byte[] buffer;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        List<Kind> kindList = new ArrayList<>();
+        List<String> payloads = new ArrayList<>();
+        String[] deltas = {
+                "Hello", " world", "，这是一段中文回复。", "\\n\\n```java\\n", "    return \\\"ok\\\";\\n",
+                "The quick brown fox jumps over the lazy dog. ", "😀", " — done.",
+        };
+        for (int i = 0; i < 200; i++) {
+            kindList.add(Kind.CONTENT);
+            payloads.add("{\"content\":\"" + deltas[i % deltas.length] + "\",\"modelId\":\"claude-sonnet-4\"}");
+        }
+        for (int i = 0; i < 8; i++) {
+            kindList.add(Kind.TOOL_USE);
+            payloads.add("{\"toolUseId\":\"tooluse_" + i + "\",\"name\":\"read_file\","
+                    + "\"input\":\"{\\\"path\\\":\\\"src/main/Foo" + i + ".java\\\"}\",\"stop\":false}");
+        }
+        kindList.add(Kind.METADATA);
+        payloads.add("{\"conversationId\":\"c1\",\"usage\":{\"inputTokens\":1234,\"outputTokens\":567,"
+                + "\"cacheReadInputTokens\":0}}");
+        kindList.add(Kind.METADATA);
+        payloads.add("{\"tokenUsage\":{\"uncachedInputTokens\":1200,\"outputTokens\":567,\"totalTokens\":1767}}");
+        kindList.add(Kind.METADATA);
+        payloads.add("{\"inputTokens\":1234,\"outputTokens\":567}");
+        kindList.add(Kind.METERING);
+        payloads.add("{\"unit\":\"credit\",\"unitPlural\":\"credits\",\"usage\":0.14128437}");
+        kindList.add(Kind.CONTEXT_USAGE);
+        payloads.add("{\"contextUsagePercentage\":12.5}");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        kinds = kindList.toArray(new Kind[0]);
+        offsets = new int[payloads.size()];
+        lengths = new int[payloads.size()];
+        for (int i = 0; i < payloads.size(); i++) {
+            byte[] bytes = payloads.get(i).getBytes(StandardCharsets.UTF_8);
+            // 模拟帧头，payload 不从缓冲区起点开始
+            out.write(new byte[32], 0, 32);
+            offsets[i] = out.size();
+            lengths[i] = bytes.length;
+            out.write(bytes, 0, bytes.length);
+        }
+        buffer = out.toByteArray();
+    }
+
+    @Benchmark
+    public void payloadReader(Blackhole bh) {
+        for (int i = 0; i < kinds.length; i++) {
+            int offset = offsets[i];
+            int length = lengths[i];
+            switch (kinds[i]) {
+                case CONTENT -> bh.consume(EventPayloadReader.readContent(buffer, offset, length));
+                case TOOL_USE -> bh.consume(EventPayloadReader.readToolUse(buffer, offset, length));
+                case METADATA -> bh.consume(EventPayloadReader.readMetadata(buffer, offset, length));
+                case METERING -> bh.consume(EventPayloadReader.readCredits(buffer, offset, length));
+                case CONTEXT_USAGE -> bh.consume(EventPayloadReader.readContextUsage(buffer, offset, length));
+            }
+        }
+    }
+
+    @Benchmark
+    public void jsonObject(Blackhole bh) {
+        for (int i = 0; i < kinds.length; i++) {
+            byte[] payload = Arrays.copyOfRange(buffer, offsets[i], offsets[i] + lengths[i]);
+            JSONObject json = JSONObject.parseObject(new String(payload, StandardCharsets.UTF_8));
+            switch (kinds[i]) {
+                case CONTENT -> bh.consume(json.getString("content"));
+                case TOOL_USE -> {
+                    bh.consume(json.getString("toolUseId"));
+                    bh.consume(json.getString("name"));
+                    bh.consume(json.getString("input"));
+                }
+                case METADATA -> {
+                    JSONObject usage = json.getJSONObject("usage");
+                    if (usage == null) {
+                        usage = json.getJSONObject("tokenUsage");
+                    }
+                    if (usage == null) {
+                        usage = json;
+                    }
+                    bh.consume(usage.getIntValue("inputTokens",
+                            usage.getIntValue("input_tokens", usage.getIntValue("uncachedInputTokens", 0))));
+                    bh.consume(usage.getIntValue("outputTokens", usage.getIntValue("output_tokens", 0)));
+                }
+                case METERING -> {
+                    double credits = json.getDoubleValue("usage");
+                    bh.consume(credits > 0 ? credits : json.getDoubleValue("credits"));
+                }
+                case CONTEXT_USAGE -> bh.consume(json.getDoubleValue("contextUsagePercentage"));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(EventPayloadReaderBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,109 @@
+package com.kiro.gateway.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class EventPayloadReaderTest {
+
+    @Test
+    void usageTakesPrecedenceOverTokenUsageAndTopLevel() {
+        assertUsage(1, 2, "{\"inputTokens\":9,\"outputTokens\":9,"
+                + "\"tokenUsage\":{\"inputTokens\":5,\"outputTokens\":6},"
+                + "\"usage\":{\"inputTokens\":1,\"outputTokens\":2}}");
+        // usage 出现在后面也优先
+        assertUsage(1, 2, "{\"usage\":{\"inputTokens\":1,\"outputTokens\":2},"
+                + "\"tokenUsage\":{\"inputTokens\":5,\"outputTokens\":6},\"inputTokens\":9}");
+    }
+
+    @Test
+    void tokenUsageTakesPrecedenceOverTopLevel() {
+        assertUsage(5, 6, "{\"inputTokens\":9,\"outputTokens\":9,"
+                + "\"tokenUsage\":{\"inputTokens\":5,\"outputTokens\":6}}");
+    }
+
+    @Test
+    void topLevelFieldsWhenNotNested() {
+        assertUsage(3, 4, "{\"conversationId\":\"c1\",\"inputTokens\":3,\"outputTokens\":4}");
+    }
+
+    @Test
+    void selectedObjectDoesNotMergeWithOthers() {
+        // usage 中缺的字段不从顶层补
+        assertUsage(1, 0, "{\"outputTokens\":9,\"usage\":{\"inputTokens\":1}}");
+    }
+
+    @Test
+    void snakeCaseFallbacks() {
+        assertUsage(7, 8, "{\"usage\":{\"input_tokens\":7,\"output_tokens\":8}}");
+        assertUsage(7, 8, "{\"input_tokens\":7,\"output_tokens\":8}");
+        // camelCase 优先于 snake_case，再优先于 uncachedInputTokens
+        assertUsage(1, 2, "{\"usage\":{\"input_tokens\":7,\"inputTokens\":1,\"output_tokens\":8,\"outputTokens\":2}}");
+        assertUsage(7, 0, "{\"usage\":{\"uncachedInputTokens\":3,\"input_tokens\":7}}");
+        assertUsage(3, 0, "{\"usage\":{\"uncachedInputTokens\":3}}");
+    }
+
+    @Test
+    void nullValuesFallThrough() {
+        // null 字段视为未出现，继续按后备字段取值
+        assertUsage(7, 8, "{\"usage\":{\"inputTokens\":null,\"input_tokens\":7,\"outputTokens\":null,\"output_tokens\":8}}");
+        assertUsage(0, 0, "{\"usage\":{\"inputTokens\":null,\"outputTokens\":null}}");
+        // usage 为 null 时按 tokenUsage、顶层
+        assertUsage(5, 6, "{\"usage\":null,\"tokenUsage\":{\"inputTokens\":5,\"outputTokens\":6}}");
+        assertUsage(3, 4, "{\"usage\":null,\"tokenUsage\":null,\"inputTokens\":3,\"outputTokens\":4}");
+    }
+
+    @Test
+    void skipsUnrelatedNestedValues() {
+        assertUsage(3, 4, "{\"meta\":{\"inputTokens\":100,\"list\":[1,{\"outputTokens\":200}]},"
+                + "\"inputTokens\":3,\"outputTokens\":4}");
+    }
+
+    @Test
+    void emptyOrNonObjectPayload() {
+        assertUsage(0, 0, "{}");
+        assertNull(readMetadata("[]"));
+    }
+
+    @Test
+    void readsContentAndToolUse() {
+        byte[] data = bytes("{\"modelId\":\"m\",\"content\":\"h\\u00e9llo \\\"x\\\"\"}");
+        assertEquals("héllo \"x\"", EventPayloadReader.readContent(data, 0, data.length));
+
+        data = bytes("{\"input\":\"{\\\"a\\\":1}\",\"name\":\"search\",\"toolUseId\":\"t1\",\"stop\":false}");
+        assertEquals(new EventPayloadReader.ToolUse("t1", "search", "{\"a\":1}"),
+                EventPayloadReader.readToolUse(data, 0, data.length));
+    }
+
+    @Test
+    void readsFromSlice() {
+        byte[] payload = bytes("{\"usage\":{\"inputTokens\":1,\"outputTokens\":2}}");
+        byte[] data = new byte[payload.length + 8];
+        System.arraycopy(payload, 0, data, 4, payload.length);
+        assertEquals(new EventPayloadReader.Usage(1, 2), EventPayloadReader.readMetadata(data, 4, payload.length));
+    }
+
+    @Test
+    void creditsPreferUsage() {
+        byte[] data = bytes("{\"unit\":\"credit\",\"unitPlural\":\"credits\",\"usage\":0.25,\"credits\":9}");
+        assertEquals(0.25, EventPayloadReader.readCredits(data, 0, data.length));
+        data = bytes("{\"usage\":null,\"credits\":0.5}");
+        assertEquals(0.5, EventPayloadReader.readCredits(data, 0, data.length));
+    }
+
+    private static void assertUsage(int input, int output, String json) {
+        assertEquals(new EventPayloadReader.Usage(input, output), readMetadata(json), json);
+    }
+
+    private static EventPayloadReader.Usage readMetadata(String json) {
+        byte[] data = bytes(json);
+        return EventPayloadReader.readMetadata(data, 0, data.length);
+    }
+
+    private static byte[] bytes(String json) {
+        return json.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,312 @@
+package com.kiro.gateway.proxy;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventStreamParserTest {
+
+    @Test
+    void decodesFramesFedByteByByte() {
+        RecordingCallback callback = new RecordingCallback();
+        byte[] stream = concat(textFrame("Hello"), textFrame(", world"));
+        try (EventStreamParser parser = new EventStreamParser(callback, true)) {
+            for (byte b : stream) {
+                parser.feed(new byte[]{b});
+            }
+        }
+        assertEquals(List.of("Hello", ", world"), callback.texts);
+    }
+
+    @Test
+    void skipsGarbageBetweenFrames() {
+        RecordingCallback callback = new RecordingCallback();
+        byte[] garbage = "not an event stream frame".getBytes(StandardCharsets.UTF_8);
+        try (EventStreamParser parser = new EventStreamParser(callback, true)) {
+            parser.feed(concat(textFrame("a"), garbage, textFrame("b")));
+        }
+        assertEquals(List.of("a", "b"), callback.texts);
+    }
+
+    @Test
+    void headerOverrunResyncsInsteadOfThrowing() {
+        RecordingCallback callback = new RecordingCallback();
+        // string header 声明的长度超出 headers 区域
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        byte[] name = ":event-type".getBytes(StandardCharsets.UTF_8);
+        headers.write(name.length);
+        headers.writeBytes(name);
+        headers.write(7);
+        headers.write(0x7F);
+        headers.write(0xFF);
+        byte[] corrupt = frame(headers.toByteArray(), "{\"content\":\"x\"}".getBytes(StandardCharsets.UTF_8));
+        try (EventStreamParser parser = new EventStreamParser(callback, false)) {
+            parser.feed(concat(corrupt, textFrame("ok")));
+        }
+        assertEquals(List.of("ok"), callback.texts);
+    }
+
+    @Test
+    void truncatedHeaderBlockResyncs() {
+        RecordingCallback callback = new RecordingCallback();
+        // header 名长度越过 headers 区域，读不到类型字节
+        byte[] corrupt = frame(new byte[]{(byte) 40, ':', 'e'}, "{}".getBytes(StandardCharsets.UTF_8));
+        try (EventStreamParser parser = new EventStreamParser(callback, false)) {
+            parser.feed(concat(corrupt, textFrame("ok")));
+        }
+        assertEquals(List.of("ok"), callback.texts);
+    }
+
+    @Test
+    void decodesGzipPayload() throws IOException {
+        RecordingCallback callback = new RecordingCallback();
+        byte[] payload = gzip("{\"content\":\"compressed\"}".getBytes(StandardCharsets.UTF_8));
+        try (EventStreamParser parser = new EventStreamParser(callback, true)) {
+            parser.feed(eventFrame("assistantResponseEvent", payload));
+            parser.feed(eventFrame("assistantResponseEvent", payload));
+        }
+        assertEquals(List.of("compressed", "compressed"), callback.texts);
+    }
+
+    @Test
+    void rejectsGzipBombAndShrinksBuffer() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        // 约 20MB 的 0 压缩后只有几十 KB，解压超过单条消息上限
+        byte[] bomb = gzip(new byte[20 * 1024 * 1024]);
+        try (EventStreamParser parser = new EventStreamParser(callback, true)) {
+            parser.feed(eventFrame("assistantResponseEvent", bomb));
+            assertTrue(inflateCapacity(parser) <= 16 * 1024, "解压缓冲区应缩回初始大小");
+            parser.feed(textFrame("after"));
+        }
+        assertEquals(List.of("after"), callback.texts);
+    }
+
+    @Test
+    void shrinksInflateBufferAfterOversizedMessage() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        String big = "x".repeat(2 * 1024 * 1024);
+        byte[] payload = gzip(("{\"content\":\"" + big + "\"}").getBytes(StandardCharsets.UTF_8));
+        try (EventStreamParser parser = new EventStreamParser(callback, true)) {
+            parser.feed(eventFrame("assistantResponseEvent", payload));
+            assertTrue(inflateCapacity(parser) <= 16 * 1024, "解压缓冲区应缩回初始大小");
+        }
+        assertEquals(List.of(big), callback.texts);
+    }
+
+    @Test
+    void decodesFramesInsideNestedEnvelope() {
+        RecordingCallback callback = new RecordingCallback();
+        try (EventStreamParser parser = new EventStreamParser(callback, true)) {
+            parser.feed(concat(envelope(textFrame("a"), textFrame("b")), textFrame("c")));
+        }
+        assertEquals(List.of("a", "b", "c"), callback.texts);
+    }
+
+    @Test
+    void nestedEnvelopeSplitAcrossFeeds() {
+        RecordingCallback callback = new RecordingCallback();
+        byte[] stream = envelope(envelope(textFrame("a")), textFrame("b"));
+        try (EventStreamParser parser = new EventStreamParser(callback, true)) {
+            parser.feed(Arrays.copyOfRange(stream, 0, 7));
+            parser.feed(Arrays.copyOfRange(stream, 7, stream.length - 3));
+            parser.feed(Arrays.copyOfRange(stream, stream.length - 3, stream.length));
+        }
+        assertEquals(List.of("a", "b"), callback.texts);
+    }
+
+    @Test
+    void dropsEnvelopesBeyondDepthCap() {
+        RecordingCallback callback = new RecordingCallback();
+        try (EventStreamParser parser = new EventStreamParser(callback, true)) {
+            // 4 层嵌套仍解析，第 5 层整体丢弃，之后的帧不受影响
+            parser.feed(wrap(textFrame("depth4"), 4));
+            parser.feed(wrap(textFrame("depth5"), 5));
+            parser.feed(textFrame("after"));
+        }
+        assertEquals(List.of("depth4", "after"), callback.texts);
+    }
+
+    @Test
+    void corruptInnerFrameDropsRestOfEnvelopeWhenCrcEnabled() {
+        RecordingCallback callback = new RecordingCallback();
+        byte[] stream = concat(envelope(textFrame("a"), corruptText(textFrame("b")), textFrame("c")), textFrame("after"));
+        try (EventStreamParser parser = new EventStreamParser(callback, true)) {
+            parser.feed(stream);
+        }
+        assertEquals(List.of("a", "after"), callback.texts);
+    }
+
+    @Test
+    void corruptInnerFrameIsDecodedWhenCrcDisabled() {
+        RecordingCallback callback = new RecordingCallback();
+        byte[] stream = concat(envelope(textFrame("a"), corruptText(textFrame("b")), textFrame("c")), textFrame("after"));
+        try (EventStreamParser parser = new EventStreamParser(callback, false)) {
+            parser.feed(stream);
+        }
+        assertEquals(List.of("a", "x", "c", "after"), callback.texts);
+    }
+
+    @Test
+    void badMessageCrcDropsFrameWhenEnabled() {
+        RecordingCallback callback = new RecordingCallback();
+        try (EventStreamParser parser = new EventStreamParser(callback, true)) {
+            parser.feed(concat(textFrame("a"), corruptText(textFrame("b")), textFrame("c")));
+        }
+        assertEquals(List.of("a", "c"), callback.texts);
+    }
+
+    @Test
+    void badMessageCrcIsIgnoredWhenDisabled() {
+        RecordingCallback callback = new RecordingCallback();
+        try (EventStreamParser parser = new EventStreamParser(callback, false)) {
+            parser.feed(concat(textFrame("a"), corruptText(textFrame("b")), textFrame("c")));
+        }
+        assertEquals(List.of("a", "x", "c"), callback.texts);
+    }
+
+    @Test
+    void badPreludeCrcResyncsToNextFrameWhenEnabled() {
+        RecordingCallback callback = new RecordingCallback();
+        byte[] bad = textFrame("b");
+        bad[8] ^= 0x01;
+        try (EventStreamParser parser = new EventStreamParser(callback, true)) {
+            parser.feed(concat(textFrame("a"), bad, textFrame("c")));
+            // 重新同步后继续解析后续数据
+            parser.feed(textFrame("d"));
+        }
+        assertEquals(List.of("a", "c", "d"), callback.texts);
+    }
+
+    @Test
+    void badPreludeCrcIsIgnoredWhenDisabled() {
+        RecordingCallback callback = new RecordingCallback();
+        byte[] bad = textFrame("b");
+        bad[8] ^= 0x01;
+        try (EventStreamParser parser = new EventStreamParser(callback, false)) {
+            parser.feed(concat(textFrame("a"), bad, textFrame("c")));
+        }
+        assertEquals(List.of("a", "b", "c"), callback.texts);
+    }
+
+    private static int inflateCapacity(EventStreamParser parser) throws Exception {
+        Field field = EventStreamParser.class.getDeclaredField("inflateBuffer");
+        field.setAccessible(true);
+        return ((byte[]) field.get(parser)).length;
+    }
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    // ==================== 帧构造 ====================
+
+    static byte[] textFrame(String text) {
+        return eventFrame("assistantResponseEvent",
+                ("{\"content\":\"" + text + "\"}").getBytes(StandardCharsets.UTF_8));
+    }
+
+    static byte[] eventFrame(String eventType, byte[] payload) {
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        writeStringHeader(headers, ":message-type", "event");
+        writeStringHeader(headers, ":event-type", eventType);
+        writeStringHeader(headers, ":content-type", "application/json");
+        return frame(headers.toByteArray(), payload);
+    }
+
+    static void writeStringHeader(ByteArrayOutputStream out, String name, String value) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(nameBytes.length);
+        out.writeBytes(nameBytes);
+        out.write(7);
+        out.write(valueBytes.length >> 8);
+        out.write(valueBytes.length);
+        out.writeBytes(valueBytes);
+    }
+
+    static byte[] frame(byte[] headers, byte[] payload) {
+        int total = 12 + headers.length + payload.length + 4;
+        ByteBuffer buf = ByteBuffer.allocate(total);
+        buf.putInt(total);
+        buf.putInt(headers.length);
+        buf.putInt(crc(buf.array(), 0, 8));
+        buf.put(headers);
+        buf.put(payload);
+        buf.putInt(crc(buf.array(), 0, total - 4));
+        return buf.array();
+    }
+
+    /**
+     * 嵌套事件流信封：payload 为若干完整帧
+     */
+    static byte[] envelope(byte[]... frames) {
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        writeStringHeader(headers, ":message-type", "event");
+        writeStringHeader(headers, ":content-type", "application/vnd.amazon.eventstream");
+        return frame(headers.toByteArray(), concat(frames));
+    }
+
+    static byte[] wrap(byte[] frame, int depth) {
+        byte[] wrapped = frame;
+        for (int i = 0; i < depth; i++) {
+            wrapped = envelope(wrapped);
+        }
+        return wrapped;
+    }
+
+    /**
+     * 把单字符文本帧的内容改为 x，不更新 CRC
+     */
+    static byte[] corruptText(byte[] frame) {
+        byte[] corrupt = frame.clone();
+        // payload 以 "} 结尾：内容字符位于 CRC 前第 3 个字节
+        corrupt[corrupt.length - 4 - 3] = 'x';
+        return corrupt;
+    }
+
+    static byte[] concat(byte[]... parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part : parts) {
+            out.writeBytes(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static int crc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return (int) crc.getValue();
+    }
+
+    static class RecordingCallback implements StreamCallback {
+        final List<String> texts = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+
+        @Override public void onText(String text) { texts.add(text); }
+        @Override public void onThinking(String thinking) {}
+        @Override public void onToolUseStart(String toolUseId, String name) {}
+        @Override public void onToolUseInput(String toolUseId, String inputDelta) {}
+        @Override public void onToolUseEnd(String toolUseId) {}
+        @Override public void onUsage(int inputTokens, int outputTokens) {}
+        @Override public void onCredits(double credits) {}
+        @Override public void onContextUsage(double percentage) {}
+        @Override public void onComplete() {}
+        @Override public void onError(String error) { errors.add(error); }
+    }
+}
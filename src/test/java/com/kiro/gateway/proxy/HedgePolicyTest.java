@@ -0,0 +1,162 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HedgePolicyTest {
+
+    // 样本不足时对冲延迟取 maxDelayMs
+    private static final long DELAY_MS = 1000;
+
+    @Test
+    void primaryWinsBeforeHedgeDelay() {
+        HedgePolicy.Attempt attempt = newPolicy(5).newAttempt();
+        AtomicInteger hedgeCalls = new AtomicInteger();
+
+        StepVerifier.withVirtualTime(() -> attempt.race(
+                        Flux.just("p1", "p2").delaySubscription(Duration.ofMillis(500)),
+                        () -> {
+                            hedgeCalls.incrementAndGet();
+                            return Flux.just("h");
+                        }))
+                .thenAwait(Duration.ofMillis(500))
+                .expectNext("p1", "p2")
+                .verifyComplete();
+
+        assertFalse(attempt.hedged());
+        assertFalse(attempt.hedgeWon());
+        assertEquals(0, hedgeCalls.get());
+    }
+
+    @Test
+    void hedgeWinsAndCancelsPrimary() {
+        HedgePolicy.Attempt attempt = newPolicy(5).newAttempt();
+        AtomicBoolean primaryCancelled = new AtomicBoolean();
+
+        StepVerifier.withVirtualTime(() -> attempt.race(
+                        Flux.just("p").delaySubscription(Duration.ofMillis(3000))
+                                .doOnCancel(() -> primaryCancelled.set(true)),
+                        () -> Flux.just("h1", "h2")))
+                .thenAwait(Duration.ofMillis(DELAY_MS))
+                .expectNext("h1", "h2")
+                .verifyComplete();
+
+        assertTrue(attempt.hedged());
+        assertTrue(attempt.hedgeWon());
+        assertTrue(primaryCancelled.get());
+    }
+
+    @Test
+    void failedHedgeLeavesRaceToPrimary() {
+        HedgePolicy.Attempt attempt = newPolicy(5).newAttempt();
+
+        StepVerifier.withVirtualTime(() -> attempt.race(
+                        Flux.just("p").delaySubscription(Duration.ofMillis(3000)),
+                        () -> Flux.<String>error(new IOException("connection reset"))))
+                .thenAwait(Duration.ofMillis(3000))
+                .expectNext("p")
+                .verifyComplete();
+
+        assertTrue(attempt.hedged());
+        assertFalse(attempt.hedgeWon());
+    }
+
+    @Test
+    void emptyHedgeDoesNotWin() {
+        HedgePolicy.Attempt attempt = newPolicy(5).newAttempt();
+
+        StepVerifier.withVirtualTime(() -> attempt.race(
+                        Flux.just("p1", "p2").delaySubscription(Duration.ofMillis(3000)),
+                        Flux::<String>empty))
+                .thenAwait(Duration.ofMillis(DELAY_MS))
+                .expectNoEvent(Duration.ofMillis(1000))
+                .thenAwait(Duration.ofMillis(1000))
+                .expectNext("p1", "p2")
+                .verifyComplete();
+
+        assertTrue(attempt.hedged());
+        assertFalse(attempt.hedgeWon());
+    }
+
+    @Test
+    void emptyPrimaryWaitsForHedge() {
+        HedgePolicy.Attempt attempt = newPolicy(5).newAttempt();
+
+        StepVerifier.withVirtualTime(() -> attempt.race(
+                        Flux.<String>empty().delaySubscription(Duration.ofMillis(1500)),
+                        () -> Flux.just("h").delaySubscription(Duration.ofMillis(1000))))
+                .thenAwait(Duration.ofMillis(2000))
+                .expectNext("h")
+                .verifyComplete();
+
+        assertTrue(attempt.hedgeWon());
+    }
+
+    @Test
+    void completesEmptyWhenBothSidesAreEmpty() {
+        HedgePolicy.Attempt attempt = newPolicy(5).newAttempt();
+
+        StepVerifier.withVirtualTime(() -> attempt.race(
+                        Flux.<String>empty().delaySubscription(Duration.ofMillis(3000)),
+                        Flux::<String>empty))
+                .thenAwait(Duration.ofMillis(3000))
+                .verifyComplete();
+
+        assertTrue(attempt.hedged());
+        assertFalse(attempt.hedgeWon());
+    }
+
+    @Test
+    void hedgeErrorAfterWinningPropagates() {
+        HedgePolicy.Attempt attempt = newPolicy(5).newAttempt();
+
+        StepVerifier.withVirtualTime(() -> attempt.race(
+                        Flux.<String>never(),
+                        () -> Flux.concat(Flux.just("h"), Flux.<String>error(new IOException("stream reset")))))
+                .thenAwait(Duration.ofMillis(DELAY_MS))
+                .expectNext("h")
+                .verifyError(IOException.class);
+    }
+
+    @Test
+    void deniedBudgetSkipsHedge() {
+        HedgePolicy.Attempt attempt = newPolicy(0).newAttempt();
+        AtomicInteger hedgeCalls = new AtomicInteger();
+
+        StepVerifier.withVirtualTime(() -> attempt.race(
+                        Flux.just("p").delaySubscription(Duration.ofMillis(3000)),
+                        () -> {
+                            hedgeCalls.incrementAndGet();
+                            return Flux.just("h");
+                        }))
+                .thenAwait(Duration.ofMillis(3000))
+                .expectNext("p")
+                .verifyComplete();
+
+        assertFalse(attempt.hedged());
+        assertEquals(0, hedgeCalls.get());
+    }
+
+    private static HedgePolicy newPolicy(int budgetMaxTokens) {
+        AppProperties properties = new AppProperties();
+        AppProperties.HedgeConfig hedge = properties.getHedge();
+        hedge.setEnabled(true);
+        hedge.setMaxDelayMs(DELAY_MS);
+        hedge.setBudgetMaxTokens(budgetMaxTokens);
+        if (budgetMaxTokens == 0) {
+            hedge.setBudgetRatio(0);
+        }
+        return new HedgePolicy(properties);
+    }
+}
@@ -0,0 +1,106 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.trace.TraceContext;
+import org.junit.jupiter.api.Test;
+import reactor.adapter.JdkFlowAdapter;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyDouble;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class KiroApiClientTest {
+
+    private static final long HEDGE_DELAY_MS = 1000;
+    private static final String A = "https://a.example.com/generateAssistantResponse";
+    private static final String B = "https://b.example.com/generateAssistantResponse";
+
+    @Test
+    void singleEndpointDoesNotHedge() {
+        HttpClient httpClient = mock(HttpClient.class);
+        // 主请求迟迟不响应，超过对冲延迟后仍不应再发请求
+        doReturn(new CompletableFuture<>()).when(httpClient).sendAsync(any(), any());
+        KiroApiClient client = newClient(httpClient, spy(newHedgePolicy()), List.of(A));
+
+        StepVerifier.withVirtualTime(() -> client.streamEvents("{}", "token", TraceContext.create()))
+                .expectSubscription()
+                .thenAwait(Duration.ofMillis(HEDGE_DELAY_MS * 3))
+                .thenCancel()
+                .verify();
+
+        verify(httpClient, times(1)).sendAsync(any(), any());
+    }
+
+    @Test
+    void hedgeAgainstSilentPrimaryCostsNoExtraCredits() {
+        HttpClient httpClient = mock(HttpClient.class);
+        // 主请求连响应头都没有，对冲请求立即返回
+        doReturn(new CompletableFuture<>(), responding(Flux.just(List.of())))
+                .when(httpClient).sendAsync(any(), any());
+        HedgePolicy hedgePolicy = spy(newHedgePolicy());
+        KiroApiClient client = newClient(httpClient, hedgePolicy, List.of(A, B));
+
+        StepVerifier.withVirtualTime(() -> client.streamEvents("{}", "token", TraceContext.create()))
+                .thenAwait(Duration.ofMillis(HEDGE_DELAY_MS))
+                .verifyComplete();
+
+        verify(httpClient, times(2)).sendAsync(any(), any());
+        verify(hedgePolicy, never()).recordExtraCredits(anyDouble());
+    }
+
+    @Test
+    void hedgeAgainstStreamingPrimaryCountsExtraCredits() {
+        HttpClient httpClient = mock(HttpClient.class);
+        // 主请求已拿到 200 开始生成，只是首字节慢，落败后这部分同样计费
+        doReturn(responding(Flux.never()), responding(Flux.just(List.of())))
+                .when(httpClient).sendAsync(any(), any());
+        HedgePolicy hedgePolicy = spy(newHedgePolicy());
+        KiroApiClient client = newClient(httpClient, hedgePolicy, List.of(A, B));
+
+        StepVerifier.withVirtualTime(() -> client.streamEvents("{}", "token", TraceContext.create()))
+                .thenAwait(Duration.ofMillis(HEDGE_DELAY_MS))
+                .verifyComplete();
+
+        verify(hedgePolicy, times(1)).recordExtraCredits(anyDouble());
+    }
+
+    private static CompletableFuture<HttpResponse<Flow.Publisher<List<ByteBuffer>>>> responding(
+            Flux<List<ByteBuffer>> body) {
+        @SuppressWarnings("unchecked")
+        HttpResponse<Flow.Publisher<List<ByteBuffer>>> response = mock(HttpResponse.class);
+        doReturn(200).when(response).statusCode();
+        doReturn(HttpClient.Version.HTTP_2).when(response).version();
+        doReturn(JdkFlowAdapter.publisherToFlowPublisher(body)).when(response).body();
+        return CompletableFuture.completedFuture(response);
+    }
+
+    private static HedgePolicy newHedgePolicy() {
+        AppProperties properties = new AppProperties();
+        properties.getHedge().setEnabled(true);
+        properties.getHedge().setMaxDelayMs(HEDGE_DELAY_MS);
+        return new HedgePolicy(properties);
+    }
+
+    private static KiroApiClient newClient(HttpClient httpClient, HedgePolicy hedgePolicy, List<String> endpoints) {
+        AppProperties properties = new AppProperties();
+        properties.setEndpoints(endpoints);
+        properties.getWarmup().setEnabled(false);
+        return new KiroApiClient(httpClient, properties, new RetryHandler(properties), new EndpointRouter(properties),
+                hedgePolicy, new UpstreamPool(properties), new ConnectionWarmer(httpClient, properties));
+    }
+}
@@ -0,0 +1,107 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.util.TokenBucket;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RetryHandlerTest {
+
+    private static final String ENDPOINT = "https://a.example.com/generateAssistantResponse";
+
+    @Test
+    void tokenBucketRefillsByRatioUpToCapacity() {
+        TokenBucket bucket = new TokenBucket(0.5, 2);
+        assertTrue(bucket.tryWithdraw());
+        assertTrue(bucket.tryWithdraw());
+        assertFalse(bucket.tryWithdraw());
+
+        // 两个正常请求攒够一个令牌
+        bucket.deposit();
+        assertFalse(bucket.tryWithdraw());
+        bucket.deposit();
+        assertTrue(bucket.tryWithdraw());
+
+        for (int i = 0; i < 100; i++) {
+            bucket.deposit();
+        }
+        assertEquals(2, bucket.tokens());
+    }
+
+    @Test
+    void retriesStopWhenBudgetIsExhausted() {
+        AppProperties properties = new AppProperties();
+        properties.getRetry().setBudgetRatio(0.5);
+        properties.getRetry().setBudgetMaxTokens(2);
+        RetryHandler handler = new RetryHandler(properties);
+
+        assertTrue(handler.shouldRetry(ENDPOINT, 503, 0));
+        assertTrue(handler.shouldRetry(ENDPOINT, 503, 0));
+        assertFalse(handler.shouldRetry(ENDPOINT, 503, 0));
+        // 预算按端点独立
+        assertTrue(handler.shouldRetry("https://b.example.com/generateAssistantResponse", 503, 0));
+
+        handler.recordRequest(ENDPOINT);
+        handler.recordRequest(ENDPOINT);
+        assertTrue(handler.shouldRetry(ENDPOINT, 429, 0));
+    }
+
+    @Test
+    void nonRetryableStatusDoesNotSpendBudget() {
+        AppProperties properties = new AppProperties();
+        properties.getRetry().setBudgetMaxTokens(1);
+        RetryHandler handler = new RetryHandler(properties);
+
+        assertFalse(handler.shouldRetry(ENDPOINT, 403, 0));
+        assertFalse(handler.shouldRetry(ENDPOINT, 503, properties.getRetry().getMaxRetries()));
+        assertTrue(handler.shouldRetry(ENDPOINT, 503, 0));
+    }
+
+    @Test
+    void noJitterIsCappedExponential() {
+        RetryHandler.Backoff backoff = newHandler("none").backoff();
+        assertEquals(100, backoff.nextDelayMs(0));
+        assertEquals(200, backoff.nextDelayMs(1));
+        assertEquals(400, backoff.nextDelayMs(2));
+        assertEquals(1000, backoff.nextDelayMs(10));
+    }
+
+    @Test
+    void fullJitterStaysWithinExponentialBound() {
+        RetryHandler handler = newHandler("full");
+        for (int i = 0; i < 10_000; i++) {
+            RetryHandler.Backoff backoff = handler.backoff();
+            for (int attempt = 0; attempt < 6; attempt++) {
+                long delay = backoff.nextDelayMs(attempt);
+                long bound = Math.min(1000, 100L << attempt);
+                assertTrue(delay >= 0 && delay <= bound, "attempt=" + attempt + " delay=" + delay);
+            }
+        }
+    }
+
+    @Test
+    void decorrelatedJitterStaysBetweenBaseAndThreeTimesPrevious() {
+        RetryHandler handler = newHandler("decorrelated");
+        for (int i = 0; i < 10_000; i++) {
+            RetryHandler.Backoff backoff = handler.backoff();
+            long previous = 100;
+            for (int attempt = 0; attempt < 6; attempt++) {
+                long delay = backoff.nextDelayMs(attempt);
+                assertTrue(delay >= 100, "delay=" + delay);
+                assertTrue(delay <= Math.min(1000, previous * 3), "previous=" + previous + " delay=" + delay);
+                previous = delay;
+            }
+        }
+    }
+
+    private static RetryHandler newHandler(String jitter) {
+        AppProperties properties = new AppProperties();
+        properties.getRetry().setBaseDelayMs(100);
+        properties.getRetry().setMaxDelayMs(1000);
+        properties.getRetry().setJitter(jitter);
+        return new RetryHandler(properties);
+    }
+}
@@ -0,0 +1,209 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.util.ConcurrencyLimiter;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import reactor.adapter.JdkFlowAdapter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.Http2SslContextSpec;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 上游连接复用：同一组并发请求经 UpstreamPool 发往本地 TLS 桩服务，对比 HTTP/2 与 HTTP/1.1
+ * <p>
+ * 桩服务（Reactor Netty，自签证书，ALPN 同时提供 h2 与 http/1.1）等待 firstByteMs 后分块返回约 16KB 的流式响应；
+ * 客户端与 HttpClientConfig 的 kiroHttpClient 配置一致（仅额外信任自签证书），请求路径与 KiroApiClient.bodyFrom 相同：
+ * 申请许可、sendAsync、按 ByteBuffer 读完响应体后归还许可。
+ * <p>
+ * JDK HttpClient 不暴露连接池，连接数在服务端统计：每轮迭代结束打印新建 TCP 连接（即 TLS 握手）数、
+ * 同时打开的最大连接数和平均每条打开的连接承载的请求数，HTTP/2 下应为一条连接多路复用，HTTP/1.1 下约等于并发请求数
+ * （受 maxInflightPerHost 限制）。
+ * <p>
+ * 不随测试运行，从 IDE 或 {@code java -cp <test-classpath> com.kiro.gateway.proxy.UpstreamPoolBenchmark} 启动
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(16)
+@State(Scope.Benchmark)
+public class UpstreamPoolBenchmark {
+
+    private static final int CHUNKS = 64;
+    private static final byte[] CHUNK = new byte[256];
+
+    @Param({"HTTP_2", "HTTP_1_1"})
+    public String version;
+
+    // 每 host 在途上限，0 为不限制
+    @Param({"0", "8"})
+    public int maxInflightPerHost;
+
+    // 桩服务首字节延迟（毫秒）
+    @Param({"5"})
+    public int firstByteMs;
+
+    private final AtomicInteger connectionsOpened = new AtomicInteger();
+    private final AtomicInteger connectionsOpen = new AtomicInteger();
+    private final AtomicInteger maxConnectionsOpen = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private Path keyStoreFile;
+    private DisposableServer server;
+    private HttpClient httpClient;
+    private UpstreamPool upstreamPool;
+    private String endpoint;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        keyStoreFile = Files.createTempFile("upstream-bench", ".p12");
+        Files.delete(keyStoreFile);
+        char[] password = "changeit".toCharArray();
+        KeyStore keyStore = selfSignedKeyStore(keyStoreFile, password);
+        KeyManagerFactory keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagers.init(keyStore, password);
+
+        server = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .protocol(HttpProtocol.H2, HttpProtocol.HTTP11)
+                .secure(spec -> spec.sslContext(Http2SslContextSpec.forServer(keyManagers)))
+                // 每条 TCP 连接触发一次；HTTP/2 的流不经过这里
+                .doOnChannelInit((observer, channel, address) -> {
+                    connectionsOpened.incrementAndGet();
+                    maxConnectionsOpen.accumulateAndGet(connectionsOpen.incrementAndGet(), Math::max);
+                    channel.closeFuture().addListener(f -> connectionsOpen.decrementAndGet());
+                })
+                .handle((request, response) -> {
+                    requests.incrementAndGet();
+                    return request.receive().then()
+                            .then(Mono.delay(Duration.ofMillis(firstByteMs)))
+                            .then(response.sendByteArray(Flux.range(0, CHUNKS).map(i -> CHUNK)).then());
+                })
+                .bindNow();
+        endpoint = "https://localhost:" + server.port() + "/generateAssistantResponse";
+
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, InsecureTrustManagerFactory.INSTANCE.getTrustManagers(), null);
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(30))
+                .version(HttpClient.Version.valueOf(version))
+                .sslContext(sslContext)
+                .build();
+
+        AppProperties properties = new AppProperties();
+        properties.getHttp().setMaxInflightPerHost(maxInflightPerHost);
+        properties.getHttp().setMaxQueuedPerHost(1024);
+        upstreamPool = new UpstreamPool(properties);
+        // 与 ConnectionWarmer 一致先建好连接，否则冷启动时并发请求各自新建连接（HTTP/2 也一样）
+        request();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetCounters() {
+        connectionsOpened.set(0);
+        maxConnectionsOpen.set(connectionsOpen.get());
+        requests.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void reportConnections() {
+        int maxOpen = Math.max(maxConnectionsOpen.get(), 1);
+        System.out.printf("%n  connections opened=%d, max open=%d, requests=%d, requests/connection=%.1f%n",
+                connectionsOpened.get(), maxOpen, requests.get(), (double) requests.get() / maxOpen);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        server.disposeNow();
+        Files.deleteIfExists(keyStoreFile);
+    }
+
+    @Benchmark
+    public long request() {
+        return upstreamPool.acquire(endpoint).flatMap(this::send).block();
+    }
+
+    /**
+     * 与 KiroApiClient.connectAsync / bodyFrom 相同：sendAsync 拿到响应后逐批读取响应体，结束时归还许可
+     */
+    private Mono<Long> send(ConcurrencyLimiter.Permit permit) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"conversationState\":{}}"))
+                .build();
+        return Mono.fromFuture(httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofPublisher()))
+                .flatMap(response -> {
+                    upstreamPool.recordVersion(response.version());
+                    return JdkFlowAdapter.flowPublisherToFlux(response.body())
+                            .flatMapIterable(buffers -> buffers)
+                            .map(ByteBuffer::remaining)
+                            .reduce(0L, Long::sum);
+                })
+                .doFinally(signal -> permit.release());
+    }
+
+    /**
+     * 用 keytool 生成 localhost 的自签证书（Netty 的 SelfSignedCertificate 在 JDK 17 上需要 BouncyCastle）
+     */
+    private static KeyStore selfSignedKeyStore(Path file, char[] password) throws Exception {
+        String keytool = Path.of(System.getProperty("java.home"), "bin", "keytool").toString();
+        Process process = new ProcessBuilder(List.of(keytool, "-genkeypair", "-alias", "stub", "-keyalg", "EC",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "1",
+                "-storetype", "PKCS12", "-keystore", file.toString(),
+                "-storepass", new String(password), "-keypass", new String(password)))
+                .redirectErrorStream(true)
+                .start();
+        String output = new String(process.getInputStream().readAllBytes());
+        if (process.waitFor() != 0) {
+            throw new IllegalStateException("keytool 失败: " + output);
+        }
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = Files.newInputStream(file)) {
+            keyStore.load(in, password);
+        }
+        return keyStore;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(UpstreamPoolBenchmark.class.getSimpleName()).build()).run();
+    }
+}
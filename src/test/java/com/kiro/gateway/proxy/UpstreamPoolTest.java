@@ -0,0 +1,87 @@
+package com.kiro.gateway.proxy;
+
+import com.kiro.gateway.config.AppProperties;
+import com.kiro.gateway.config.HttpClientConfig;
+import com.kiro.gateway.exception.OverloadedException;
+import com.kiro.gateway.util.ConcurrencyLimiter;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.test.StepVerifier;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UpstreamPoolTest {
+
+    private static final String A = "https://a.example.com/generateAssistantResponse";
+    private static final String A_OTHER_PATH = "https://a.example.com/other";
+    private static final String B = "https://b.example.com/generateAssistantResponse";
+
+    @Test
+    void capsInflightPerHostAndHandsOverInOrder() {
+        UpstreamPool pool = newPool(2, 4, 10_000);
+        ConcurrencyLimiter.Permit first = pool.acquire(A).block();
+        pool.acquire(A_OTHER_PATH).block();
+        // 其他 host 不受影响
+        pool.acquire(B).block();
+
+        StepVerifier.create(pool.acquire(A))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(50))
+                .then(first::release)
+                .expectNextCount(1)
+                .verifyComplete();
+    }
+
+    @Test
+    void rejectsWhenHostQueueIsFull() {
+        UpstreamPool pool = newPool(1, 1, 10_000);
+        pool.acquire(A).block();
+        Disposable queued = pool.acquire(A).subscribe(permit -> {}, e -> {});
+
+        StepVerifier.create(pool.acquire(A))
+                .verifyError(OverloadedException.class);
+        // 撤销排队，计时器随之取消，不会在后续测试中到期
+        queued.dispose();
+    }
+
+    @Test
+    void rejectsAfterQueueTimeout() {
+        UpstreamPool pool = newPool(1, 4, 1000);
+        pool.acquire(A).block();
+
+        StepVerifier.withVirtualTime(() -> pool.acquire(A))
+                .expectSubscription()
+                .expectNoEvent(Duration.ofMillis(999))
+                .thenAwait(Duration.ofMillis(1))
+                .verifyError(OverloadedException.class);
+    }
+
+    @Test
+    void unlimitedWhenCapIsZero() {
+        UpstreamPool pool = newPool(0, 0, 10_000);
+        for (int i = 0; i < 1000; i++) {
+            pool.acquire(A).block();
+        }
+    }
+
+    @Test
+    void httpVersionIsConfigurable() {
+        HttpClientConfig config = new HttpClientConfig();
+        AppProperties properties = new AppProperties();
+        assertEquals(HttpClient.Version.HTTP_2, config.kiroHttpClient(properties).version());
+
+        properties.getHttp().setVersion("HTTP_1_1");
+        assertEquals(HttpClient.Version.HTTP_1_1, config.kiroHttpClient(properties).version());
+    }
+
+    private static UpstreamPool newPool(int maxInflightPerHost, int maxQueuedPerHost, long queueTimeoutMs) {
+        AppProperties properties = new AppProperties();
+        properties.getHttp().setMaxInflightPerHost(maxInflightPerHost);
+        properties.getHttp().setMaxQueuedPerHost(maxQueuedPerHost);
+        properties.getHttp().setQueueTimeoutMs(queueTimeoutMs);
+        return new UpstreamPool(properties);
+    }
+}
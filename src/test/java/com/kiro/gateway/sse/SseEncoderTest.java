@@ -0,0 +1,151 @@
+package com.kiro.gateway.sse;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.kiro.gateway.translator.OpenAiTranslator;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * SseEncoder 与原 JSONObject 序列化路径逐字节一致
+ * <p>
+ * 随机字符串覆盖 ASCII、需转义字符、控制字符、多字节字符、代理对和孤立代理字符；
+ * 期望值按改造前的方式生成：fastjson2 序列化后拼接前缀，再 String.getBytes(UTF_8)
+ */
+class SseEncoderTest {
+
+    private static final int ITERATIONS = 20_000;
+    // 固定种子，失败可复现
+    private static final long SEED = 0x5EE_5EEDL;
+
+    private final OpenAiTranslator translator = new OpenAiTranslator();
+
+    @Test
+    void claudeDeltasMatchJsonObjectFormatting() {
+        Random random = new Random(SEED);
+        SseEncoder encoder = SseEncoder.claude();
+        for (int i = 0; i < ITERATIONS; i++) {
+            SseStream.DeltaType type = randomType(random);
+            int index = randomIndex(random);
+            String text = randomString(random);
+            assertArrayEquals(expectedClaude(type, index, text), encode(encoder, type, index, text),
+                    () -> describe(type, index, text));
+        }
+    }
+
+    @Test
+    void openAiDeltasMatchJsonObjectFormatting() {
+        Random random = new Random(SEED + 1);
+        for (String[] stream : new String[][]{
+                {"chatcmpl-abc123", "claude-sonnet-4"},
+                {null, "claude-sonnet-4"},
+                {"chatcmpl-abc123", null},
+                {"chatcmpl-\"quoted\"", "modelé\n"}}) {
+            String completionId = stream[0];
+            String model = stream[1];
+            long created = 1_700_000_000L + random.nextInt(1_000_000);
+            SseEncoder encoder = SseEncoder.openAi(completionId, created, model);
+            for (int i = 0; i < ITERATIONS / 4; i++) {
+                SseStream.DeltaType type = randomType(random);
+                int index = randomIndex(random);
+                String text = randomString(random);
+                assertArrayEquals(expectedOpenAi(completionId, created, model, type, index, text),
+                        encode(encoder, type, index, text), () -> describe(type, index, text));
+            }
+        }
+    }
+
+    @Test
+    void edgeCases() {
+        SseEncoder encoder = SseEncoder.claude();
+        for (String text : new String[]{"", "\"", "\\", "\u0000\u001f\u007f", "\b\t\n\f\r",
+                "😀", "\ud83d", "\ude00", "a\ud83dx", "\ude00\ud83d", "  ", "￿"}) {
+            for (SseStream.DeltaType type : SseStream.DeltaType.values()) {
+                for (int index : new int[]{0, 63, 64, 1000}) {
+                    assertArrayEquals(expectedClaude(type, index, text), encode(encoder, type, index, text),
+                            () -> describe(type, index, text));
+                }
+            }
+        }
+    }
+
+    private byte[] expectedClaude(SseStream.DeltaType type, int index, String text) {
+        JSONObject delta = switch (type) {
+            case TEXT -> JSONObject.of("type", "text_delta", "text", text);
+            case THINKING -> JSONObject.of("type", "thinking_delta", "thinking", text);
+            case TOOL_INPUT -> JSONObject.of("type", "input_json_delta", "partial_json", text);
+        };
+        JSONObject data = JSONObject.of("type", "content_block_delta", "index", index, "delta", delta);
+        return ("event: content_block_delta\ndata: " + data.toJSONString() + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private byte[] expectedOpenAi(String completionId, long created, String model,
+                                  SseStream.DeltaType type, int index, String text) {
+        JSONObject chunk = switch (type) {
+            case TEXT -> translator.toOpenAiStreamChunk(completionId, created, model, text, null, null, null, 0, 0);
+            case THINKING -> translator.toOpenAiStreamChunk(completionId, created, model, null, text, null, null, 0, 0);
+            case TOOL_INPUT -> {
+                JSONObject toolCallDelta = new JSONObject();
+                toolCallDelta.put("index", index);
+                toolCallDelta.put("function", JSONObject.of("arguments", text));
+                yield translator.toOpenAiStreamChunk(completionId, created, model, null, null, toolCallDelta, null, 0, 0);
+            }
+        };
+        return ("data: " + chunk.toJSONString() + "\n\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(SseEncoder encoder, SseStream.DeltaType type, int index, String text) {
+        DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.allocateBuffer(64);
+        try {
+            encoder.encodeDelta(type, index, text, buffer);
+            byte[] bytes = new byte[buffer.readableByteCount()];
+            buffer.read(bytes);
+            return bytes;
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private static SseStream.DeltaType randomType(Random random) {
+        SseStream.DeltaType[] types = SseStream.DeltaType.values();
+        return types[random.nextInt(types.length)];
+    }
+
+    /**
+     * 多数落在预编码范围内，少数超出
+     */
+    private static int randomIndex(Random random) {
+        return random.nextInt(10) == 0 ? 64 + random.nextInt(1000) : random.nextInt(64);
+    }
+
+    private static String randomString(Random random) {
+        int length = random.nextInt(40);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            switch (random.nextInt(8)) {
+                case 0 -> sb.append((char) random.nextInt(0x20));
+                case 1 -> sb.append("\"\\/".charAt(random.nextInt(3)));
+                case 2 -> sb.append((char) (0x80 + random.nextInt(0x780)));
+                case 3 -> sb.append((char) (0x800 + random.nextInt(0xD800 - 0x800)));
+                case 4 -> sb.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                // 孤立的高 / 低代理字符
+                case 5 -> sb.append((char) (0xD800 + random.nextInt(0x800)));
+                case 6 -> sb.append((char) (0xE000 + random.nextInt(0x2000)));
+                default -> sb.append((char) (0x20 + random.nextInt(0x60)));
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String describe(SseStream.DeltaType type, int index, String text) {
+        StringBuilder sb = new StringBuilder(type + " index=" + index + " text=");
+        text.chars().forEach(c -> sb.append(String.format("\\u%04x", c)));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,188 @@
+package com.kiro.gateway.sse;
+
+import com.kiro.gateway.config.AppProperties;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.BaseSubscriber;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE 刷新策略：逐事件 flush（flushIntervalMs=0，改造前的行为）与攒批 flush 对比
+ * <p>
+ * 生产线程按 tokenIntervalMicros 的节奏向一个长连接 SseStream 写 delta（0 为上游突发），每 200 个 delta 一个块边界；
+ * 基准线程按 writeAndFlushWith 的方式消费：request(1)，收到一个 DataBuffer 后写入真实的 Pipe
+ * （一次 flush 即一次 write 系统调用），再请求下一个。
+ * <ul>
+ *   <li>flushRate（Throughput）：每秒 flush 次数，附带每秒送达的字节数（bytes 计数器）</li>
+ *   <li>flushGap（SampleTime）：相邻两次 flush 的间隔分布，看 p99 即攒批带来的额外延迟</li>
+ * </ul>
+ * 不随测试运行，从 IDE 或 {@code java -cp <test-classpath> com.kiro.gateway.sse.SseStreamBenchmark} 启动
+ */
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SseStreamBenchmark {
+
+    private static final int BLOCK_DELTAS = 200;
+    private static final String BLOCK_STOP = "event: content_block_stop\ndata: {\"type\":\"content_block_stop\",\"index\":0}\n\n";
+    private static final String[] TOKENS = {"Hello", " world", "，", "这是", "一段", " streamed", " reply", ".\\n"};
+
+    // 0 为逐事件 flush，10 为默认攒批
+    @Param({"0", "10"})
+    public long flushIntervalMs;
+
+    // 上游 token 节奏（微秒），0 为突发
+    @Param({"0", "20", "200"})
+    public int tokenIntervalMicros;
+
+    // 下游每次只请求一个，最多一个待取
+    private final BlockingQueue<DataBuffer> delivered = new LinkedBlockingQueue<>();
+    private Pipe pipe;
+    private Thread reader;
+    private Thread producer;
+    private SseStream sse;
+    private BaseSubscriber<DataBuffer> client;
+    private volatile boolean running;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        pipe = Pipe.open();
+        reader = new Thread(this::discardPipe, "sse-bench-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        AppProperties.SseConfig config = new AppProperties.SseConfig();
+        config.setFlushIntervalMs(flushIntervalMs);
+        sse = new SseStream(config, SseEncoder.claude(), DefaultDataBufferFactory.sharedInstance);
+        client = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+                // 由基准方法逐个请求
+            }
+
+            @Override
+            protected void hookOnNext(DataBuffer buffer) {
+                delivered.offer(buffer);
+            }
+        };
+        sse.asFlux().subscribe(client);
+
+        running = true;
+        producer = new Thread(this::produce, "sse-bench-producer");
+        producer.setDaemon(true);
+        producer.start();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        running = false;
+        producer.join();
+        client.dispose();
+        pipe.sink().close();
+        reader.join();
+        pipe.source().close();
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Written {
+        public long bytes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public int flushRate(Written written) throws Exception {
+        int bytes = nextFlush();
+        written.bytes += bytes;
+        return bytes;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public int flushGap() throws Exception {
+        return nextFlush();
+    }
+
+    /**
+     * 请求下一批并等待送达，写入 Pipe 后返回字节数
+     */
+    private int nextFlush() throws Exception {
+        client.request(1);
+        DataBuffer buffer = delivered.take();
+        int bytes = buffer.readableByteCount();
+        write(buffer);
+        return bytes;
+    }
+
+    private void produce() {
+        long intervalNanos = TimeUnit.MICROSECONDS.toNanos(tokenIntervalMicros);
+        int i = 0;
+        while (running) {
+            sse.emitDelta(SseStream.DeltaType.TEXT, 0, TOKENS[i % TOKENS.length]);
+            if (++i % BLOCK_DELTAS == 0) {
+                sse.emit(BLOCK_STOP);
+            }
+            // 忙等保证节奏精度（parkNanos 的粒度约 50 微秒）
+            long until = System.nanoTime() + intervalNanos;
+            while (System.nanoTime() < until) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    private void write(DataBuffer buffer) throws IOException {
+        try (DataBuffer.ByteBufferIterator it = buffer.readableByteBuffers()) {
+            while (it.hasNext()) {
+                ByteBuffer bytes = it.next();
+                while (bytes.hasRemaining()) {
+                    pipe.sink().write(bytes);
+                }
+            }
+        } finally {
+            DataBufferUtils.release(buffer);
+        }
+    }
+
+    private void discardPipe() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+        try {
+            while (pipe.source().read(buffer) >= 0) {
+                buffer.clear();
+            }
+        } catch (IOException ignored) {
+            // 关闭
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(SseStreamBenchmark.class.getSimpleName()).build()).run();
+    }
+}
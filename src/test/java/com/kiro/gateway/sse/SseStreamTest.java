@@ -0,0 +1,113 @@
+package com.kiro.gateway.sse;
+
+import com.kiro.gateway.config.AppProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.test.StepVerifier;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+class SseStreamTest {
+
+    private static final String BLOCK_STOP = "event: content_block_stop\ndata: {\"type\":\"content_block_stop\",\"index\":0}\n\n";
+
+    @Test
+    void firstEventFlushesImmediatelyAndDeltasWaitForInterval() {
+        SseStream sse = newStream(10, 8192);
+
+        StepVerifier.withVirtualTime(() -> sse.asFlux().map(SseStreamTest::text))
+                .then(() -> sse.emitDelta(SseStream.DeltaType.TEXT, 0, "a"))
+                .expectNext(delta("a"))
+                .then(() -> {
+                    sse.emitDelta(SseStream.DeltaType.TEXT, 0, "b");
+                    sse.emitDelta(SseStream.DeltaType.TEXT, 0, "c");
+                })
+                .expectNoEvent(Duration.ofMillis(9))
+                // 到达刷新间隔，两个 delta 一次刷新
+                .thenAwait(Duration.ofMillis(1))
+                .expectNext(delta("b") + delta("c"))
+                .then(sse::complete)
+                .verifyComplete();
+    }
+
+    @Test
+    void flushesOnceFlushCharsAreQueued() {
+        SseStream sse = newStream(10, 8);
+
+        StepVerifier.withVirtualTime(() -> sse.asFlux().map(SseStreamTest::text))
+                .then(() -> sse.emitDelta(SseStream.DeltaType.TEXT, 0, "x"))
+                .expectNext(delta("x"))
+                .then(() -> sse.emitDelta(SseStream.DeltaType.TEXT, 0, "1234"))
+                .expectNoEvent(Duration.ofMillis(5))
+                // 攒够 8 个字符，不等刷新间隔
+                .then(() -> sse.emitDelta(SseStream.DeltaType.TEXT, 0, "5678"))
+                .expectNext(delta("1234") + delta("5678"))
+                .then(sse::complete)
+                .verifyComplete();
+    }
+
+    @Test
+    void blockBoundaryFlushesQueuedDeltas() {
+        SseStream sse = newStream(10, 8192);
+
+        StepVerifier.withVirtualTime(() -> sse.asFlux().map(SseStreamTest::text))
+                .then(() -> sse.emitDelta(SseStream.DeltaType.TEXT, 0, "a"))
+                .expectNext(delta("a"))
+                .then(() -> {
+                    sse.emitDelta(SseStream.DeltaType.TEXT, 0, "b");
+                    sse.emit(BLOCK_STOP);
+                })
+                .expectNext(delta("b") + BLOCK_STOP)
+                .then(sse::complete)
+                .verifyComplete();
+    }
+
+    @Test
+    void completeFlushesPendingDeltas() {
+        SseStream sse = newStream(10, 8192);
+
+        StepVerifier.withVirtualTime(() -> sse.asFlux().map(SseStreamTest::text))
+                .then(() -> sse.emitDelta(SseStream.DeltaType.TEXT, 0, "a"))
+                .expectNext(delta("a"))
+                .then(() -> {
+                    sse.emitDelta(SseStream.DeltaType.TEXT, 0, "b");
+                    sse.complete();
+                })
+                .expectNext(delta("b"))
+                .verifyComplete();
+    }
+
+    @Test
+    void zeroIntervalFlushesEveryEvent() {
+        SseStream sse = newStream(0, 8192);
+
+        StepVerifier.withVirtualTime(() -> sse.asFlux().map(SseStreamTest::text))
+                .then(() -> sse.emitDelta(SseStream.DeltaType.TEXT, 0, "a"))
+                .expectNext(delta("a"))
+                .then(() -> sse.emitDelta(SseStream.DeltaType.TEXT, 0, "b"))
+                .expectNext(delta("b"))
+                .then(sse::complete)
+                .verifyComplete();
+    }
+
+    private static SseStream newStream(long flushIntervalMs, int flushChars) {
+        AppProperties.SseConfig config = new AppProperties.SseConfig();
+        config.setFlushIntervalMs(flushIntervalMs);
+        config.setFlushChars(flushChars);
+        return new SseStream(config, SseEncoder.claude(), DefaultDataBufferFactory.sharedInstance);
+    }
+
+    private static String delta(String text) {
+        return "event: content_block_delta\ndata: {\"type\":\"content_block_delta\",\"index\":0,"
+                + "\"delta\":{\"type\":\"text_delta\",\"text\":\"" + text + "\"}}\n\n";
+    }
+
+    private static String text(DataBuffer buffer) {
+        String s = buffer.toString(StandardCharsets.UTF_8);
+        DataBufferUtils.release(buffer);
+        return s;
+    }
+}